@@ -0,0 +1,55 @@
+package fr.mrqsdf.gptlike.benchmark;
+
+import fr.mrqsdf.gptlike.utils.BPETokenizer;
+import fr.mrqsdf.gptlike.utils.StreamingDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coût du décodage, token par token (génération) et par lot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DecodeBenchmark {
+
+    private static final int TOKENS = 1024;
+
+    private BPETokenizer tokenizer;
+    private int[] ids;
+    private StreamingDecoder streamingDecoder;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        tokenizer = new BPETokenizer(4000, 2);
+        tokenizer.train(SyntheticCorpus.sentences(10000, SyntheticCorpus.SEED).stream());
+        int[] encoded = tokenizer.encodeToArray(SyntheticCorpus.document(2000, SyntheticCorpus.SEED + 1));
+        ids = Arrays.copyOf(encoded, TOKENS);
+        streamingDecoder = tokenizer.streamingDecoder();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TOKENS)
+    public void decodePerToken(Blackhole blackhole) {
+        streamingDecoder.reset();
+        for (int id : ids) {
+            blackhole.consume(streamingDecoder.append(id));
+        }
+    }
+
+    @Benchmark
+    public String decodeBatch() {
+        return tokenizer.decode(ids);
+    }
+}
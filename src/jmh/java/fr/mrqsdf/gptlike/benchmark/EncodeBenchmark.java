@@ -0,0 +1,65 @@
+package fr.mrqsdf.gptlike.benchmark;
+
+import fr.mrqsdf.gptlike.utils.BPETokenizer;
+import fr.mrqsdf.gptlike.utils.EncodedBatch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Débit d'encodage sur des textes courts (un énoncé) et longs (un document).
+ * Le profileur gc configuré dans build.gradle donne le taux d'allocation par opération.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class EncodeBenchmark {
+
+    @Param({"short", "long"})
+    public String textKind;
+
+    private BPETokenizer tokenizer;
+    private String text;
+    private int[] buffer;
+    private List<String> batch;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        tokenizer = new BPETokenizer(4000, 2);
+        tokenizer.train(SyntheticCorpus.sentences(10000, SyntheticCorpus.SEED).stream());
+        text = textKind.equals("short")
+                ? SyntheticCorpus.document(12, SyntheticCorpus.SEED + 1)
+                : SyntheticCorpus.document(2000, SyntheticCorpus.SEED + 1);
+        buffer = new int[text.length()];
+        batch = SyntheticCorpus.sentences(1000, SyntheticCorpus.SEED + 2);
+    }
+
+    @Benchmark
+    public List<Integer> encodeList() {
+        return tokenizer.encode(text);
+    }
+
+    @Benchmark
+    public int[] encodeArray() {
+        return tokenizer.encodeToArray(text);
+    }
+
+    @Benchmark
+    public int encodeIntoBuffer() {
+        return tokenizer.encode(text, buffer, 0);
+    }
+
+    @Benchmark
+    public EncodedBatch encodeBatch() {
+        return tokenizer.encodeBatch(batch);
+    }
+}
@@ -0,0 +1,79 @@
+package fr.mrqsdf.gptlike.benchmark;
+
+import fr.mrqsdf.gptlike.utils.BPETokenizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aller-retour sauvegarde/chargement dans les formats JSON et binaire.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SerializationBenchmark {
+
+    private BPETokenizer tokenizer;
+    private Path directory;
+    private String jsonPath;
+    private String binaryPath;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        tokenizer = new BPETokenizer(8000, 2);
+        tokenizer.train(SyntheticCorpus.sentences(20000, SyntheticCorpus.SEED).stream());
+        directory = Files.createTempDirectory("gptlike-bench");
+        jsonPath = directory.resolve("tokenizer.json").toString();
+        binaryPath = directory.resolve("tokenizer.bin").toString();
+        tokenizer.save(jsonPath);
+        tokenizer.saveBinary(binaryPath);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(Path.of(jsonPath));
+        Files.deleteIfExists(Path.of(binaryPath));
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public BPETokenizer jsonRoundTrip() throws IOException {
+        tokenizer.save(jsonPath);
+        BPETokenizer loaded = new BPETokenizer();
+        loaded.load(jsonPath);
+        return loaded;
+    }
+
+    @Benchmark
+    public BPETokenizer binaryRoundTrip() throws IOException {
+        tokenizer.saveBinary(binaryPath);
+        BPETokenizer loaded = new BPETokenizer();
+        loaded.loadBinary(binaryPath);
+        return loaded;
+    }
+
+    @Benchmark
+    public BPETokenizer jsonLoad() throws IOException {
+        BPETokenizer loaded = new BPETokenizer();
+        loaded.load(jsonPath);
+        return loaded;
+    }
+
+    @Benchmark
+    public BPETokenizer binaryLoad() throws IOException {
+        BPETokenizer loaded = new BPETokenizer();
+        loaded.loadBinary(binaryPath);
+        return loaded;
+    }
+}
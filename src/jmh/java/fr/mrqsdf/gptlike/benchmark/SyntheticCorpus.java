@@ -0,0 +1,87 @@
+package fr.mrqsdf.gptlike.benchmark;
+
+import fr.mrqsdf.gptlike.utils.DatasetLoader;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Générateur de corpus synthétiques reproductibles pour les benchmarks.
+ * <p>
+ * Les mots sont tirés de assets/dataset/dataset.json (ou du fichier désigné par la propriété
+ * système {@code gptlike.dataset}) avec une graine fixe : deux exécutions produisent exactement
+ * le même corpus, sans accès réseau.
+ */
+public final class SyntheticCorpus {
+
+    public static final long SEED = 42L;
+
+    private static final String DATASET = System.getProperty("gptlike.dataset", "assets/dataset/dataset.json");
+
+    private static List<String> words;
+
+    private SyntheticCorpus() {
+    }
+
+    /**
+     * Génère des textes courts, de 3 à 20 mots, à la manière des énoncés du dataset.
+     *
+     * @param count nombre de textes.
+     * @param seed  graine du générateur.
+     * @return les textes générés.
+     */
+    public static List<String> sentences(int count, long seed) {
+        List<String> vocabulary = words();
+        Random random = new Random(seed);
+        List<String> texts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            texts.add(text(vocabulary, random, 3 + random.nextInt(18)));
+        }
+        return texts;
+    }
+
+    /**
+     * Génère un texte d'environ {@code wordCount} mots.
+     *
+     * @param wordCount nombre de mots.
+     * @param seed      graine du générateur.
+     * @return le texte généré.
+     */
+    public static String document(int wordCount, long seed) {
+        return text(words(), new Random(seed), wordCount);
+    }
+
+    private static String text(List<String> vocabulary, Random random, int wordCount) {
+        StringBuilder sb = new StringBuilder();
+        for (int w = 0; w < wordCount; w++) {
+            if (w > 0) {
+                sb.append(' ');
+            }
+            sb.append(vocabulary.get(random.nextInt(vocabulary.size())));
+        }
+        return sb.toString();
+    }
+
+    private static synchronized List<String> words() {
+        if (words == null) {
+            List<String> loaded = new ArrayList<>();
+            try (Stream<String> utterances = new DatasetLoader(DATASET).streamUtterances()) {
+                utterances.forEach(utt -> {
+                    for (String word : utt.split("\\s+")) {
+                        if (!word.isEmpty()) {
+                            loaded.add(word);
+                        }
+                    }
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            words = loaded;
+        }
+        return words;
+    }
+}
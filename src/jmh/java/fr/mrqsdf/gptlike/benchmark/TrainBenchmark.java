@@ -0,0 +1,44 @@
+package fr.mrqsdf.gptlike.benchmark;
+
+import fr.mrqsdf.gptlike.utils.BPETokenizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Temps d'entraînement complet (comptage des mots et fusions) selon la taille du corpus et du vocabulaire.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TrainBenchmark {
+
+    @Param({"1000", "10000", "50000"})
+    public int corpusSize;
+
+    @Param({"1000", "4000", "16000"})
+    public int vocabSize;
+
+    private List<String> corpus;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        corpus = SyntheticCorpus.sentences(corpusSize, SyntheticCorpus.SEED);
+    }
+
+    @Benchmark
+    public BPETokenizer train() {
+        BPETokenizer tokenizer = new BPETokenizer(vocabSize, 2);
+        tokenizer.train(corpus.stream());
+        return tokenizer;
+    }
+}
@@ -0,0 +1,334 @@
+package fr.mrqsdf.gptlike;
+
+import fr.mrqsdf.gptlike.utils.AsyncLogHandler;
+import fr.mrqsdf.gptlike.utils.ColoredLogger;
+import fr.mrqsdf.gptlike.utils.Dataset;
+import fr.mrqsdf.gptlike.utils.LatencyHistogram;
+import fr.mrqsdf.gptlike.utils.VirtualThreads;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.ConsoleHandler;
+import java.util.logging.Logger;
+
+/**
+ * Générateur de charge local pour {@link TokenizerServer}.
+ * <p>
+ * Un nombre fixe de clients envoient en boucle fermée (une requête à la fois chacun) des demandes
+ * d'encodage tirées du dataset, pendant une durée donnée. Chaque client garde sa connexion
+ * HTTP/1.1 ouverte et écrit chaque requête en une seule fois, sans l'algorithme de Nagle :
+ * le client coûte peu de CPU et ses délais ne faussent pas les latences. Les mesures de la période de chauffe
+ * sont écartées ; le rapport donne le débit (requêtes, tokens et octets par seconde)
+ * et les quantiles de latence, jusqu'au p99.9.
+ * <p>
+ * Arguments : {@code [url] [clients] [durée en s] [chauffe en s] [dataset]}, par défaut
+ * {@code http://127.0.0.1:8080 64 10 2 assets/dataset/dataset.json}.
+ */
+public class LoadGenerator {
+
+    private static final Logger logger = Main.logger;
+
+    private final InetSocketAddress address;
+    // Requête HTTP complète (en-têtes et corps) pour chaque texte
+    private final byte[][] requestBytes;
+    private final int[] bodyLengths;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final LongAccumulator maxLatency = new LongAccumulator(Math::max, 0);
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder tokens = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+
+    /**
+     * @param baseUri l'adresse du serveur, par exemple {@code http://127.0.0.1:8080}.
+     * @param texts   les textes à encoder, envoyés à tour de rôle.
+     */
+    public LoadGenerator(URI baseUri, List<String> texts) {
+        if (texts.isEmpty()) {
+            throw new IllegalArgumentException("Aucun texte à envoyer");
+        }
+        int port = baseUri.getPort() < 0 ? 80 : baseUri.getPort();
+        this.address = new InetSocketAddress(baseUri.getHost(), port);
+        this.requestBytes = new byte[texts.size()][];
+        this.bodyLengths = new int[texts.size()];
+        for (int i = 0; i < requestBytes.length; i++) {
+            byte[] body = texts.get(i).getBytes(StandardCharsets.UTF_8);
+            byte[] head = ("POST /encode HTTP/1.1\r\nHost: " + baseUri.getHost() + ":" + port
+                    + "\r\nContent-Type: text/plain; charset=utf-8\r\nContent-Length: " + body.length + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+            byte[] request = new byte[head.length + body.length];
+            System.arraycopy(head, 0, request, 0, head.length);
+            System.arraycopy(body, 0, request, head.length, body.length);
+            requestBytes[i] = request;
+            bodyLengths[i] = body.length;
+        }
+    }
+
+    /**
+     * Envoie la charge et attend la fin de la mesure.
+     *
+     * @param clients le nombre de clients simultanés.
+     * @param warmup  la durée de chauffe, en nanosecondes, non comptée dans les mesures.
+     * @param measure la durée de mesure, en nanosecondes.
+     * @return le rapport de la mesure.
+     * @throws InterruptedException si l'attente est interrompue.
+     */
+    public Report run(int clients, long warmup, long measure) throws InterruptedException {
+        long measureStart = System.nanoTime() + warmup;
+        long end = measureStart + measure;
+        ExecutorService workers = VirtualThreads.newPerTaskExecutor("load-client");
+        for (int c = 0; c < clients; c++) {
+            int first = (int) ((long) c * requestBytes.length / clients);
+            workers.execute(() -> loop(first, measureStart, end));
+        }
+        workers.shutdown();
+        workers.awaitTermination(warmup + measure + TimeUnit.MINUTES.toNanos(1), TimeUnit.NANOSECONDS);
+        return new Report(clients, measure, requests.sum(), errors.sum(), tokens.sum(), bytes.sum(),
+                latencies.quantile(0.5), latencies.quantile(0.9), latencies.quantile(0.99),
+                latencies.quantile(0.999), maxLatency.get());
+    }
+
+    private void loop(int first, long measureStart, long end) {
+        int index = first;
+        Connection connection = null;
+        long now = System.nanoTime();
+        while (now < end) {
+            int current = index;
+            index = index + 1 == requestBytes.length ? 0 : index + 1;
+            long start = System.nanoTime();
+            int status;
+            String response;
+            try {
+                if (connection == null) {
+                    connection = new Connection(address);
+                }
+                try {
+                    status = connection.exchange(requestBytes[current]);
+                } catch (IOException e) {
+                    // Une connexion persistante peut avoir été fermée par le serveur entre deux requêtes :
+                    // la requête est renvoyée une fois sur une nouvelle connexion
+                    connection.close();
+                    connection = new Connection(address);
+                    status = connection.exchange(requestBytes[current]);
+                }
+                response = connection.body();
+                if (!connection.keepAlive) {
+                    connection.close();
+                    connection = null;
+                }
+            } catch (IOException e) {
+                status = -1;
+                response = null;
+                if (connection != null) {
+                    connection.close();
+                    connection = null;
+                }
+            }
+            now = System.nanoTime();
+            if (start < measureStart || now > end) {
+                continue;
+            }
+            if (status != 200) {
+                errors.increment();
+                continue;
+            }
+            long latency = now - start;
+            latencies.record(latency);
+            maxLatency.accumulate(latency);
+            requests.increment();
+            tokens.add(countIds(response));
+            bytes.add(bodyLengths[current]);
+        }
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    // Nombre d'éléments d'un tableau JSON d'entiers
+    private static int countIds(String json) {
+        int count = 0;
+        boolean empty = true;
+        for (int i = 0; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (c == ',') {
+                count++;
+            } else if (c >= '0' && c <= '9') {
+                empty = false;
+            }
+        }
+        return empty ? 0 : count + 1;
+    }
+
+    /**
+     * Connexion HTTP/1.1 persistante, limitée à ce qu'il faut pour lire les réponses du serveur
+     * (corps de longueur connue).
+     */
+    private static final class Connection {
+        private final Socket socket;
+        private final OutputStream out;
+        private final InputStream in;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        private byte[] body = new byte[0];
+        private int bodyLength;
+        private boolean keepAlive;
+
+        Connection(InetSocketAddress address) throws IOException {
+            socket = new Socket();
+            socket.setTcpNoDelay(true);
+            socket.connect(address);
+            out = socket.getOutputStream();
+            in = new BufferedInputStream(socket.getInputStream(), 16384);
+        }
+
+        // Envoie la requête et lit la réponse ; retourne le code de statut
+        int exchange(byte[] request) throws IOException {
+            out.write(request);
+            out.flush();
+            String statusLine = readLine();
+            if (!statusLine.startsWith("HTTP/1.1 ") || statusLine.length() < 12) {
+                throw new IOException("Réponse invalide : " + statusLine);
+            }
+            int status = Integer.parseInt(statusLine.substring(9, 12));
+            int contentLength = -1;
+            keepAlive = true;
+            for (String header = readLine(); !header.isEmpty(); header = readLine()) {
+                int colon = header.indexOf(':');
+                if (colon < 0) {
+                    continue;
+                }
+                String name = header.substring(0, colon).trim();
+                String value = header.substring(colon + 1).trim();
+                if (name.equalsIgnoreCase("Content-Length")) {
+                    contentLength = Integer.parseInt(value);
+                } else if (name.equalsIgnoreCase("Connection") && value.equalsIgnoreCase("close")) {
+                    keepAlive = false;
+                }
+            }
+            if (contentLength < 0) {
+                throw new IOException("Réponse sans Content-Length");
+            }
+            if (body.length < contentLength) {
+                body = new byte[Math.max(contentLength, body.length * 2)];
+            }
+            int read = in.readNBytes(body, 0, contentLength);
+            if (read < contentLength) {
+                throw new IOException("Réponse tronquée");
+            }
+            bodyLength = contentLength;
+            return status;
+        }
+
+        String body() {
+            return new String(body, 0, bodyLength, StandardCharsets.UTF_8);
+        }
+
+        private String readLine() throws IOException {
+            line.reset();
+            int b;
+            while ((b = in.read()) != '\n') {
+                if (b < 0) {
+                    throw new IOException("Connexion fermée par le serveur");
+                }
+                if (b != '\r') {
+                    line.write(b);
+                }
+            }
+            return line.toString(StandardCharsets.US_ASCII);
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // La connexion est abandonnée de toute façon
+            }
+        }
+    }
+
+    /**
+     * Résultat d'une mesure de charge.
+     *
+     * @param clients  le nombre de clients simultanés.
+     * @param nanos    la durée de la mesure.
+     * @param requests le nombre de requêtes réussies pendant la mesure.
+     * @param errors   le nombre de requêtes en échec pendant la mesure.
+     * @param tokens   le nombre de tokens reçus.
+     * @param bytes    le nombre d'octets de texte envoyés.
+     * @param p50      la latence médiane, en nanosecondes.
+     * @param p90      le 90e centile de latence.
+     * @param p99      le 99e centile de latence.
+     * @param p999     le 99,9e centile de latence.
+     * @param max      la latence maximale.
+     */
+    public record Report(int clients, long nanos, long requests, long errors, long tokens, long bytes,
+                         long p50, long p90, long p99, long p999, long max) {
+
+        /**
+         * @return le nombre de requêtes réussies par seconde.
+         */
+        public double requestsPerSecond() {
+            return requests * 1e9 / nanos;
+        }
+
+        /**
+         * @return le nombre de tokens produits par seconde.
+         */
+        public double tokensPerSecond() {
+            return tokens * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return "clients=" + clients
+                    + " requests=" + requests
+                    + " errors=" + errors
+                    + " throughput=" + Math.round(requestsPerSecond()) + " req/s"
+                    + " " + Math.round(tokensPerSecond()) + " tokens/s"
+                    + " " + Math.round(bytes * 1e9 / nanos / 1e4) / 100.0 + " MB/s"
+                    + " p50=" + millis(p50) + " p90=" + millis(p90) + " p99=" + millis(p99)
+                    + " p99.9=" + millis(p999) + " max=" + millis(max);
+        }
+
+        private static String millis(long nanos) {
+            return Math.round(nanos / 1e4) / 100.0 + "ms";
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException, IOException {
+        logger.setUseParentHandlers(false);
+        ConsoleHandler consoleHandler = new ConsoleHandler();
+        consoleHandler.setFormatter(new ColoredLogger.ColoredFormatter());
+        AsyncLogHandler logHandler = new AsyncLogHandler(consoleHandler);
+        logger.addHandler(logHandler);
+
+        try {
+            URI baseUri = URI.create(args.length > 0 ? args[0] : "http://127.0.0.1:8080");
+            int clients = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+            long measure = TimeUnit.SECONDS.toNanos(args.length > 2 ? Long.parseLong(args[2]) : 10);
+            long warmup = TimeUnit.SECONDS.toNanos(args.length > 3 ? Long.parseLong(args[3]) : 2);
+            String datasetPath = args.length > 4 ? args[4] : "assets/dataset/dataset.json";
+
+            Dataset dataset = new Dataset(datasetPath, 10000);
+            dataset.preprocess();
+
+            logger.info(() -> "Sending load to " + baseUri + " with " + clients + " clients ("
+                    + (VirtualThreads.isAvailable() ? "virtual threads" : "platform threads") + ")...");
+            Report report = new LoadGenerator(baseUri, dataset.getData()).run(clients, warmup, measure);
+            logger.info(() -> "Load test: " + report);
+        } finally {
+            logHandler.close();
+        }
+    }
+}
@@ -1,11 +1,26 @@
 package fr.mrqsdf.gptlike;
 
+import fr.mrqsdf.gptlike.utils.AsyncLogHandler;
 import fr.mrqsdf.gptlike.utils.BPETokenizer;
 import fr.mrqsdf.gptlike.utils.ColoredLogger;
 import fr.mrqsdf.gptlike.utils.Dataset;
+import fr.mrqsdf.gptlike.utils.JfrTrainingListener;
+import fr.mrqsdf.gptlike.utils.MetricsReporter;
+import fr.mrqsdf.gptlike.utils.TokenCorpus;
+import fr.mrqsdf.gptlike.utils.TokenWindow;
+import fr.mrqsdf.gptlike.utils.TextPipeline;
+import fr.mrqsdf.gptlike.utils.TokenizerMetrics;
+import fr.mrqsdf.gptlike.utils.TrainingListener;
+import fr.mrqsdf.gptlike.utils.TrainingMetrics;
+import fr.mrqsdf.gptlike.utils.TrainingPhase;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.Normalizer;
 import java.util.List;
+import java.util.Random;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Logger;
 
@@ -13,20 +28,29 @@ public class Main {
     public static final Logger logger = Logger.getLogger(Main.class.getName());
 
     public static void main(String[] args) {
-        try {
-            long startTime = System.currentTimeMillis();
+        logger.setUseParentHandlers(false);
 
-            logger.setUseParentHandlers(false);
+        ConsoleHandler consoleHandler = new ConsoleHandler();
+        consoleHandler.setFormatter(new ColoredLogger.ColoredFormatter());
+        ColoredLogger.displayClassName = true; // Afficher le nom de la classe dans le log
 
-            ConsoleHandler consoleHandler = new ConsoleHandler();
-            consoleHandler.setFormatter(new ColoredLogger.ColoredFormatter());
-            ColoredLogger.displayClassName = true; // Afficher le nom de la classe dans le log
+        // Écriture en console sur un thread dédié : les threads de calcul ne font que déposer leurs messages
+        AsyncLogHandler logHandler = new AsyncLogHandler(consoleHandler);
+        logger.addHandler(logHandler);
 
-            logger.addHandler(consoleHandler);
+        try {
+            long startTime = System.nanoTime();
 
             // STEP 1: Load the dataset
             logger.info("Loading dataset...");
-            Dataset dataset = new Dataset();
+            TextPipeline pipeline = new TextPipeline()
+                    .normalize(Normalizer.Form.NFC)
+                    .trim()
+                    .lowercase()
+                    .minLength(6)
+                    .dedup()
+                    .nearDedup(0.8);
+            Dataset dataset = new Dataset("assets/dataset/dataset.json", 10000, pipeline);
 
             // STEP 2: Preprocess the dataset
             logger.info("Preprocessing dataset...");
@@ -35,26 +59,72 @@ public class Main {
             // STEP 3: Train the tokenizer
             logger.info("Training tokenizer...");
             BPETokenizer tokenizer = new BPETokenizer();
-            tokenizer.train(dataset);
+            tokenizer.setProgressInterval(1000);
+            tokenizer.addTrainingListener(new TrainingListener() {
+                @Override
+                public void onPhaseCompleted(TrainingPhase phase, TrainingMetrics metrics) {
+                    logger.info(() -> "Phase " + phase + " completed in " + metrics.getPhaseNanos(phase) / 1_000_000 + " ms");
+                }
+
+                @Override
+                public boolean onProgress(TrainingMetrics metrics) {
+                    logger.info(() -> "Merges: " + metrics.getMergeCount() + "/" + metrics.getTargetMerges()
+                            + ", best pair frequency: " + metrics.getBestPairFrequency()
+                            + ", " + Math.round(metrics.getMergesPerSecond()) + " merges/s");
+                    return true;
+                }
+            });
+            tokenizer.addTrainingListener(new JfrTrainingListener());
+            // Point de reprise régulier : un entraînement interrompu reprend là où il s'était arrêté
+            Path checkpoint = Paths.get("assets/data/tokenizer.ckpt");
+            tokenizer.setCheckpoint(checkpoint, 1000);
+            if (Files.exists(checkpoint)) {
+                logger.info("Resuming training from checkpoint " + checkpoint + "...");
+                tokenizer.resume(checkpoint);
+            } else {
+                tokenizer.train(dataset);
+            }
+            logger.info(() -> "Training metrics: " + tokenizer.getTrainingMetrics());
 
             // STEP 4: Test the tokenizer
             logger.info("Testing tokenizer...");
-            String testText = "Bonjour, comment ça va?".toLowerCase();
+            TokenizerMetrics metrics = tokenizer.enableMetrics();
+            String testText = pipeline.normalize("Bonjour, comment ça va?");
             List<Integer> encodedText = tokenizer.encode(testText);
-            logger.info("Encoded text " + testText + ": " + encodedText);
+            logger.info(() -> "Encoded text " + testText + ": " + encodedText);
             String decodedText = tokenizer.decode(encodedText);
-            logger.info("Decoded text: " + decodedText);
+            logger.info(() -> "Decoded text: " + decodedText);
+            metrics.report(MetricsReporter.logging());
+            // Écart de l'encodage glouton (plus long symbole) par rapport au BPE exact
+            logger.info(() -> "Greedy encoding: " + tokenizer.compareGreedy(dataset.getData()));
 
             // STEP 5: Save the tokenizer
             logger.info("Saving tokenizer...");
             tokenizer.save("assets/data/tokenizer.json");
+            tokenizer.saveBinary("assets/data/tokenizer.bin");
+            Files.deleteIfExists(checkpoint);
             logger.info("Tokenizer saved successfully.");
 
-            long endTime = System.currentTimeMillis();
-            logger.info("Total time taken: " + (endTime - startTime) + " ms");
+            // STEP 6: Encode the dataset once into token shards for model training
+            logger.info("Writing token shards...");
+            Path shardDirectory = Paths.get("assets/data/shards");
+            long tokenCount = tokenizer.writeShards(dataset, shardDirectory);
+            TokenCorpus corpus = TokenCorpus.open(shardDirectory);
+            logger.info(() -> "Token shards written: " + tokenCount + " tokens, " + corpus.getDocumentCount()
+                    + " documents, " + corpus.getShardCount() + " shard(s).");
+            int contextLength = 32;
+            if (corpus.windowCount(contextLength) > 0) {
+                TokenWindow window = corpus.randomWindow(new Random(42), contextLength);
+                logger.info(() -> "Sample window: " + tokenizer.decode(window.toArray()));
+            }
+
+            long endTime = System.nanoTime();
+            logger.info(() -> "Total time taken: " + (endTime - startTime) / 1_000_000 + " ms");
         } catch (IOException e) {
             logger.severe("An error occurred: " + e.getMessage());
             e.printStackTrace();
+        } finally {
+            logHandler.close();
         }
     }
 }
\ No newline at end of file
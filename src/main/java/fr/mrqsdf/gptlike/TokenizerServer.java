@@ -0,0 +1,244 @@
+package fr.mrqsdf.gptlike;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import fr.mrqsdf.gptlike.utils.AsyncLogHandler;
+import fr.mrqsdf.gptlike.utils.ColoredLogger;
+import fr.mrqsdf.gptlike.utils.EncodeCoalescer;
+import fr.mrqsdf.gptlike.utils.MetricsReporter;
+import fr.mrqsdf.gptlike.utils.TokenizerHolder;
+import fr.mrqsdf.gptlike.utils.TokenizerMetrics;
+import fr.mrqsdf.gptlike.utils.VirtualThreads;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.logging.ConsoleHandler;
+import java.util.logging.Logger;
+
+/**
+ * Service HTTP local d'encodage et de décodage.
+ * <p>
+ * Le tokenizer est partagé par toutes les requêtes, chacune traitée sur son propre thread virtuel
+ * (ou, avant Java 21, sur un pool de threads classiques). Les encodages concurrents sont regroupés
+ * en lots par un {@link EncodeCoalescer}. Le fichier du tokenizer est surveillé par un {@link TokenizerHolder} :
+ * un tokenizer réentraîné et enregistré au même endroit est rechargé sans redémarrer ni suspendre le service.
+ * <ul>
+ *   <li>{@code POST /encode} : le corps est le texte UTF-8, la réponse le tableau JSON des identifiants ;</li>
+ *   <li>{@code POST /decode} : le corps est un tableau JSON d'identifiants, la réponse le texte UTF-8 ;</li>
+ *   <li>{@code GET /stats} : nombre de requêtes d'encodage, de lots, taille moyenne des lots, taille du
+ *       vocabulaire et nombre de rechargements, suivis des métriques du tokenizer si elles sont activées ;</li>
+ *   <li>{@code GET /health} : répond {@code ok}.</li>
+ * </ul>
+ * Arguments : {@code [fichier du tokenizer] [port] [taille maximale des lots] [attente maximale en µs]},
+ * par défaut {@code assets/data/tokenizer.json 8080 256 0}. Le serveur n'écoute que sur l'interface locale.
+ * {@link LoadGenerator} mesure son débit et ses latences.
+ */
+public class TokenizerServer {
+
+    private static final Logger logger = Main.logger;
+
+    /** Taille maximale du corps d'une requête. */
+    public static final int MAX_BODY_BYTES = 1 << 20;
+
+    private static final String TEXT = "text/plain; charset=utf-8";
+    private static final String JSON = "application/json";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final EncodeCoalescer coalescer;
+    private final TokenizerHolder tokenizer;
+
+    /**
+     * @param tokenizer la référence au tokenizer à servir.
+     * @param port      le port local d'écoute (0 pour un port libre quelconque).
+     * @param maxBatch  le nombre maximal de textes encodés ensemble.
+     * @param maxDelay  l'attente maximale d'autres requêtes avant d'encoder un lot incomplet.
+     * @throws IOException si le port ne peut pas être ouvert.
+     */
+    public TokenizerServer(TokenizerHolder tokenizer, int port, int maxBatch, Duration maxDelay) throws IOException {
+        this.tokenizer = tokenizer;
+        this.coalescer = new EncodeCoalescer(tokenizer, maxBatch, maxDelay);
+        this.executor = VirtualThreads.newPerTaskExecutor("tokenizer-http");
+        // Sans TCP_NODELAY, l'en-tête et le corps des réponses, écrits séparément, attendent l'acquittement
+        // différé du client (environ 40 ms par requête sur une connexion persistante)
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        server.setExecutor(executor);
+        server.createContext("/encode", this::handleEncode);
+        server.createContext("/decode", this::handleDecode);
+        server.createContext("/stats", this::handleStats);
+        server.createContext("/health", exchange -> respond(exchange, 200, TEXT, "ok"));
+    }
+
+    /**
+     * Démarre le traitement des requêtes.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * @return le port d'écoute effectif.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return le regroupement des encodages, pour ses statistiques.
+     */
+    public EncodeCoalescer getCoalescer() {
+        return coalescer;
+    }
+
+    /**
+     * Arrête d'accepter des requêtes, laisse une seconde à celles en cours, puis libère les threads.
+     */
+    public void stop() {
+        server.stop(1);
+        coalescer.close();
+        executor.shutdown();
+    }
+
+    private void handleEncode(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            respond(exchange, 405, TEXT, "POST attendu");
+            return;
+        }
+        byte[] body = readBody(exchange);
+        if (body == null) {
+            return;
+        }
+        int[] ids;
+        try {
+            ids = coalescer.submit(new String(body, StandardCharsets.UTF_8)).join();
+        } catch (RuntimeException e) {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            logger.warning(() -> "Échec de l'encodage : " + cause);
+            respond(exchange, 503, TEXT, "Encodage indisponible");
+            return;
+        }
+        StringBuilder json = new StringBuilder(ids.length * 6 + 2).append('[');
+        for (int i = 0; i < ids.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(ids[i]);
+        }
+        respond(exchange, 200, JSON, json.append(']').toString());
+    }
+
+    private void handleDecode(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            respond(exchange, 405, TEXT, "POST attendu");
+            return;
+        }
+        byte[] body = readBody(exchange);
+        if (body == null) {
+            return;
+        }
+        int[] ids;
+        try {
+            ids = parseIds(new String(body, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            respond(exchange, 400, TEXT, "Tableau JSON d'identifiants attendu");
+            return;
+        }
+        respond(exchange, 200, TEXT, tokenizer.decode(ids));
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        StringBuilder stats = new StringBuilder()
+                .append("requests=").append(coalescer.getRequestCount())
+                .append(" batches=").append(coalescer.getBatchCount())
+                .append(" averageBatch=").append(Math.round(coalescer.getAverageBatchSize() * 100) / 100.0)
+                .append(" vocabSize=").append(tokenizer.get().getVocabSize())
+                .append(" reloads=").append(tokenizer.getReloadCount());
+        TokenizerMetrics metrics = tokenizer.getMetrics();
+        if (metrics != null) {
+            stats.append('\n').append(metrics.snapshot());
+        }
+        respond(exchange, 200, TEXT, stats.append('\n').toString());
+    }
+
+    // Lit le corps, ou répond 413 et retourne null s'il dépasse MAX_BODY_BYTES
+    private static byte[] readBody(HttpExchange exchange) throws IOException {
+        byte[] body = exchange.getRequestBody().readNBytes(MAX_BODY_BYTES + 1);
+        if (body.length > MAX_BODY_BYTES) {
+            respond(exchange, 413, TEXT, "Requête trop grande");
+            return null;
+        }
+        return body;
+    }
+
+    // Analyse un tableau JSON d'entiers, par exemple "[12, 5,7]"
+    static int[] parseIds(String json) {
+        String trimmed = json.trim();
+        if (trimmed.length() < 2 || trimmed.charAt(0) != '[' || trimmed.charAt(trimmed.length() - 1) != ']') {
+            throw new NumberFormatException(trimmed);
+        }
+        String content = trimmed.substring(1, trimmed.length() - 1);
+        if (content.isBlank()) {
+            return new int[0];
+        }
+        String[] values = content.split(",", -1);
+        int[] ids = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            ids[i] = Integer.parseInt(values[i].trim());
+        }
+        return ids;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        logger.setUseParentHandlers(false);
+        ConsoleHandler consoleHandler = new ConsoleHandler();
+        consoleHandler.setFormatter(new ColoredLogger.ColoredFormatter());
+        AsyncLogHandler logHandler = new AsyncLogHandler(consoleHandler);
+        logger.addHandler(logHandler);
+
+        String path = args.length > 0 ? args[0] : "assets/data/tokenizer.json";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+        int maxBatch = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+        Duration maxDelay = Duration.ofNanos(args.length > 3 ? Long.parseLong(args[3]) * 1000 : 0);
+
+        logger.info("Loading tokenizer " + path + "...");
+        TokenizerHolder tokenizer = TokenizerHolder.watch(Paths.get(path));
+        Closeable reporting = tokenizer.enableMetrics().startReporting(Duration.ofMinutes(1), MetricsReporter.logging());
+
+        TokenizerServer server = new TokenizerServer(tokenizer, port, maxBatch, maxDelay);
+        server.start();
+        logger.info(() -> "Tokenizer server listening on http://127.0.0.1:" + server.getPort()
+                + " (" + (VirtualThreads.isAvailable() ? "virtual threads" : "platform threads")
+                + ", batches of up to " + maxBatch + ")");
+
+        // Les gestionnaires de journalisation sont fermés par la JVM à l'arrêt : ce crochet ne journalise plus rien
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            tokenizer.close();
+            try {
+                reporting.close();
+            } catch (IOException e) {
+                // Le rapport périodique n'a rien d'autre à libérer
+            }
+        }, "tokenizer-server-shutdown"));
+    }
+}
@@ -1,7 +1,5 @@
 package fr.mrqsdf.gptlike.resources;
 
-import java.util.Objects;
-
 public class Pair {
 
     public String first;
@@ -23,7 +21,7 @@ public class Pair {
 
     @Override
     public int hashCode() {
-        return Objects.hash(first, second);
+        return 31 * first.hashCode() + second.hashCode();
     }
 
 }
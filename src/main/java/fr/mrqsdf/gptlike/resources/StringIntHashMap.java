@@ -0,0 +1,174 @@
+package fr.mrqsdf.gptlike.resources;
+
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Table de hachage à adressage ouvert associant des chaînes à des compteurs int.
+ * <p>
+ * Les recherches peuvent se faire directement sur une portion d'un {@link CharSequence} :
+ * la chaîne n'est allouée qu'à la première insertion d'une clé, jamais pour les occurrences suivantes.
+ * Le hachage est celui de {@link String#hashCode()}, si bien qu'une clé déjà sous forme de
+ * String n'est pas rehachée.
+ */
+public class StringIntHashMap {
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private String[] keys;
+    private int[] hashes;
+    private int[] values;
+    private int size;
+    private int mask;
+
+    public StringIntHashMap() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize nombre de clés attendues.
+     */
+    public StringIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Ajoute {@code delta} au compteur de la portion {@code [start, end)} du texte.
+     *
+     * @return la nouvelle valeur du compteur.
+     */
+    public int addTo(CharSequence text, int start, int end, int delta) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        int slot = slot(hash);
+        String key;
+        while ((key = keys[slot]) != null) {
+            if (hashes[slot] == hash && regionEquals(key, text, start, end)) {
+                return values[slot] += delta;
+            }
+            slot = (slot + 1) & mask;
+        }
+        insert(slot, text.subSequence(start, end).toString(), hash, delta);
+        return delta;
+    }
+
+    /**
+     * Ajoute {@code delta} au compteur de la clé.
+     *
+     * @return la nouvelle valeur du compteur.
+     */
+    public int addTo(String key, int delta) {
+        int hash = key.hashCode();
+        int slot = slot(hash);
+        String existing;
+        while ((existing = keys[slot]) != null) {
+            if (hashes[slot] == hash && existing.equals(key)) {
+                return values[slot] += delta;
+            }
+            slot = (slot + 1) & mask;
+        }
+        insert(slot, key, hash, delta);
+        return delta;
+    }
+
+    /**
+     * @param key la clé recherchée.
+     * @return le compteur associé, 0 si la clé est absente.
+     */
+    public int get(String key) {
+        int hash = key.hashCode();
+        int slot = slot(hash);
+        String existing;
+        while ((existing = keys[slot]) != null) {
+            if (hashes[slot] == hash && existing.equals(key)) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    /**
+     * Ajoute les compteurs d'une autre table à ceux de cette table.
+     */
+    public void addAll(StringIntHashMap other) {
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.keys[i] != null) {
+                addTo(other.keys[i], other.values[i]);
+            }
+        }
+    }
+
+    /**
+     * Parcourt toutes les entrées, dans un ordre non spécifié.
+     */
+    public void forEach(ObjIntConsumer<String> action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                action.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private void insert(int slot, String key, int hash, int value) {
+        keys[slot] = key;
+        hashes[slot] = hash;
+        values[slot] = value;
+        if (++size > keys.length * LOAD_FACTOR) {
+            rehash(keys.length << 1);
+        }
+    }
+
+    private static boolean regionEquals(String key, CharSequence text, int start, int end) {
+        if (key.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int slot(int hash) {
+        // Mélange multiplicatif : les hachages de String sont mal répartis sur les bits de poids faible
+        int h = hash * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private void allocate(int capacity) {
+        keys = new String[capacity];
+        hashes = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    private void rehash(int capacity) {
+        String[] oldKeys = keys;
+        int[] oldHashes = hashes;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = slot(oldHashes[i]);
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                hashes[slot] = oldHashes[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package fr.mrqsdf.gptlike.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Handler asynchrone : les threads qui journalisent déposent leurs enregistrements dans un
+ * tampon circulaire borné, et un unique thread d'écriture les met en forme et les transmet
+ * au handler délégué (par exemple un {@code ConsoleHandler} avec un {@link ColoredLogger.ColoredFormatter}).
+ * <p>
+ * Le dépôt ne prend aucun verrou : les producteurs se réservent une case par compare-and-set,
+ * si bien que les threads de calcul ne se disputent plus le verrou du handler console.
+ * Lorsque le tampon est plein, la {@link OverflowPolicy politique} choisie décide entre perdre
+ * l'enregistrement (le nombre de pertes est signalé dans le journal) et attendre une place.
+ * <p>
+ * {@link #close()} vide le tampon avant de fermer le délégué ; le {@code LogManager} l'appelle
+ * aussi à l'arrêt de la JVM.
+ */
+public class AsyncLogHandler extends Handler {
+
+    /**
+     * Comportement d'un dépôt lorsque le tampon est plein.
+     */
+    public enum OverflowPolicy {
+        /** L'enregistrement est perdu et compté ; l'appelant n'attend jamais. */
+        DROP,
+        /** L'appelant attend qu'une case se libère. */
+        BLOCK
+    }
+
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    // Attente maximale du thread d'écriture lorsqu'il n'a rien à écrire
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    // Attente d'un producteur bloqué entre deux tentatives
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+
+    private final Handler delegate;
+    private final OverflowPolicy policy;
+    private final LogRecord[] slots;
+    // Numéro de séquence de chaque case : égal à la position attendue par le producteur quand la
+    // case est libre, à la position + 1 quand elle contient un enregistrement publié
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private final LongAdder dropped = new LongAdder();
+    private final Thread writer;
+    // Nombre d'enregistrements consommés, écrit par le seul thread d'écriture
+    private volatile long head;
+    private volatile boolean writerIdle;
+    private volatile boolean closed;
+    private long reportedDrops;
+
+    /**
+     * @param delegate le handler qui écrit réellement les enregistrements.
+     */
+    public AsyncLogHandler(Handler delegate) {
+        this(delegate, DEFAULT_CAPACITY, OverflowPolicy.DROP);
+    }
+
+    /**
+     * @param delegate le handler qui écrit réellement les enregistrements.
+     * @param capacity la capacité du tampon, arrondie à la puissance de deux supérieure.
+     * @param policy   le comportement lorsque le tampon est plein.
+     */
+    public AsyncLogHandler(Handler delegate, int capacity, OverflowPolicy policy) {
+        if (capacity < 2 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacité invalide : " + capacity);
+        }
+        this.delegate = delegate;
+        this.policy = policy;
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.slots = new LogRecord[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+        this.writer = new Thread(this::drainLoop, "async-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (closed || record == null || !isLoggable(record)) {
+            return;
+        }
+        // La classe appelante est déduite de la pile au premier accès : cela doit se faire ici,
+        // sur le thread appelant, et non sur le thread d'écriture
+        if (needsCaller()) {
+            record.getSourceClassName();
+        }
+        while (!offer(record)) {
+            if (policy == OverflowPolicy.DROP || closed) {
+                dropped.increment();
+                return;
+            }
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(this, FULL_PARK_NANOS);
+        }
+        if (writerIdle) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private boolean needsCaller() {
+        return !(delegate.getFormatter() instanceof ColoredLogger.ColoredFormatter) || ColoredLogger.displayClassName;
+    }
+
+    private boolean offer(LogRecord record) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots[index] = record;
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                // La case contient encore l'enregistrement d'un tour précédent : le tampon est plein
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    // Appelé uniquement par le thread d'écriture
+    private LogRecord poll() {
+        long position = head;
+        int index = (int) position & mask;
+        if (sequences.get(index) != position + 1) {
+            return null;
+        }
+        LogRecord record = slots[index];
+        slots[index] = null;
+        sequences.set(index, position + slots.length);
+        head = position + 1;
+        return record;
+    }
+
+    private void drainLoop() {
+        boolean pendingFlush = false;
+        while (true) {
+            LogRecord record = poll();
+            if (record != null) {
+                write(record);
+                pendingFlush = true;
+                continue;
+            }
+            if (reportDrops()) {
+                pendingFlush = true;
+            }
+            if (pendingFlush) {
+                delegate.flush();
+                pendingFlush = false;
+            }
+            if (closed) {
+                // Les dépôts commencés avant la fermeture sont encore écrits
+                if (head == tail.get()) {
+                    return;
+                }
+                Thread.onSpinWait();
+                continue;
+            }
+            writerIdle = true;
+            // Seconde vérification après l'annonce, pour ne pas manquer un dépôt concurrent
+            if (sequences.get((int) head & mask) != head + 1) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+            writerIdle = false;
+        }
+    }
+
+    private void write(LogRecord record) {
+        try {
+            delegate.publish(record);
+        } catch (RuntimeException e) {
+            reportError(null, e, ErrorManager.WRITE_FAILURE);
+        }
+    }
+
+    // Signale dans le journal les pertes survenues depuis le dernier signalement
+    private boolean reportDrops() {
+        long total = dropped.sum();
+        if (total <= reportedDrops) {
+            return false;
+        }
+        LogRecord record = new LogRecord(Level.WARNING,
+                (total - reportedDrops) + " message(s) de journal perdu(s) : tampon asynchrone plein");
+        record.setSourceClassName(AsyncLogHandler.class.getName());
+        record.setSourceMethodName("publish");
+        reportedDrops = total;
+        write(record);
+        return true;
+    }
+
+    /**
+     * Attend que les enregistrements déjà déposés soient écrits, puis vide le délégué.
+     */
+    @Override
+    public void flush() {
+        long target = tail.get();
+        while (head < target && writer.isAlive()) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(this, FULL_PARK_NANOS);
+        }
+        delegate.flush();
+    }
+
+    /**
+     * Écrit les enregistrements en attente, arrête le thread d'écriture et ferme le délégué.
+     * Les enregistrements publiés ensuite sont ignorés.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        delegate.close();
+    }
+
+    /**
+     * @return le nombre d'enregistrements perdus faute de place depuis la création du handler.
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return la capacité du tampon.
+     */
+    public int getCapacity() {
+        return slots.length;
+    }
+}
@@ -0,0 +1,160 @@
+package fr.mrqsdf.gptlike.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Table de décodage dense identifiant → texte, construite une seule fois à partir de la table des symboles.
+ * <p>
+ * Le token spécial {@code <SPACE>} est directement associé à un espace, ce qui évite une
+ * seconde passe de remplacement sur le texte décodé. Les identifiants inconnus sont
+ * décodés en {@code <UNK>}. La table est immuable et peut être partagée entre threads.
+ * <p>
+ * En mode octet, chaque token correspond à une suite d'octets : une suite de tokens est décodée
+ * en concaténant leurs octets puis en décodant le tout en UTF-8, ce qui est sans perte même
+ * lorsqu'un caractère est réparti sur plusieurs tokens.
+ */
+public class BPEDecoder {
+
+    private static final String UNKNOWN = "<UNK>";
+    private static final byte[] UNKNOWN_BYTES = UNKNOWN.getBytes(StandardCharsets.UTF_8);
+
+    private final String[] tokens;
+    // Octets de chaque token en mode octet, null sinon
+    private final byte[][] tokenBytes;
+
+    /**
+     * @param symbols table identifiant → symbole, éventuellement avec des trous (null).
+     */
+    public BPEDecoder(String[] symbols) {
+        this(symbols, false);
+    }
+
+    /**
+     * @param symbols   table identifiant → symbole, éventuellement avec des trous (null).
+     * @param byteLevel vrai si les symboles représentent des octets (voir {@link ByteLevel}).
+     */
+    public BPEDecoder(String[] symbols, boolean byteLevel) {
+        this.tokens = new String[symbols.length];
+        this.tokenBytes = byteLevel ? new byte[symbols.length][] : null;
+        for (int id = 0; id < symbols.length; id++) {
+            String symbol = symbols[id];
+            String token = "<SPACE>".equals(symbol) ? " " : symbol;
+            if (byteLevel && token != null) {
+                // Un token qui n'est pas un symbole d'octets (l'espace spécial) est décodé tel quel
+                byte[] bytes = ByteLevel.toBytes(token);
+                if (bytes == null) {
+                    bytes = token.getBytes(StandardCharsets.UTF_8);
+                }
+                tokenBytes[id] = bytes;
+                token = new String(bytes, StandardCharsets.UTF_8);
+            }
+            tokens[id] = token;
+        }
+    }
+
+    /**
+     * @return vrai si les tokens représentent des octets.
+     */
+    public boolean isByteLevel() {
+        return tokenBytes != null;
+    }
+
+    /**
+     * En mode octet, un token qui ne contient qu'une partie d'un caractère est décodé avec
+     * le caractère de remplacement ; utiliser {@link StreamingDecoder} pour un décodage incrémental exact.
+     *
+     * @param id l'identifiant du token.
+     * @return le texte du token, ou {@code <UNK>} si l'identifiant est inconnu.
+     */
+    public String token(int id) {
+        if (id < 0 || id >= tokens.length) {
+            return UNKNOWN;
+        }
+        String token = tokens[id];
+        return token != null ? token : UNKNOWN;
+    }
+
+    // Octets d'un token en mode octet ; le tableau retourné ne doit pas être modifié
+    byte[] tokenBytes(int id) {
+        if (id < 0 || id >= tokenBytes.length) {
+            return UNKNOWN_BYTES;
+        }
+        byte[] bytes = tokenBytes[id];
+        return bytes != null ? bytes : UNKNOWN_BYTES;
+    }
+
+    /**
+     * Ajoute le texte d'un token à la fin du tampon.
+     *
+     * @param sb le tampon de sortie.
+     * @param id l'identifiant du token.
+     * @return le tampon, pour chaîner les appels.
+     */
+    public StringBuilder appendTo(StringBuilder sb, int id) {
+        return sb.append(token(id));
+    }
+
+    /**
+     * @param ids les identifiants à décoder.
+     * @return le texte correspondant.
+     */
+    public String decode(int[] ids) {
+        return decode(ids, 0, ids.length);
+    }
+
+    /**
+     * @param ids  les identifiants à décoder.
+     * @param from l'indice du premier identifiant (inclus).
+     * @param to   l'indice du dernier identifiant (exclu).
+     * @return le texte correspondant.
+     */
+    public String decode(int[] ids, int from, int to) {
+        if (tokenBytes != null) {
+            byte[] out = new byte[(to - from) * 4];
+            int length = 0;
+            for (int i = from; i < to; i++) {
+                byte[] bytes = tokenBytes(ids[i]);
+                if (length + bytes.length > out.length) {
+                    out = Arrays.copyOf(out, Math.max(out.length * 2, length + bytes.length));
+                }
+                System.arraycopy(bytes, 0, out, length, bytes.length);
+                length += bytes.length;
+            }
+            return new String(out, 0, length, StandardCharsets.UTF_8);
+        }
+        StringBuilder sb = new StringBuilder((to - from) * 4);
+        for (int i = from; i < to; i++) {
+            sb.append(token(ids[i]));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param ids les identifiants à décoder.
+     * @return le texte correspondant.
+     */
+    public String decode(List<Integer> ids) {
+        if (tokenBytes != null) {
+            int[] array = new int[ids.size()];
+            for (int i = 0; i < array.length; i++) {
+                Integer id = ids.get(i);
+                array[i] = id != null ? id : -1;
+            }
+            return decode(array);
+        }
+        StringBuilder sb = new StringBuilder(ids.size() * 4);
+        for (Integer id : ids) {
+            sb.append(id != null ? token(id) : UNKNOWN);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return la taille de la table, c'est-à-dire le plus grand identifiant plus un.
+     */
+    public int size() {
+        return tokens.length;
+    }
+}
@@ -0,0 +1,543 @@
+package fr.mrqsdf.gptlike.utils;
+
+import fr.mrqsdf.gptlike.resources.LongIntHashMap;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Encodeur BPE compilé à partir des {@link TokenizerTables} d'un {@link BPETokenizer}.
+ * <p>
+ * Les fusions sont converties en une table de rangs indexée par la paire d'identifiants
+ * (gauche, droite) ; chaque mot est ensuite fusionné en appliquant toujours la fusion de
+ * plus petit rang (c'est-à-dire la plus ancienne à l'entraînement), à l'aide d'une liste
+ * chaînée et d'un tas sur des tableaux d'entiers. Aucun objet n'est alloué par caractère
+ * ni par paire.
+ * <p>
+ * En mode octet (voir {@link ByteLevel}), les symboles de base sont les 256 octets UTF-8 :
+ * l'encodeur travaille directement sur des octets, aucun caractère n'est inconnu.
+ * <p>
+ * Un {@link SegmentationCache} optionnel évite de refusionner les mots fréquents.
+ * <p>
+ * En mode glouton (voir {@link #withGreedy(boolean)}), chaque pré-token est découpé en prenant
+ * à chaque position le plus long symbole du vocabulaire, trouvé dans un {@link VocabularyTrie}.
+ * Ce découpage est plus rapide mais peut différer de celui du BPE ; {@link GreedyComparison}
+ * mesure l'écart sur un corpus.
+ * L'encodeur est immuable. Ses tampons de travail sont empruntés à une réserve bornée, partagée par
+ * ses copies ({@link #withCache}, {@link #withGreedy}) : un thread virtuel, qui ne vit que le temps
+ * d'une requête, réutilise ainsi les tampons des requêtes précédentes au lieu d'en allouer de nouveaux.
+ */
+public class BPEEncoder {
+
+    // Marqueurs dans le tableau des symboles d'un mot
+    private static final int UNKNOWN = -1;
+    private static final int DEAD = -2;
+
+    // Nombre de tampons de travail conservés : une puissance de deux, au moins deux par cœur
+    private static final int WORKSPACE_SLOTS = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1);
+
+    private final int unkId;
+    private final int spaceId;
+    private final boolean byteLevel;
+    // Identifiant de chaque caractère de base, UNKNOWN s'il est absent du vocabulaire
+    private final int[] charIds;
+    // Identifiant de chaque octet en mode octet, UNKNOWN s'il est absent du vocabulaire
+    private final int[] byteIds;
+    // (gauche << 32 | droite) -> rang de la fusion
+    private final LongIntHashMap ranks;
+    // rang -> identifiant du symbole produit
+    private final int[] mergeResults;
+    // Vocabulaire compilé, pour la recherche d'identifiants et le mode glouton
+    private final VocabularyTrie trie;
+    // Cache optionnel des segmentations par pré-token
+    private final SegmentationCache cache;
+    private final boolean greedy;
+
+    // Tampons de travail libres, une case vide (null) par tampon emprunté ou pas encore créé
+    private final AtomicReferenceArray<Workspace> workspaces;
+
+    /**
+     * Compile les tables d'un tokenizer entraîné.
+     *
+     * @param tables les symboles et les fusions ordonnées par rang.
+     */
+    public BPEEncoder(TokenizerTables tables) {
+        this(tables, false);
+    }
+
+    /**
+     * Compile les tables d'un tokenizer entraîné.
+     *
+     * @param tables    les symboles et les fusions ordonnées par rang.
+     * @param byteLevel vrai si les symboles de base sont des octets (voir {@link ByteLevel}).
+     */
+    public BPEEncoder(TokenizerTables tables, boolean byteLevel) {
+        this.byteLevel = byteLevel;
+        String[] symbols = tables.getSymbols();
+        int unk = tables.idOf("<UNK>");
+        this.unkId = unk >= 0 ? unk : 0;
+        int space = tables.idOf("<SPACE>");
+        this.spaceId = space >= 0 ? space : unkId;
+
+        this.charIds = new int[Character.MAX_VALUE + 1];
+        Arrays.fill(charIds, UNKNOWN);
+        for (int id = 0; id < symbols.length; id++) {
+            String symbol = symbols[id];
+            if (symbol != null && symbol.length() == 1) {
+                charIds[symbol.charAt(0)] = id;
+            }
+        }
+        this.byteIds = new int[ByteLevel.ALPHABET_SIZE];
+        for (int b = 0; b < byteIds.length; b++) {
+            byteIds[b] = charIds[ByteLevel.symbolChar(b)];
+        }
+
+        int[] merges = tables.getMerges();
+        int mergeCount = tables.mergeCount();
+        this.ranks = new LongIntHashMap(mergeCount, -1);
+        this.mergeResults = new int[mergeCount];
+        for (int rank = 0; rank < mergeCount; rank++) {
+            mergeResults[rank] = merges[rank * 3 + 2];
+            ranks.put(SymbolTable.pairKey(merges[rank * 3], merges[rank * 3 + 1]), rank);
+        }
+        this.trie = VocabularyTrie.compile(tables, byteLevel);
+        this.cache = null;
+        this.greedy = false;
+        this.workspaces = new AtomicReferenceArray<>(WORKSPACE_SLOTS);
+    }
+
+    private BPEEncoder(BPEEncoder source, SegmentationCache cache, boolean greedy) {
+        this.unkId = source.unkId;
+        this.spaceId = source.spaceId;
+        this.byteLevel = source.byteLevel;
+        this.charIds = source.charIds;
+        this.byteIds = source.byteIds;
+        this.ranks = source.ranks;
+        this.mergeResults = source.mergeResults;
+        this.trie = source.trie;
+        this.cache = cache;
+        this.greedy = greedy;
+        this.workspaces = source.workspaces;
+    }
+
+    /**
+     * Retourne un encodeur partageant les mêmes tables et utilisant le cache fourni.
+     *
+     * @param cache le cache de segmentations, ou null pour le désactiver.
+     * @return le nouvel encodeur.
+     */
+    public BPEEncoder withCache(SegmentationCache cache) {
+        return new BPEEncoder(this, cache, greedy);
+    }
+
+    /**
+     * Retourne un encodeur partageant les mêmes tables, en mode glouton ou BPE.
+     * Le mode glouton n'utilise pas le cache de segmentations : il est plus rapide que la recherche
+     * dans le cache, et ses segmentations ne doivent pas s'y mêler à celles du BPE.
+     *
+     * @param greedy vrai pour le découpage glouton par plus long symbole, faux pour le BPE exact.
+     * @return le nouvel encodeur.
+     */
+    public BPEEncoder withGreedy(boolean greedy) {
+        return new BPEEncoder(this, cache, greedy);
+    }
+
+    /**
+     * @return vrai si l'encodeur découpe par plus long symbole plutôt que par fusions BPE.
+     */
+    public boolean isGreedy() {
+        return greedy;
+    }
+
+    /**
+     * @return le vocabulaire compilé en trie.
+     */
+    public VocabularyTrie getTrie() {
+        return trie;
+    }
+
+    /**
+     * Recherche l'identifiant d'un symbole du vocabulaire, sans allocation.
+     *
+     * @param symbol le symbole (en mode octet, sous sa forme de caractères d'octets).
+     * @return son identifiant, ou -1 s'il est absent.
+     */
+    public int idOf(CharSequence symbol) {
+        return trie.idOf(symbol);
+    }
+
+    /**
+     * @return le cache de segmentations utilisé, ou null.
+     */
+    public SegmentationCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @return l'identifiant produit pour un caractère inconnu.
+     */
+    public int getUnkId() {
+        return unkId;
+    }
+
+    /**
+     * @return vrai si les symboles de base sont des octets.
+     */
+    public boolean isByteLevel() {
+        return byteLevel;
+    }
+
+    /**
+     * Retourne une borne du nombre de tokens produits pour un texte : sa longueur,
+     * ou en mode octet la taille maximale de son encodage UTF-8 (3 octets par char).
+     *
+     * @param text le texte à encoder.
+     * @return la taille de tampon suffisante pour encoder le texte.
+     */
+    public int maxTokens(CharSequence text) {
+        return byteLevel ? text.length() * 3 : text.length();
+    }
+
+    /**
+     * Encode le texte en un tableau d'identifiants.
+     *
+     * @param text le texte à encoder.
+     * @return les identifiants des tokens.
+     */
+    public int[] encode(CharSequence text) {
+        Workspace ws = acquire();
+        try {
+            int[] out = ws.output(maxTokens(text));
+            int count = encode(text, out, 0, ws);
+            return Arrays.copyOf(out, count);
+        } finally {
+            release(ws);
+        }
+    }
+
+    /**
+     * Encode le texte dans un tampon fourni par l'appelant.
+     * Le nombre de tokens produits ne dépasse jamais {@link #maxTokens(CharSequence)}.
+     *
+     * @param text   le texte à encoder.
+     * @param buffer le tampon de sortie.
+     * @param offset la position d'écriture dans le tampon.
+     * @return le nombre d'identifiants écrits.
+     */
+    public int encode(CharSequence text, int[] buffer, int offset) {
+        Workspace ws = acquire();
+        try {
+            return encode(text, buffer, offset, ws);
+        } finally {
+            release(ws);
+        }
+    }
+
+    private int encode(CharSequence text, int[] buffer, int offset, Workspace ws) {
+        if (byteLevel) {
+            return encode(ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8)), buffer, offset, ws);
+        }
+        int length = text.length();
+        int pos = offset;
+        int start = 0;
+        while (start < length) {
+            int end = PreTokenizer.end(text, start, length);
+            pos = encodeWord(text, start, end, buffer, pos, ws);
+            start = end;
+        }
+        return pos - offset;
+    }
+
+    /**
+     * Encode les octets UTF-8 compris entre la position et la limite du tampon, sans modifier celles-ci.
+     * En mode octet, aucun texte n'est décodé ; sinon les octets sont d'abord décodés en caractères.
+     * Le nombre de tokens produits ne dépasse jamais le nombre d'octets.
+     *
+     * @param bytes  les octets à encoder.
+     * @param buffer le tampon de sortie.
+     * @param offset la position d'écriture dans le tampon.
+     * @return le nombre d'identifiants écrits.
+     */
+    public int encode(ByteBuffer bytes, int[] buffer, int offset) {
+        Workspace ws = acquire();
+        try {
+            return encode(bytes, buffer, offset, ws);
+        } finally {
+            release(ws);
+        }
+    }
+
+    private int encode(ByteBuffer bytes, int[] buffer, int offset, Workspace ws) {
+        if (!byteLevel) {
+            return encode(StandardCharsets.UTF_8.decode(bytes.duplicate()), buffer, offset, ws);
+        }
+        int limit = bytes.limit();
+        int pos = offset;
+        int start = bytes.position();
+        while (start < limit) {
+            int end = PreTokenizer.end(bytes, start, limit);
+            pos = encodeWord(bytes, start, end, buffer, pos, ws);
+            start = end;
+        }
+        return pos - offset;
+    }
+
+    private int encodeWord(ByteBuffer bytes, int start, int end, int[] buffer, int pos, Workspace ws) {
+        int n = end - start;
+        if (n == 1) {
+            int id = byteIds[bytes.get(start) & 0xFF];
+            buffer[pos] = id < 0 ? unkId : id;
+            return pos + 1;
+        }
+        if (greedy) {
+            return greedyWord(bytes, start, end, buffer, pos);
+        }
+
+        String token = null;
+        if (cache != null) {
+            // Clé à un caractère Latin-1 par octet, compacte et sans décodage
+            char[] key = new char[n];
+            for (int i = 0; i < n; i++) {
+                key[i] = (char) (bytes.get(start + i) & 0xFF);
+            }
+            token = new String(key);
+            int[] cached = cache.get(token);
+            if (cached != null) {
+                System.arraycopy(cached, 0, buffer, pos, cached.length);
+                return pos + cached.length;
+            }
+        }
+        ws.ensure(n);
+        for (int i = 0; i < n; i++) {
+            ws.symbols[i] = byteIds[bytes.get(start + i) & 0xFF];
+        }
+        int written = mergeSymbols(n, buffer, pos, ws);
+        if (token != null) {
+            cache.put(token, Arrays.copyOfRange(buffer, pos, written));
+        }
+        return written;
+    }
+
+    private int encodeWord(CharSequence text, int start, int end, int[] buffer, int pos, Workspace ws) {
+        int n = end - start;
+        if (n == 1) {
+            char c = text.charAt(start);
+            if (c == ' ') {
+                buffer[pos] = spaceId;
+            } else {
+                int id = charIds[c];
+                buffer[pos] = id < 0 ? unkId : id;
+            }
+            return pos + 1;
+        }
+        if (greedy) {
+            return greedyWord(text, start, end, buffer, pos);
+        }
+
+        if (cache != null) {
+            String token = text.subSequence(start, end).toString();
+            int[] cached = cache.get(token);
+            if (cached == null) {
+                int written = mergeWord(text, start, n, buffer, pos, ws);
+                cache.put(token, Arrays.copyOfRange(buffer, pos, written));
+                return written;
+            }
+            System.arraycopy(cached, 0, buffer, pos, cached.length);
+            return pos + cached.length;
+        }
+        return mergeWord(text, start, n, buffer, pos, ws);
+    }
+
+    // Découpe le pré-token en prenant à chaque position le plus long symbole ; un caractère inconnu donne <UNK>
+    private int greedyWord(CharSequence text, int start, int end, int[] buffer, int pos) {
+        int i = start;
+        while (i < end) {
+            long match = trie.longestMatch(text, i, end);
+            int length = (int) (match >>> 32);
+            if (length == 0) {
+                buffer[pos++] = unkId;
+                i++;
+            } else {
+                buffer[pos++] = (int) match;
+                i += length;
+            }
+        }
+        return pos;
+    }
+
+    private int greedyWord(ByteBuffer bytes, int start, int end, int[] buffer, int pos) {
+        int i = start;
+        while (i < end) {
+            long match = trie.longestMatch(bytes, i, end);
+            int length = (int) (match >>> 32);
+            if (length == 0) {
+                buffer[pos++] = unkId;
+                i++;
+            } else {
+                buffer[pos++] = (int) match;
+                i += length;
+            }
+        }
+        return pos;
+    }
+
+    private int mergeWord(CharSequence text, int start, int n, int[] buffer, int pos, Workspace ws) {
+        ws.ensure(n);
+        for (int i = 0; i < n; i++) {
+            ws.symbols[i] = charIds[text.charAt(start + i)];
+        }
+        return mergeSymbols(n, buffer, pos, ws);
+    }
+
+    // Fusionne les n symboles de base déjà placés dans ws.symbols
+    private int mergeSymbols(int n, int[] buffer, int pos, Workspace ws) {
+        int[] symbols = ws.symbols;
+        int[] next = ws.next;
+        int[] prev = ws.prev;
+        for (int i = 0; i < n; i++) {
+            prev[i] = i - 1;
+            next[i] = i + 1 < n ? i + 1 : -1;
+        }
+
+        ws.heapSize = 0;
+        for (int i = 0; i < n - 1; i++) {
+            int rank = rankOf(symbols[i], symbols[i + 1]);
+            if (rank >= 0) {
+                ws.push(rank, i);
+            }
+        }
+
+        // Application des fusions par rang croissant (puis de gauche à droite)
+        while (ws.heapSize > 0) {
+            long top = ws.pop();
+            int rank = (int) (top >>> 32);
+            int i = (int) top;
+            int j = next[i];
+            if (symbols[i] == DEAD || j < 0 || rankOf(symbols[i], symbols[j]) != rank) {
+                continue;
+            }
+            symbols[i] = mergeResults[rank];
+            symbols[j] = DEAD;
+            int k = next[j];
+            next[i] = k;
+            if (k >= 0) {
+                prev[k] = i;
+                int right = rankOf(symbols[i], symbols[k]);
+                if (right >= 0) {
+                    ws.push(right, i);
+                }
+            }
+            int p = prev[i];
+            if (p >= 0) {
+                int left = rankOf(symbols[p], symbols[i]);
+                if (left >= 0) {
+                    ws.push(left, p);
+                }
+            }
+        }
+
+        for (int i = 0; i >= 0; i = next[i]) {
+            int id = symbols[i];
+            buffer[pos++] = id < 0 ? unkId : id;
+        }
+        return pos;
+    }
+
+    private int rankOf(int left, int right) {
+        if (left < 0 || right < 0) {
+            return -1;
+        }
+        return ranks.get(SymbolTable.pairKey(left, right));
+    }
+
+    // Emprunte un tampon libre, en partant d'une case propre au thread, ou en crée un si tous sont pris
+    private Workspace acquire() {
+        int start = Thread.currentThread().hashCode();
+        for (int i = 0; i < WORKSPACE_SLOTS; i++) {
+            int slot = (start + i) & (WORKSPACE_SLOTS - 1);
+            Workspace ws = workspaces.get(slot);
+            if (ws != null && workspaces.compareAndSet(slot, ws, null)) {
+                return ws;
+            }
+        }
+        return new Workspace();
+    }
+
+    // Rend un tampon à la réserve ; s'il n'y a plus de place, il est abandonné
+    private void release(Workspace ws) {
+        int start = Thread.currentThread().hashCode();
+        for (int i = 0; i < WORKSPACE_SLOTS; i++) {
+            int slot = (start + i) & (WORKSPACE_SLOTS - 1);
+            if (workspaces.get(slot) == null && workspaces.compareAndSet(slot, null, ws)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Tampons de travail d'un encodage, empruntés à la réserve de l'encodeur le temps d'un appel.
+     */
+    private static final class Workspace {
+        private int[] symbols = new int[32];
+        private int[] next = new int[32];
+        private int[] prev = new int[32];
+        private long[] heap = new long[32];
+        private int heapSize;
+        private int[] output = new int[256];
+
+        int[] output(int length) {
+            if (output.length < length) {
+                output = new int[Math.max(length, output.length * 2)];
+            }
+            return output;
+        }
+
+        void ensure(int n) {
+            if (symbols.length < n) {
+                int capacity = Math.max(n, symbols.length * 2);
+                symbols = new int[capacity];
+                next = new int[capacity];
+                prev = new int[capacity];
+            }
+        }
+
+        void push(int rank, int position) {
+            if (heapSize == heap.length) {
+                heap = Arrays.copyOf(heap, heapSize * 2);
+            }
+            long value = ((long) rank << 32) | position;
+            int i = heapSize++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (heap[parent] <= value) {
+                    break;
+                }
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = value;
+        }
+
+        long pop() {
+            long result = heap[0];
+            long last = heap[--heapSize];
+            int i = 0;
+            int half = heapSize >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < heapSize && heap[child + 1] < heap[child]) {
+                    child++;
+                }
+                if (last <= heap[child]) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = last;
+            return result;
+        }
+    }
+}
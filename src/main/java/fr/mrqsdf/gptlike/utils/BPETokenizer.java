@@ -1,193 +1,817 @@
 package fr.mrqsdf.gptlike.utils;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 import com.google.gson.reflect.TypeToken;
 import fr.mrqsdf.gptlike.resources.Pair;
+import fr.mrqsdf.gptlike.resources.StringIntHashMap;
 
 public class BPETokenizer {
 
+    // Taille minimale d'un bloc de textes encodé par une même tâche
+    private static final int BATCH_MIN_CHUNK = 64;
+    // Nombre de textes encodés ensemble avant écriture dans les shards
+    private static final int SHARD_BATCH_SIZE = 8192;
+
     private final int vocabSize;
     private final int minFrequency;
+    // Mode octet : alphabet de base des 256 octets UTF-8 (voir ByteLevel), fixé par le fichier au chargement
+    private boolean byteLevel;
+    // vocab et merges sont null après loadBinary, jusqu'à ce qu'ils soient nécessaires
     private Map<String, Integer> vocab;
     private Map<Pair, String> merges;
+    // Tables, encodeur et décodeur compilés, remplacés ensemble après train et load :
+    // un encodage ou un décodage concurrent lit toujours un état complet, l'ancien ou le nouveau
+    private volatile TokenizerSnapshot compiled;
+    // Protège les écritures de compiled, segmentationCache et greedyEncoding ; les lectures restent sans verrou
+    private final Object publishLock = new Object();
+    // Cache des segmentations par pré-token choisi par l'utilisateur, ou null. Il ne sert que de modèle
+    // (capacité, politique) : chaque état publié reçoit son propre cache vide, partagé par les threads d'encodage
+    private volatile SegmentationCache segmentationCache;
+    private volatile boolean greedyEncoding;
+    // Observateurs de l'entraînement et métriques du dernier entraînement
+    private final List<TrainingListener> trainingListeners = new CopyOnWriteArrayList<>();
+    private volatile int progressInterval = 100;
+    // Nombre maximal de threads appliquant chaque fusion pendant l'entraînement
+    private volatile int trainingParallelism = Runtime.getRuntime().availableProcessors();
+    // Point de reprise écrit toutes les checkpointInterval fusions, ou null
+    private volatile Path checkpointPath;
+    private volatile int checkpointInterval;
+    private volatile TrainingMetrics trainingMetrics;
+    // Métriques d'encodage et de décodage, null tant qu'elles ne sont pas activées
+    private volatile TokenizerMetrics metrics;
 
     public BPETokenizer() {
         this(10000, 2);
     }
 
     public BPETokenizer(int vocabSize, int minFrequency) {
+        this(vocabSize, minFrequency, false);
+    }
+
+    /**
+     * @param vocabSize    taille maximale du vocabulaire.
+     * @param minFrequency fréquence minimale d'un token ou d'une paire pour être retenu.
+     * @param byteLevel    vrai pour un alphabet de base formé des 256 octets UTF-8 :
+     *                     aucun caractère n'est alors inconnu et le décodage est sans perte.
+     */
+    public BPETokenizer(int vocabSize, int minFrequency, boolean byteLevel) {
         this.vocabSize = vocabSize;
         this.minFrequency = minFrequency;
+        this.byteLevel = byteLevel;
         this.vocab = new LinkedHashMap<>();
         this.merges = new LinkedHashMap<>();
     }
 
     /**
      * Entraîne le tokenizer BPE sur le dataset fourni.
-     * Le dataset doit être prétraité et contenir une liste de chaînes accessible par getData().
+     * Si le dataset n'a pas été prétraité, ses données sont lues et prétraitées en flux.
      *
      * @param dataset l'objet Dataset contenant les données textuelles.
      */
     public void train(Dataset dataset) {
+        List<String> data = dataset.getData();
+        if (data != null) {
+            WordCounter counter = new WordCounter();
+            train(counter.count(data), counter);
+        } else {
+            try (Stream<String> texts = dataset.stream()) {
+                train(texts);
+            }
+        }
+    }
+
+    /**
+     * Entraîne le tokenizer BPE sur un flux de textes, parcouru en une seule passe.
+     * Seuls les comptes de tokens distincts sont conservés en mémoire.
+     *
+     * @param texts les textes d'entraînement.
+     */
+    public void train(Stream<String> texts) {
+        WordCounter counter = new WordCounter();
+        train(counter.count(texts.iterator()), counter);
+    }
+
+    /**
+     * Entraîne le tokenizer BPE à partir de la table des fréquences de tokens.
+     *
+     * @param tokenCounts association token → nombre d'occurrences, produite par {@link WordCounter}.
+     */
+    public void train(StringIntHashMap tokenCounts) {
+        train(tokenCounts, null);
+    }
+
+    private void train(StringIntHashMap tokenCounts, WordCounter counter) {
+        TrainingMetrics metrics = new TrainingMetrics();
+        trainingMetrics = metrics;
+        if (counter != null) {
+            completePhase(metrics, TrainingPhase.PRE_TOKENIZE, counter.getPreTokenizeNanos());
+            completePhase(metrics, TrainingPhase.COUNT, counter.getCountNanos());
+        }
+        long prepareStart = System.nanoTime();
+        materialize();
         // Étape 1 : Initialisation du vocabulaire avec les tokens spéciaux
         vocab.put("<UNK>", 0);
         vocab.put("<PAD>", 1);
         vocab.put("<SPACE>", 2);
         int idx = vocab.size();
-
-        // Étape 2 : Tokenisation des textes
-        List<String> allTokens = new ArrayList<>();
-        Pattern pattern = Pattern.compile("\\w+|[^\\w\\s]|\\s");
-        for (String text : dataset.getData()) {
-            Matcher matcher = pattern.matcher(text);
-            while (matcher.find()) {
-                allTokens.add(matcher.group());
+        // En mode octet, l'alphabet de base complet est ajouté d'emblée, dans l'ordre des octets
+        if (byteLevel) {
+            for (int b = 0; b < ByteLevel.ALPHABET_SIZE; b++) {
+                vocab.put(String.valueOf(ByteLevel.symbolChar(b)), idx++);
             }
         }
 
-        // Comptage de la fréquence de chaque token
-        Map<String, Integer> tokenCounts = new HashMap<>();
-        for (String token : allTokens) {
-            tokenCounts.put(token, tokenCounts.getOrDefault(token, 0) + 1);
-        }
-
-        // Étape 3 : Initialisation de chaque token en séquence de caractères
-        // tokenSplits associe chaque token à la liste de ses symboles (caractères)
-        Map<String, List<String>> tokenSplits = new HashMap<>();
-        for (Map.Entry<String, Integer> entry : tokenCounts.entrySet()) {
-            String token = entry.getKey();
-            int count = entry.getValue();
+        // Étape 2 : Sélection des tokens assez fréquents, triés par fréquence décroissante puis
+        // par ordre lexicographique, pour que les identifiants ne dépendent pas de l'ordre de comptage
+        List<Map.Entry<String, Integer>> retained = new ArrayList<>();
+        tokenCounts.forEach((token, count) -> {
             if (count >= minFrequency) {
-                List<String> symbols = new ArrayList<>();
-                if (token.equals(" ")) {
-                    symbols.add("<SPACE>");
-                    tokenSplits.put("<SPACE>", symbols);
-                } else {
-                    for (char c : token.toCharArray()) {
-                        symbols.add(String.valueOf(c));
-                    }
-                    tokenSplits.put(token, symbols);
+                retained.add(Map.entry(token, count));
+            }
+        });
+        retained.sort(Map.Entry.<String, Integer>comparingByValue().reversed()
+                .thenComparing(Map.Entry.comparingByKey()));
+
+        // Étape 3 : Initialisation de chaque token en séquence d'identifiants de caractères
+        SymbolTable symbols = new SymbolTable();
+        int[][] words = new int[retained.size()][];
+        int[] frequencies = new int[retained.size()];
+        int wordCount = 0;
+        for (Map.Entry<String, Integer> entry : retained) {
+            String token = byteLevel ? ByteLevel.toSymbols(entry.getKey()) : entry.getKey();
+            // L'espace est un token spécial à symbole unique : il ne participe à aucune paire
+            if (!token.equals(" ")) {
+                int[] word = new int[token.length()];
+                for (int i = 0; i < word.length; i++) {
+                    word[i] = symbols.intern(token.charAt(i));
                 }
-                // Ajoute chaque caractère au vocabulaire s'il n'y est pas déjà
-                for (char c : token.toCharArray()) {
-                    String ch = String.valueOf(c);
-                    if (!vocab.containsKey(ch)) {
-                        vocab.put(ch, idx++);
-                    }
+                frequencies[wordCount] = entry.getValue();
+                words[wordCount++] = word;
+            }
+            // Ajoute chaque caractère au vocabulaire s'il n'y est pas déjà
+            for (char c : token.toCharArray()) {
+                String ch = String.valueOf(c);
+                if (!vocab.containsKey(ch)) {
+                    vocab.put(ch, idx++);
                 }
             }
         }
 
         // Étape 4 : Algorithme BPE – fusion des paires les plus fréquentes
-        int numMerges = Math.min(vocabSize - vocab.size(), 10000);
-        for (int mergeCount = 0; mergeCount < numMerges; mergeCount++) {
-            // Compter toutes les paires de symboles dans tokenSplits
-            Map<Pair, Integer> pairs = new HashMap<>();
-            for (Map.Entry<String, List<String>> entry : tokenSplits.entrySet()) {
-                String token = entry.getKey();
-                int freq = tokenCounts.getOrDefault(token, 0);
-                List<String> symbols = entry.getValue();
-                for (int i = 0; i < symbols.size() - 1; i++) {
-                    Pair pair = new Pair(symbols.get(i), symbols.get(i + 1));
-                    pairs.put(pair, pairs.getOrDefault(pair, 0) + freq);
-                }
-            }
+        // Les comptes de paires sont maintenus incrémentalement par le moteur d'entraînement
+        BPETrainer trainer = new BPETrainer(symbols, Arrays.copyOf(words, wordCount), Arrays.copyOf(frequencies, wordCount),
+                trainingParallelism);
+        completePhase(metrics, TrainingPhase.PREPARE, System.nanoTime() - prepareStart);
+        int numMerges = vocabSize - vocab.size();
+        mergeLoop(trainer, symbols, metrics, idx, 0, numMerges);
+    }
 
-            if (pairs.isEmpty()) {
-                break;
-            }
+    /**
+     * Reprend un entraînement interrompu à partir d'un point de reprise écrit pendant
+     * {@link #train(Dataset)} (voir {@link #setCheckpoint(Path, int)}). Le tokenizer obtenu est
+     * identique à celui qu'aurait produit l'entraînement sans interruption.
+     * Le tokenizer doit avoir été créé avec la même taille de vocabulaire et la même fréquence minimale ;
+     * le mode octet est restauré depuis le point de reprise.
+     *
+     * @param checkpoint le fichier du point de reprise.
+     * @throws IOException si le fichier est illisible, corrompu ou ne correspond pas à ce tokenizer.
+     */
+    public void resume(Path checkpoint) throws IOException {
+        TrainingCheckpoint state = TrainingCheckpoint.read(checkpoint);
+        if (state.getVocabSize() != vocabSize || state.getMinFrequency() != minFrequency) {
+            throw new IOException("Le point de reprise a été écrit pour vocabSize=" + state.getVocabSize()
+                    + " et minFrequency=" + state.getMinFrequency() + ", pas pour vocabSize=" + vocabSize
+                    + " et minFrequency=" + minFrequency);
+        }
+        TrainingMetrics metrics = new TrainingMetrics();
+        trainingMetrics = metrics;
+        long prepareStart = System.nanoTime();
+        byteLevel = state.isByteLevel();
+        vocab = state.toVocab();
+        merges = state.toMerges();
+        SymbolTable symbols = state.toSymbolTable();
+        TrainingCheckpoint.Words words = state.getWords();
+        BPETrainer trainer = new BPETrainer(symbols, words.toArrays(), words.frequencies(), trainingParallelism);
+        completePhase(metrics, TrainingPhase.PREPARE, System.nanoTime() - prepareStart);
+        mergeLoop(trainer, symbols, metrics, state.getNextId(), state.getMergeCount(), state.getTargetMerges());
+    }
 
-            // Recherche de la paire la plus fréquente
-            Pair bestPair = null;
-            int bestCount = -1;
-            for (Map.Entry<Pair, Integer> entry : pairs.entrySet()) {
-                if (entry.getValue() > bestCount) {
-                    bestCount = entry.getValue();
-                    bestPair = entry.getKey();
+    /**
+     * Boucle des fusions, de la fusion {@code mergeCount} (0 pour un nouvel entraînement) à {@code numMerges}.
+     */
+    private void mergeLoop(BPETrainer trainer, SymbolTable symbols, TrainingMetrics metrics,
+                           int idx, int mergeCount, int numMerges) {
+        metrics.startMerges(numMerges - mergeCount, vocab.size());
+        int interval = progressInterval;
+        Path checkpointPath = this.checkpointPath;
+        boolean stoppedEarly = false;
+        try (CheckpointWriter checkpoints = checkpointPath != null
+                ? new CheckpointWriter(checkpointPath, checkpointInterval) : null) {
+            for (; mergeCount < numMerges; mergeCount++) {
+                // Recherche de la paire la plus fréquente
+                long bestPair = trainer.bestPair();
+                if (bestPair < 0) {
+                    break;
                 }
-            }
 
-            if (bestCount < minFrequency) {
-                break;
-            }
+                int bestCount = trainer.getCount(bestPair);
+                if (bestCount < minFrequency) {
+                    metrics.recordBestPair(bestCount);
+                    break;
+                }
 
-            // Création du nouveau symbole en fusionnant la paire
-            if (bestPair == null) {
-                break;
-            }
-            String newSymbol = bestPair.first + bestPair.second;
-            vocab.put(newSymbol, idx++);
-            merges.put(bestPair, newSymbol);
-
-            // Application de la fusion sur toutes les séquences de tokens
-            for (Map.Entry<String, List<String>> entry : tokenSplits.entrySet()) {
-                List<String> symbols = entry.getValue();
-                int i = 0;
-                while (i < symbols.size() - 1) {
-                    Pair currentPair = new Pair(symbols.get(i), symbols.get(i + 1));
-                    if (currentPair.equals(bestPair)) {
-                        symbols.set(i, newSymbol);
-                        symbols.remove(i + 1);
-                    } else {
-                        i++;
+                // Application de la fusion sur les séquences de tokens concernées
+                String first = symbols.symbol(SymbolTable.left(bestPair));
+                String second = symbols.symbol(SymbolTable.right(bestPair));
+                String newSymbol = symbols.symbol(trainer.merge(bestPair));
+
+                // Enregistrement du nouveau symbole et de la fusion
+                vocab.put(newSymbol, idx++);
+                merges.put(new Pair(first, second), newSymbol);
+                metrics.recordMerge(bestCount, vocab.size());
+
+                if (vocab.size() >= vocabSize) {
+                    break;
+                }
+                // Point de reprise : l'état est copié ici, l'écriture se fait en arrière-plan
+                int done = mergeCount + 1;
+                if (checkpoints != null && checkpoints.isDue(done)) {
+                    int nextId = idx;
+                    checkpoints.offer(() -> TrainingCheckpoint.capture(vocabSize, minFrequency, byteLevel,
+                            numMerges, done, nextId, symbols, vocab, merges, trainer));
+                }
+                // Point de progression : les observateurs peuvent demander l'arrêt
+                if (!trainingListeners.isEmpty() && done % interval == 0) {
+                    metrics.sampleMemory();
+                    if (!notifyProgress(metrics)) {
+                        stoppedEarly = true;
+                        break;
                     }
                 }
             }
+        }
+        metrics.endMerges(stoppedEarly);
+        for (TrainingListener listener : trainingListeners) {
+            listener.onPhaseCompleted(TrainingPhase.MERGE, metrics);
+        }
+        publish(TokenizerTables.fromMaps(vocab, merges));
+        for (TrainingListener listener : trainingListeners) {
+            listener.onCompleted(metrics);
+        }
+    }
 
-            if (vocab.size() >= vocabSize) {
-                break;
-            }
+    private void completePhase(TrainingMetrics metrics, TrainingPhase phase, long nanos) {
+        metrics.recordPhase(phase, nanos);
+        for (TrainingListener listener : trainingListeners) {
+            listener.onPhaseCompleted(phase, metrics);
+        }
+    }
+
+    private boolean notifyProgress(TrainingMetrics metrics) {
+        boolean proceed = true;
+        for (TrainingListener listener : trainingListeners) {
+            proceed &= listener.onProgress(metrics);
+        }
+        return proceed;
+    }
+
+    /**
+     * Ajoute un observateur de l'entraînement (progression, durée des phases, arrêt anticipé).
+     *
+     * @param listener L'observateur.
+     */
+    public void addTrainingListener(TrainingListener listener) {
+        trainingListeners.add(listener);
+    }
+
+    /**
+     * @param listener L'observateur à retirer.
+     */
+    public void removeTrainingListener(TrainingListener listener) {
+        trainingListeners.remove(listener);
+    }
+
+    /**
+     * Fixe le nombre de fusions entre deux points de progression (100 par défaut).
+     *
+     * @param interval Le nombre de fusions, strictement positif.
+     */
+    public void setProgressInterval(int interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("L'intervalle de progression doit être positif");
+        }
+        this.progressInterval = interval;
+    }
+
+    /**
+     * Active l'écriture périodique d'un point de reprise pendant l'entraînement, pour pouvoir
+     * le poursuivre avec {@link #resume(Path)} si le processus s'arrête. L'état est copié entre deux
+     * fusions et écrit sur un thread dédié ; chaque écriture remplace atomiquement la précédente.
+     *
+     * @param path     Le fichier du point de reprise, ou null pour désactiver.
+     * @param interval Le nombre de fusions entre deux points de reprise.
+     */
+    public void setCheckpoint(Path path, int interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Intervalle invalide : " + interval);
+        }
+        this.checkpointPath = path;
+        this.checkpointInterval = interval;
+    }
+
+    /**
+     * Fixe le nombre maximal de threads entre lesquels les mots sont répartis pour appliquer
+     * les fusions (par défaut le nombre de processeurs). Le résultat de l'entraînement ne dépend
+     * pas de cette valeur.
+     *
+     * @param parallelism Le nombre de threads, 1 pour entraîner sur le seul thread appelant.
+     */
+    public void setTrainingParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallélisme invalide : " + parallelism);
         }
+        this.trainingParallelism = parallelism;
+    }
+
+    /**
+     * @return Les métriques de l'entraînement en cours ou du dernier entraînement, ou null.
+     */
+    public TrainingMetrics getTrainingMetrics() {
+        return trainingMetrics;
     }
 
     /**
      * Encode le texte en une liste d'identifiants de tokens en utilisant les fusions BPE.
+     * Les fusions sont appliquées par rang croissant, dans l'ordre où elles ont été apprises.
      *
      * @param text Le texte à encoder.
      * @return Une liste d'identifiants correspondant aux tokens.
      */
     public List<Integer> encode(String text) {
-        List<Integer> tokenIds = new ArrayList<>();
-        Pattern pattern = Pattern.compile("\\w+|[^\\w\\s]|\\s");
-        Matcher matcher = pattern.matcher(text);
-        while (matcher.find()) {
-            String token = matcher.group();
-            if (token.equals(" ")) {
-                tokenIds.add(vocab.getOrDefault("<SPACE>", vocab.get("<UNK>")));
-                continue;
+        int[] ids = encodeToArray(text);
+        List<Integer> tokenIds = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            tokenIds.add(id);
+        }
+        return tokenIds;
+    }
+
+    /**
+     * Encode le texte en un tableau d'identifiants de tokens, sans boxing.
+     *
+     * @param text Le texte à encoder.
+     * @return Les identifiants des tokens.
+     */
+    public int[] encodeToArray(CharSequence text) {
+        TokenizerMetrics m = metrics;
+        if (m == null) {
+            return compiledEncoder().encode(text);
+        }
+        BPEEncoder current = compiledEncoder();
+        long start = System.nanoTime();
+        int[] ids = current.encode(text);
+        m.recordEncode(text.length(), ids, 0, ids.length, current.getUnkId(), System.nanoTime() - start);
+        return ids;
+    }
+
+    /**
+     * Encode le texte dans un tampon fourni par l'appelant.
+     * Un tampon de taille {@link #maxTokenCount(CharSequence)} suffit toujours.
+     *
+     * @param text   Le texte à encoder.
+     * @param buffer Le tampon de sortie.
+     * @param offset La position d'écriture dans le tampon.
+     * @return Le nombre d'identifiants écrits.
+     */
+    public int encode(CharSequence text, int[] buffer, int offset) {
+        TokenizerMetrics m = metrics;
+        if (m == null) {
+            return compiledEncoder().encode(text, buffer, offset);
+        }
+        BPEEncoder current = compiledEncoder();
+        long start = System.nanoTime();
+        int count = current.encode(text, buffer, offset);
+        m.recordEncode(text.length(), buffer, offset, offset + count, current.getUnkId(), System.nanoTime() - start);
+        return count;
+    }
+
+    /**
+     * @param text Le texte à encoder.
+     * @return Une taille de tampon suffisante pour encoder le texte.
+     */
+    public int maxTokenCount(CharSequence text) {
+        return compiledEncoder().maxTokens(text);
+    }
+
+    /**
+     * Encode des octets UTF-8 en un tableau d'identifiants de tokens.
+     * En mode octet, les octets sont encodés directement, sans décodage en chaîne.
+     *
+     * @param bytes Les octets à encoder.
+     * @return Les identifiants des tokens.
+     */
+    public int[] encodeBytes(byte[] bytes) {
+        int[] buffer = new int[bytes.length];
+        int count = encode(ByteBuffer.wrap(bytes), buffer, 0);
+        return Arrays.copyOf(buffer, count);
+    }
+
+    /**
+     * Encode les octets UTF-8 compris entre la position et la limite du tampon (qui ne sont pas modifiées).
+     * Un tampon de sortie de {@code bytes.remaining()} identifiants suffit toujours.
+     *
+     * @param bytes  Les octets à encoder, par exemple un tampon direct ou projeté en mémoire.
+     * @param buffer Le tampon de sortie.
+     * @param offset La position d'écriture dans le tampon.
+     * @return Le nombre d'identifiants écrits.
+     */
+    public int encode(ByteBuffer bytes, int[] buffer, int offset) {
+        TokenizerMetrics m = metrics;
+        if (m == null) {
+            return compiledEncoder().encode(bytes, buffer, offset);
+        }
+        BPEEncoder current = compiledEncoder();
+        long start = System.nanoTime();
+        int count = current.encode(bytes, buffer, offset);
+        m.recordEncode(bytes.remaining(), buffer, offset, offset + count, current.getUnkId(), System.nanoTime() - start);
+        return count;
+    }
+
+    /**
+     * @return Vrai si l'alphabet de base est formé des 256 octets UTF-8.
+     */
+    public boolean isByteLevel() {
+        return byteLevel;
+    }
+
+    /**
+     * Encode un lot de textes en parallèle sur le pool ForkJoin commun.
+     *
+     * @param texts Les textes à encoder.
+     * @return Les identifiants de tous les textes, dans l'ordre d'entrée.
+     */
+    public EncodedBatch encodeBatch(List<String> texts) {
+        return encodeBatch(texts, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Encode un lot de textes en parallèle sur l'exécuteur fourni
+     * (par exemple un ForkJoinPool dédié ou un exécuteur de threads virtuels).
+     * Les textes sont répartis en blocs contigus ; chaque bloc est encodé dans son propre
+     * tampon puis les blocs sont recopiés dans l'ordre d'entrée.
+     *
+     * @param texts    Les textes à encoder.
+     * @param executor L'exécuteur sur lequel répartir le travail.
+     * @return Les identifiants de tous les textes, dans l'ordre d'entrée.
+     */
+    public EncodedBatch encodeBatch(List<String> texts, Executor executor) {
+        return encodeBatch(compiledEncoder(), metrics, texts, executor);
+    }
+
+    static EncodedBatch encodeBatch(BPEEncoder encoder, TokenizerMetrics metrics, List<String> texts, Executor executor) {
+        int size = texts.size();
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        int chunkSize = Math.max(BATCH_MIN_CHUNK, (size + parallelism * 4 - 1) / (parallelism * 4));
+
+        List<CompletableFuture<EncodedBatch>> chunks = new ArrayList<>();
+        for (int from = 0; from < size; from += chunkSize) {
+            List<String> chunk = texts.subList(from, Math.min(size, from + chunkSize));
+            chunks.add(CompletableFuture.supplyAsync(() -> encodeChunk(encoder, metrics, chunk), executor));
+        }
+
+        int[] offsets = new int[size + 1];
+        List<EncodedBatch> results = new ArrayList<>(chunks.size());
+        int total = 0;
+        for (CompletableFuture<EncodedBatch> future : chunks) {
+            EncodedBatch result;
+            try {
+                result = future.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
             }
-            List<String> symbols = new ArrayList<>();
-            for (char c : token.toCharArray()) {
-                symbols.add(String.valueOf(c));
+            results.add(result);
+            total += result.tokenCount();
+        }
+
+        int[] ids = new int[total];
+        int textIndex = 0;
+        int base = 0;
+        for (EncodedBatch result : results) {
+            System.arraycopy(result.getIds(), 0, ids, base, result.tokenCount());
+            for (int i = 0; i < result.size(); i++) {
+                offsets[textIndex++] = base + result.start(i);
             }
-            // Appliquer les fusions tant qu'il est possible d'en appliquer
-            boolean merged = true;
-            while (symbols.size() > 1 && merged) {
-                merged = false;
-                for (int i = 0; i < symbols.size() - 1; i++) {
-                    Pair pair = new Pair(symbols.get(i), symbols.get(i + 1));
-                    if (merges.containsKey(pair)) {
-                        symbols.set(i, merges.get(pair));
-                        symbols.remove(i + 1);
-                        merged = true;
-                        break;
-                    }
+            base += result.tokenCount();
+        }
+        offsets[size] = total;
+        return new EncodedBatch(ids, offsets);
+    }
+
+    /**
+     * Encode en parallèle toutes les données prétraitées du dataset.
+     *
+     * @param dataset Le dataset prétraité.
+     * @return Les identifiants de chaque entrée, dans l'ordre du dataset.
+     */
+    public EncodedBatch encodeAll(Dataset dataset) {
+        return encodeBatch(dataset.getData());
+    }
+
+    /**
+     * Encode sur l'exécuteur fourni toutes les données prétraitées du dataset.
+     *
+     * @param dataset  Le dataset prétraité.
+     * @param executor L'exécuteur sur lequel répartir le travail.
+     * @return Les identifiants de chaque entrée, dans l'ordre du dataset.
+     */
+    public EncodedBatch encodeAll(Dataset dataset, Executor executor) {
+        return encodeBatch(dataset.getData(), executor);
+    }
+
+    private static EncodedBatch encodeChunk(BPEEncoder encoder, TokenizerMetrics metrics, List<String> texts) {
+        // Le nombre de tokens ne dépasse jamais la borne de l'encodeur (nombre de caractères, ou d'octets)
+        int capacity = 0;
+        for (String text : texts) {
+            capacity += encoder.maxTokens(text);
+        }
+        int[] ids = new int[capacity];
+        int[] offsets = new int[texts.size() + 1];
+        int pos = 0;
+        for (int i = 0; i < texts.size(); i++) {
+            offsets[i] = pos;
+            if (metrics == null) {
+                pos += encoder.encode(texts.get(i), ids, pos);
+            } else {
+                String text = texts.get(i);
+                long start = System.nanoTime();
+                int count = encoder.encode(text, ids, pos);
+                metrics.recordEncode(text.length(), ids, pos, pos + count, encoder.getUnkId(), System.nanoTime() - start);
+                pos += count;
+            }
+        }
+        offsets[texts.size()] = pos;
+        return new EncodedBatch(ids, offsets);
+    }
+
+    /**
+     * Encode une seule fois tout le dataset et écrit les identifiants dans des shards binaires
+     * à largeur fixe (uint16 si le vocabulaire le permet, uint32 sinon), relus par {@link TokenCorpus}.
+     * Chaque entrée du dataset forme un document. Les textes sont lus en flux et encodés par lots parallèles.
+     *
+     * @param dataset   Le dataset, prétraité ou non.
+     * @param directory Le répertoire des shards ; les shards existants sont remplacés.
+     * @return Le nombre de tokens écrits.
+     * @throws IOException en cas d'erreur d'écriture.
+     */
+    public long writeShards(Dataset dataset, Path directory) throws IOException {
+        int width = TokenShardWriter.widthFor(getVocabSize());
+        try (TokenShardWriter writer = new TokenShardWriter(directory, width, TokenShardWriter.DEFAULT_SHARD_TOKENS);
+             Stream<String> texts = dataset.stream()) {
+            Iterator<String> iterator = texts.iterator();
+            List<String> batch = new ArrayList<>(SHARD_BATCH_SIZE);
+            while (iterator.hasNext()) {
+                batch.add(iterator.next());
+                if (batch.size() == SHARD_BATCH_SIZE || !iterator.hasNext()) {
+                    writer.addDocuments(encodeBatch(batch));
+                    batch.clear();
                 }
             }
-            // Conversion des symboles en identifiants
-            for (String symbol : symbols) {
-                tokenIds.add(vocab.getOrDefault(symbol, vocab.get("<UNK>")));
+            return writer.getTokenCount();
+        }
+    }
+
+    /**
+     * @return Le nombre d'identifiants de tokens, c'est-à-dire le plus grand identifiant plus un.
+     */
+    public int getVocabSize() {
+        return currentTables().getSymbols().length;
+    }
+
+    /**
+     * @return Le nombre de fusions apprises.
+     */
+    public int getMergeCount() {
+        return currentTables().mergeCount();
+    }
+
+    int getUnkId() {
+        return compiledEncoder().getUnkId();
+    }
+
+    /**
+     * Retourne le tokenizer qu'aurait produit le même entraînement limité à {@code vocabSize}.
+     * Les fusions BPE sont apprises dans un ordre fixe : un entraînement plus court en produit
+     * exactement un préfixe, qu'il suffit de rejouer sur le vocabulaire de base.
+     *
+     * @param vocabSize La taille de vocabulaire visée.
+     * @return Un nouveau tokenizer, indépendant de celui-ci.
+     */
+    public BPETokenizer truncate(int vocabSize) {
+        TokenizerTables current = currentTables();
+        materialize();
+        // Les identifiants des fusions suivent ceux du vocabulaire de base, dans l'ordre des fusions
+        int mergeStart = current.getSymbols().length - merges.size();
+        Map<String, Integer> truncatedVocab = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry : vocab.entrySet()) {
+            if (entry.getValue() < mergeStart) {
+                truncatedVocab.put(entry.getKey(), entry.getValue());
             }
         }
-        return tokenIds;
+        Map<Pair, String> truncatedMerges = new LinkedHashMap<>();
+        int numMerges = vocabSize - truncatedVocab.size();
+        int idx = mergeStart;
+        Iterator<Map.Entry<Pair, String>> iterator = merges.entrySet().iterator();
+        // Mêmes conditions d'arrêt que la boucle d'entraînement
+        for (int mergeCount = 0; mergeCount < numMerges && iterator.hasNext(); mergeCount++) {
+            Map.Entry<Pair, String> merge = iterator.next();
+            truncatedVocab.put(merge.getValue(), idx++);
+            truncatedMerges.put(merge.getKey(), merge.getValue());
+            if (truncatedVocab.size() >= vocabSize) {
+                break;
+            }
+        }
+        BPETokenizer truncated = new BPETokenizer(vocabSize, minFrequency, byteLevel);
+        truncated.vocab = truncatedVocab;
+        truncated.merges = truncatedMerges;
+        truncated.publish(TokenizerTables.fromMaps(truncatedVocab, truncatedMerges));
+        return truncated;
+    }
+
+    /**
+     * Active (ou désactive avec null) le cache des segmentations utilisé par l'encodage.
+     * Le cache fourni sert de modèle : l'état courant, puis chaque état publié par un entraînement ou
+     * un chargement, reçoit un cache vide de même capacité et de même politique. Les encodages encore
+     * en cours sur un ancien état n'écrivent ainsi jamais dans le cache du nouveau.
+     *
+     * @param cache Le modèle du cache à utiliser, ou null.
+     */
+    public void setSegmentationCache(SegmentationCache cache) {
+        synchronized (publishLock) {
+            this.segmentationCache = cache;
+            TokenizerSnapshot current = compiled;
+            if (current != null) {
+                compiled = current.withCache(cache == null ? null : cache.emptyCopy());
+            }
+        }
+    }
+
+    /**
+     * @return Le cache des segmentations de l'état courant (le modèle fourni si le tokenizer n'est pas
+     * encore compilé), ou null s'il est désactivé.
+     */
+    public SegmentationCache getSegmentationCache() {
+        TokenizerSnapshot current = compiled;
+        return current == null ? segmentationCache : current.getEncoder().getCache();
+    }
+
+    /**
+     * Active ou désactive l'encodage glouton : chaque pré-token est découpé par plus long symbole
+     * du vocabulaire au lieu d'appliquer les fusions. Plus rapide, il peut différer du BPE exact ;
+     * voir {@link #compareGreedy(Iterable)} pour mesurer l'écart. Le décodage n'est pas affecté.
+     *
+     * @param greedy Vrai pour l'encodage glouton, faux pour le BPE exact (par défaut).
+     */
+    public void setGreedyEncoding(boolean greedy) {
+        synchronized (publishLock) {
+            this.greedyEncoding = greedy;
+            TokenizerSnapshot current = compiled;
+            if (current != null) {
+                compiled = current.withGreedy(greedy);
+            }
+        }
+    }
+
+    /**
+     * @return Vrai si l'encodage glouton est activé.
+     */
+    public boolean isGreedyEncoding() {
+        return greedyEncoding;
+    }
+
+    /**
+     * Mesure l'écart entre l'encodage glouton et le BPE exact sur un corpus.
+     *
+     * @param texts Les textes du corpus.
+     * @return Les taux de divergence, les nombres de tokens et les durées des deux modes.
+     */
+    public GreedyComparison compareGreedy(Iterable<? extends CharSequence> texts) {
+        return GreedyComparison.measure(compiledEncoder(), texts);
+    }
+
+    /**
+     * Recherche l'identifiant d'un symbole dans le vocabulaire compilé, sans allocation.
+     *
+     * @param symbol Le symbole (en mode octet, sous sa forme de caractères d'octets).
+     * @return Son identifiant, ou -1 s'il est absent.
+     */
+    public int tokenId(CharSequence symbol) {
+        return compiledEncoder().idOf(symbol);
+    }
+
+    /**
+     * Active la collecte des métriques d'encodage et de décodage (sans effet si elle l'est déjà).
+     *
+     * @return Les métriques du tokenizer.
+     */
+    public synchronized TokenizerMetrics enableMetrics() {
+        TokenizerMetrics current = metrics;
+        if (current == null) {
+            current = new TokenizerMetrics(this::getSegmentationCache);
+            metrics = current;
+        }
+        return current;
+    }
+
+    /**
+     * Arrête la collecte des métriques ; l'encodage et le décodage ne sont alors plus instrumentés.
+     */
+    public synchronized void disableMetrics() {
+        metrics = null;
+    }
+
+    /**
+     * @return Les métriques d'encodage et de décodage, ou null si elles ne sont pas activées.
+     */
+    public TokenizerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Retourne l'état courant du tokenizer sous forme immuable, à partager entre threads ou à publier
+     * dans un {@link TokenizerHolder}. Les entraînements et chargements ultérieurs de ce tokenizer
+     * ne le modifient pas. L'instantané garde le mode d'encodage (glouton ou non) mais pas le cache
+     * de segmentations, qui reste lié à ce tokenizer et est remplacé à chaque nouvel état.
+     *
+     * @return Le tokenizer compilé.
+     */
+    public TokenizerSnapshot snapshot() {
+        return current().withCache(null);
+    }
+
+    /**
+     * Compile et publie d'un bloc les tables fournies, l'encodeur et le décodeur correspondants.
+     * Les réglages du cache et du mode glouton ne peuvent pas changer pendant la compilation.
+     */
+    private void publish(TokenizerTables newTables) {
+        synchronized (publishLock) {
+            SegmentationCache template = segmentationCache;
+            // Nouveau cache vide : l'ancien peut encore recevoir des segmentations de l'ancien état
+            SegmentationCache cache = template == null ? null : template.emptyCopy();
+            compiled = TokenizerSnapshot.compile(newTables, byteLevel).withCache(cache).withGreedy(greedyEncoding);
+        }
+    }
+
+    private TokenizerSnapshot current() {
+        TokenizerSnapshot current = compiled;
+        if (current == null) {
+            synchronized (publishLock) {
+                current = compiled;
+                if (current == null) {
+                    publish(TokenizerTables.fromMaps(vocab, merges));
+                    current = compiled;
+                }
+            }
+        }
+        return current;
+    }
+
+    private TokenizerTables currentTables() {
+        return current().getTables();
+    }
+
+    /**
+     * Reconstruit vocab et merges à partir des tables s'ils n'ont pas encore été matérialisés.
+     */
+    private void materialize() {
+        if (vocab == null) {
+            TokenizerTables current = compiled.getTables();
+            vocab = current.toVocab();
+            merges = current.toMerges();
+        }
+    }
+
+    private BPEEncoder compiledEncoder() {
+        return current().getEncoder();
+    }
+
+    private BPEDecoder compiledDecoder() {
+        return current().getDecoder();
     }
 
     /**
@@ -197,18 +821,62 @@ public class BPETokenizer {
      * @return Le texte correspondant.
      */
     public String decode(List<Integer> tokenIds) {
-        // Crée une map inverse pour retrouver le token à partir de son identifiant
-        Map<Integer, String> idToToken = new HashMap<>();
-        for (Map.Entry<String, Integer> entry : vocab.entrySet()) {
-            idToToken.put(entry.getValue(), entry.getKey());
+        TokenizerMetrics m = metrics;
+        if (m == null) {
+            return compiledDecoder().decode(tokenIds);
         }
-        StringBuilder sb = new StringBuilder();
-        for (Integer id : tokenIds) {
-            String token = idToToken.getOrDefault(id, "<UNK>");
-            sb.append(token);
+        long start = System.nanoTime();
+        String text = compiledDecoder().decode(tokenIds);
+        m.recordDecode(tokenIds.size(), text.length(), System.nanoTime() - start);
+        return text;
+    }
+
+    /**
+     * Décode un tableau d'identifiants de tokens en texte.
+     *
+     * @param tokenIds Les identifiants.
+     * @return Le texte correspondant.
+     */
+    public String decode(int[] tokenIds) {
+        TokenizerMetrics m = metrics;
+        if (m == null) {
+            return compiledDecoder().decode(tokenIds);
         }
-        // Remplace le token spécial <SPACE> par un espace
-        return sb.toString().replace("<SPACE>", " ");
+        long start = System.nanoTime();
+        String text = compiledDecoder().decode(tokenIds);
+        m.recordDecode(tokenIds.length, text.length(), System.nanoTime() - start);
+        return text;
+    }
+
+    /**
+     * Crée un décodeur incrémental, à utiliser par un seul flux de génération.
+     *
+     * @return Un nouveau décodeur incrémental.
+     */
+    public StreamingDecoder streamingDecoder() {
+        return new StreamingDecoder(compiledDecoder());
+    }
+
+    /**
+     * Crée un encodeur incrémental, à utiliser par un seul flux à la fois.
+     * Il encode un {@link java.io.Reader} ou un canal d'octets par blocs de taille fixe, avec
+     * exactement le même résultat que l'encodage du texte complet. Les métriques d'encodage,
+     * si elles sont activées, comptent chaque bloc comme un appel.
+     *
+     * @param chunkSize La taille des blocs lus, en caractères ou en octets.
+     * @return Un nouvel encodeur incrémental.
+     */
+    public StreamingEncoder streamingEncoder(int chunkSize) {
+        return new StreamingEncoder(compiledEncoder(), chunkSize, metrics);
+    }
+
+    /**
+     * Crée un encodeur incrémental avec des blocs de {@link StreamingEncoder#DEFAULT_CHUNK_SIZE}.
+     *
+     * @return Un nouvel encodeur incrémental.
+     */
+    public StreamingEncoder streamingEncoder() {
+        return streamingEncoder(StreamingEncoder.DEFAULT_CHUNK_SIZE);
     }
 
     /**
@@ -218,6 +886,7 @@ public class BPETokenizer {
      * @throws IOException en cas d'erreur d'écriture.
      */
     public void save(String path) throws IOException {
+        materialize();
         // Prépare les données à sauvegarder : vocabulaire et fusions (merges).
         Map<String, Object> data = new HashMap<>();
         data.put("vocab", vocab);
@@ -228,41 +897,123 @@ public class BPETokenizer {
             mergesToSave.put(key, entry.getValue());
         }
         data.put("merges", mergesToSave);
+        if (byteLevel) {
+            data.put("byteLevel", true);
+        }
         Gson gson = new Gson();
-        String json = gson.toJson(data);
-        Files.write(Paths.get(path), json.getBytes(StandardCharsets.UTF_8));
+        String json = escapeLoneSurrogates(gson.toJson(data));
+        // Fichier temporaire renommé à la fin : un lecteur (voir TokenizerHolder) ne voit jamais un fichier partiel
+        Path target = Paths.get(path);
+        Path temp = Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, json.getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Échappe les substituts isolés, que l'UTF-8 remplacerait par '?', en séquences JSON à quatre chiffres
+     * hexadécimaux. Ils viennent des caractères hors BMP, découpés en deux symboles de base à l'entraînement,
+     * et n'apparaissent que dans les chaînes JSON, où l'échappement est relu à l'identique.
+     */
+    private static String escapeLoneSurrogates(String json) {
+        StringBuilder sb = null;
+        for (int i = 0; i < json.length(); i++) {
+            char c = json.charAt(i);
+            boolean paired = Character.isHighSurrogate(c) && i + 1 < json.length() && Character.isLowSurrogate(json.charAt(i + 1));
+            if (paired) {
+                if (sb != null) {
+                    sb.append(c).append(json.charAt(i + 1));
+                }
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                if (sb == null) {
+                    sb = new StringBuilder(json.length() + 16).append(json, 0, i);
+                }
+                sb.append(String.format("\\u%04x", (int) c));
+            } else if (sb != null) {
+                sb.append(c);
+            }
+        }
+        return sb == null ? json : sb.toString();
     }
 
     /**
      * Charge l'état du tokenizer à partir d'un fichier JSON.
      *
+     * Le nouvel état est entièrement construit avant d'être publié.
+     *
      * @param path Le chemin vers le fichier JSON.
-     * @throws IOException en cas d'erreur de lecture.
+     * @throws IOException en cas d'erreur de lecture ou de fichier invalide.
      */
     public void load(String path) throws IOException {
         String json = new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8);
         Gson gson = new Gson();
-        Map<String, Object> data = gson.fromJson(json, new TypeToken<Map<String, Object>>(){}.getType());
+        Map<String, Object> data;
+        try {
+            data = gson.fromJson(json, new TypeToken<Map<String, Object>>(){}.getType());
+        } catch (JsonParseException e) {
+            throw new IOException("Fichier de tokenizer JSON invalide : " + path, e);
+        }
+        if (data == null || !(data.get("vocab") instanceof Map) || !(data.get("merges") instanceof Map)) {
+            throw new IOException("Fichier de tokenizer JSON invalide : " + path);
+        }
 
         // Chargement du vocabulaire
         Map<String, Double> vocabMap = (Map<String, Double>) data.get("vocab");
-        vocab = new LinkedHashMap<>();
+        Map<String, Integer> loadedVocab = new LinkedHashMap<>();
         for (Map.Entry<String, Double> entry : vocabMap.entrySet()) {
-            vocab.put(entry.getKey(), entry.getValue().intValue());
+            loadedVocab.put(entry.getKey(), entry.getValue().intValue());
         }
 
         // Chargement des merges et conversion des clés en objets Pair
         Map<String, String> mergesMap = (Map<String, String>) data.get("merges");
-        merges = new LinkedHashMap<>();
+        Map<Pair, String> loadedMerges = new LinkedHashMap<>();
         for (Map.Entry<String, String> entry : mergesMap.entrySet()) {
             String keyStr = entry.getKey();
             String[] parts = keyStr.split("##");
             if (parts.length == 2) {
                 Pair pair = new Pair(parts[0], parts[1]);
-                merges.put(pair, entry.getValue());
+                loadedMerges.put(pair, entry.getValue());
             }
         }
+        TokenizerTables loaded = TokenizerTables.fromMaps(loadedVocab, loadedMerges);
+        synchronized (publishLock) {
+            vocab = loadedVocab;
+            merges = loadedMerges;
+            byteLevel = Boolean.TRUE.equals(data.get("byteLevel"));
+            publish(loaded);
+        }
     }
 
-}
+    /**
+     * Sauvegarde le tokenizer dans le format binaire compact ({@link TokenizerBinaryFormat}).
+     *
+     * @param path Le chemin vers le fichier de sauvegarde.
+     * @throws IOException en cas d'erreur d'écriture.
+     */
+    public void saveBinary(String path) throws IOException {
+        current().saveBinary(Paths.get(path));
+    }
 
+    /**
+     * Charge le tokenizer à partir du format binaire, par projection mémoire.
+     * L'encodeur et le décodeur sont compilés directement à partir des tables,
+     * sans reconstruire le vocabulaire ni les fusions sous forme de maps.
+     *
+     * @param path Le chemin vers le fichier binaire.
+     * @throws IOException en cas d'erreur de lecture ou de fichier corrompu.
+     */
+    public void loadBinary(String path) throws IOException {
+        TokenizerBinaryFormat.Contents contents = TokenizerBinaryFormat.read(Paths.get(path));
+        synchronized (publishLock) {
+            vocab = null;
+            merges = null;
+            byteLevel = (contents.flags() & TokenizerBinaryFormat.FLAG_BYTE_LEVEL) != 0;
+            publish(contents.tables());
+        }
+    }
+
+}
@@ -0,0 +1,441 @@
+package fr.mrqsdf.gptlike.utils;
+
+import fr.mrqsdf.gptlike.resources.LongIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+/**
+ * Moteur d'entraînement BPE incrémental.
+ * <p>
+ * Au lieu de recompter toutes les paires à chaque fusion, le moteur maintient :
+ * <ul>
+ *   <li>le nombre d'occurrences de chaque paire de symboles adjacents ;</li>
+ *   <li>un index paire → mots qui contiennent (ou ont contenu) cette paire ;</li>
+ *   <li>un tas de priorité des paires, invalidé paresseusement.</li>
+ * </ul>
+ * Une fusion ne met à jour que les mots qui contiennent la paire fusionnée.
+ * En cas d'égalité de fréquence, la paire la plus petite dans l'ordre lexicographique
+ * (premier symbole, puis second) est choisie, ce qui rend l'entraînement déterministe.
+ * <p>
+ * Les symboles sont internés dans une {@link SymbolTable} : les mots sont des tableaux d'int,
+ * les paires des clés long, et toutes les tables sont à valeurs primitives.
+ * <p>
+ * Les mots peuvent être répartis en shards, chacun avec son propre index paire → mots : une fusion
+ * est alors appliquée par tous les shards en parallèle, puis leurs variations de comptes sont
+ * additionnées dans les comptes globaux. L'addition étant commutative et l'ordre du tas total,
+ * le résultat est identique à celui d'un entraînement sur un seul thread.
+ */
+public class BPETrainer {
+
+    // Nombre minimal de mots par shard : en deçà, la répartition coûte plus qu'elle ne rapporte
+    private static final int MIN_WORDS_PER_SHARD = 4096;
+    // Nombre minimal de mots candidats pour appliquer une fusion en parallèle
+    private static final int PARALLEL_THRESHOLD = 2048;
+
+    private final SymbolTable symbols;
+    // Symboles courants de chaque mot (seuls les wordLengths[w] premiers sont valides) et fréquence associée
+    private final int[][] words;
+    private final int[] wordLengths;
+    private final int[] frequencies;
+    private final Shard[] shards;
+    private final ForkJoinPool pool;
+    // Nombre d'occurrences pondérées de chaque paire présente
+    private final LongIntHashMap pairCounts;
+    // Somme des variations de comptes des shards pendant une fusion
+    private final LongIntHashMap deltas = new LongIntHashMap(64, 0);
+    // Paires disparues à la dernière fusion, retirées des index des shards au début de la suivante
+    private long[] vanished = new long[64];
+    private int vanishedCount;
+    // Tas des paires ; une entrée est obsolète si son compte ne correspond plus à pairCounts
+    private long[] heapPairs = new long[64];
+    private int[] heapCounts = new int[64];
+    private int heapSize;
+
+    /**
+     * Construit le moteur à partir du découpage initial des mots, sur un seul thread.
+     *
+     * @param symbols     la table des symboles utilisée pour les mots (enrichie à chaque fusion).
+     * @param words       identifiants des symboles de chaque mot (les tableaux sont modifiés en place).
+     * @param frequencies fréquence de chaque mot dans le corpus, au même indice.
+     */
+    public BPETrainer(SymbolTable symbols, int[][] words, int[] frequencies) {
+        this(symbols, words, frequencies, 1);
+    }
+
+    /**
+     * Construit le moteur en répartissant les mots entre {@code parallelism} shards au plus,
+     * traités sur le pool ForkJoin commun.
+     *
+     * @param symbols     la table des symboles utilisée pour les mots (enrichie à chaque fusion).
+     * @param words       identifiants des symboles de chaque mot (les tableaux sont modifiés en place).
+     * @param frequencies fréquence de chaque mot dans le corpus, au même indice.
+     * @param parallelism le nombre maximal de shards traités en parallèle.
+     */
+    public BPETrainer(SymbolTable symbols, int[][] words, int[] frequencies, int parallelism) {
+        this.symbols = symbols;
+        int shardCount = Math.max(1, Math.min(parallelism, words.length / MIN_WORDS_PER_SHARD));
+        this.pool = shardCount > 1 ? ForkJoinPool.commonPool() : null;
+        this.words = words;
+        this.frequencies = frequencies;
+        this.wordLengths = new int[words.length];
+        this.shards = new Shard[shardCount];
+        for (int s = 0; s < shardCount; s++) {
+            shards[s] = new Shard(words, wordLengths, frequencies, s, shardCount);
+        }
+        this.pairCounts = new LongIntHashMap(words.length * 4, 0);
+
+        forEachShard(shardCount > 1, Shard::index);
+        for (Shard shard : shards) {
+            shard.deltas.forEach(pairCounts::addTo);
+            shard.deltas.clear();
+        }
+        pairCounts.forEach(this::push);
+    }
+
+    /**
+     * @return le nombre de shards entre lesquels les mots sont répartis.
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Retourne la paire la plus fréquente sans la retirer, ou -1 s'il n'y a plus de paire.
+     * Les entrées obsolètes du tas sont éliminées au passage.
+     *
+     * @return la clé de la meilleure paire courante (voir {@link SymbolTable#pairKey(int, int)}), ou -1.
+     */
+    public long bestPair() {
+        while (heapSize > 0) {
+            long top = heapPairs[0];
+            if (pairCounts.get(top) == heapCounts[0]) {
+                return top;
+            }
+            pop();
+        }
+        return -1;
+    }
+
+    /**
+     * @param pair la clé de la paire recherchée.
+     * @return le nombre d'occurrences pondérées de la paire, 0 si elle est absente.
+     */
+    public int getCount(long pair) {
+        return pairCounts.get(pair);
+    }
+
+    /**
+     * @return la table des symboles du moteur.
+     */
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * Copie le découpage courant des mots qui ont encore au moins deux symboles ;
+     * à appeler entre deux fusions.
+     */
+    TrainingCheckpoint.Words snapshotWords() {
+        int wordCount = 0;
+        int symbolTotal = 0;
+        for (int length : wordLengths) {
+            if (length > 1) {
+                wordCount++;
+                symbolTotal += length;
+            }
+        }
+        int[] snapshotFrequencies = new int[wordCount];
+        int[] snapshotLengths = new int[wordCount];
+        int[] snapshotSymbols = new int[symbolTotal];
+        int position = 0;
+        int i = 0;
+        for (int w = 0; w < words.length; w++) {
+            int length = wordLengths[w];
+            if (length > 1) {
+                snapshotFrequencies[i] = frequencies[w];
+                snapshotLengths[i++] = length;
+                System.arraycopy(words[w], 0, snapshotSymbols, position, length);
+                position += length;
+            }
+        }
+        return new TrainingCheckpoint.Words(snapshotFrequencies, snapshotLengths, snapshotSymbols);
+    }
+
+    /**
+     * Applique la fusion de la paire sur tous les mots qui la contiennent
+     * et met à jour les comptes de paires de ces seuls mots.
+     *
+     * @param pair la clé de la paire à fusionner.
+     * @return l'identifiant du symbole résultant de la fusion.
+     */
+    public int merge(long pair) {
+        int first = SymbolTable.left(pair);
+        int second = SymbolTable.right(pair);
+        int merged = symbols.intern(symbols.symbol(first) + symbols.symbol(second));
+
+        int candidates = 0;
+        for (Shard shard : shards) {
+            candidates += shard.candidateCount(pair);
+        }
+        if (candidates == 0) {
+            return merged;
+        }
+        long[] removed = vanished;
+        int removedCount = vanishedCount;
+        forEachShard(candidates >= PARALLEL_THRESHOLD,
+                shard -> shard.merge(pair, first, second, merged, removed, removedCount));
+        vanishedCount = 0;
+
+        // Report des variations et publication des nouveaux comptes dans le tas
+        LongIntHashMap total = shards[0].deltas;
+        if (shards.length > 1) {
+            deltas.clear();
+            for (Shard shard : shards) {
+                shard.deltas.forEach(deltas::addTo);
+            }
+            total = deltas;
+        }
+        total.forEach((changed, delta) -> {
+            if (delta == 0) {
+                return;
+            }
+            int count = pairCounts.addTo(changed, delta);
+            if (count <= 0) {
+                pairCounts.remove(changed);
+                addVanished(changed);
+            } else {
+                push(changed, count);
+            }
+        });
+        return merged;
+    }
+
+    private void addVanished(long pair) {
+        if (vanishedCount == vanished.length) {
+            vanished = Arrays.copyOf(vanished, vanishedCount * 2);
+        }
+        vanished[vanishedCount++] = pair;
+    }
+
+    private void forEachShard(boolean parallel, Consumer<Shard> task) {
+        if (!parallel || shards.length == 1) {
+            for (Shard shard : shards) {
+                task.accept(shard);
+            }
+            return;
+        }
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(shards.length);
+        for (Shard shard : shards) {
+            tasks.add(ForkJoinTask.adapt(() -> task.accept(shard)));
+        }
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+    }
+
+    /**
+     * Part des mots (un mot sur {@code stride}) avec son propre index paire → mots.
+     * Un shard n'est modifié que par le thread qui lui applique une fusion ; les tableaux
+     * de mots sont partagés, mais chaque indice n'appartient qu'à un shard.
+     */
+    private static final class Shard {
+        private final int[][] words;
+        private final int[] wordLengths;
+        private final int[] frequencies;
+        private final int offset;
+        private final int stride;
+        // Index des mots dans lesquels une paire apparaît (peut contenir des entrées obsolètes) :
+        // paire -> liste, puis liste -> indices des mots
+        private final LongIntHashMap pairLists;
+        private int[][] lists = new int[64][];
+        private int[] listSizes = new int[64];
+        private int[] freeLists = new int[64];
+        private int freeCount;
+        private int listCount;
+        // Variations de comptes accumulées pendant une fusion
+        private final LongIntHashMap deltas = new LongIntHashMap(64, 0);
+
+        Shard(int[][] words, int[] wordLengths, int[] frequencies, int offset, int stride) {
+            this.words = words;
+            this.wordLengths = wordLengths;
+            this.frequencies = frequencies;
+            this.offset = offset;
+            this.stride = stride;
+            this.pairLists = new LongIntHashMap(words.length * 4 / stride, -1);
+        }
+
+        // Indexation initiale ; les comptes des paires du shard sont laissés dans deltas
+        void index() {
+            for (int w = offset; w < words.length; w += stride) {
+                int[] word = words[w];
+                wordLengths[w] = word.length;
+                for (int i = 0; i < word.length - 1; i++) {
+                    long pair = SymbolTable.pairKey(word[i], word[i + 1]);
+                    deltas.addTo(pair, frequencies[w]);
+                    addWord(pair, w);
+                }
+            }
+        }
+
+        int candidateCount(long pair) {
+            int list = pairLists.get(pair);
+            return list < 0 ? 0 : listSizes[list];
+        }
+
+        void merge(long pair, int first, int second, int merged, long[] vanished, int vanishedCount) {
+            for (int v = 0; v < vanishedCount; v++) {
+                int stale = pairLists.remove(vanished[v]);
+                if (stale >= 0) {
+                    freeList(stale);
+                }
+            }
+            deltas.clear();
+            int list = pairLists.remove(pair);
+            if (list < 0) {
+                return;
+            }
+            int[] candidates = lists[list];
+            int candidateCount = listSizes[list];
+            for (int c = 0; c < candidateCount; c++) {
+                int w = candidates[c];
+                int[] word = words[w];
+                int length = wordLengths[w];
+                if (!contains(word, length, first, second)) {
+                    continue;
+                }
+                int freq = frequencies[w];
+                for (int i = 0; i < length - 1; i++) {
+                    deltas.addTo(SymbolTable.pairKey(word[i], word[i + 1]), -freq);
+                }
+                // Fusion de gauche à droite, sans chevauchement
+                int out = 0;
+                for (int i = 0; i < length; i++) {
+                    if (i < length - 1 && word[i] == first && word[i + 1] == second) {
+                        word[out++] = merged;
+                        i++;
+                    } else {
+                        word[out++] = word[i];
+                    }
+                }
+                wordLengths[w] = out;
+                for (int i = 0; i < out - 1; i++) {
+                    long newPair = SymbolTable.pairKey(word[i], word[i + 1]);
+                    deltas.addTo(newPair, freq);
+                    addWord(newPair, w);
+                }
+            }
+            freeList(list);
+        }
+
+        private static boolean contains(int[] word, int length, int first, int second) {
+            for (int i = 0; i < length - 1; i++) {
+                if (word[i] == first && word[i + 1] == second) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void addWord(long pair, int w) {
+            int list = pairLists.get(pair);
+            if (list < 0) {
+                list = allocateList();
+                pairLists.put(pair, list);
+            }
+            int size = listSizes[list];
+            int[] entries = lists[list];
+            // Un mot qui contient plusieurs fois la paire n'est indexé qu'une fois d'affilée
+            if (size > 0 && entries[size - 1] == w) {
+                return;
+            }
+            if (size == entries.length) {
+                entries = Arrays.copyOf(entries, size * 2);
+                lists[list] = entries;
+            }
+            entries[size] = w;
+            listSizes[list] = size + 1;
+        }
+
+        private int allocateList() {
+            if (freeCount > 0) {
+                return freeLists[--freeCount];
+            }
+            if (listCount == lists.length) {
+                lists = Arrays.copyOf(lists, listCount * 2);
+                listSizes = Arrays.copyOf(listSizes, listCount * 2);
+            }
+            lists[listCount] = new int[4];
+            return listCount++;
+        }
+
+        private void freeList(int list) {
+            listSizes[list] = 0;
+            if (freeCount == freeLists.length) {
+                freeLists = Arrays.copyOf(freeLists, freeCount * 2);
+            }
+            freeLists[freeCount++] = list;
+        }
+    }
+
+    // Priorité : fréquence décroissante, puis ordre lexicographique des symboles
+    private boolean before(int countA, long pairA, int countB, long pairB) {
+        if (countA != countB) {
+            return countA > countB;
+        }
+        return comparePairs(pairA, pairB) < 0;
+    }
+
+    private int comparePairs(long a, long b) {
+        int leftA = SymbolTable.left(a);
+        int leftB = SymbolTable.left(b);
+        if (leftA != leftB) {
+            return symbols.symbol(leftA).compareTo(symbols.symbol(leftB));
+        }
+        int rightA = SymbolTable.right(a);
+        int rightB = SymbolTable.right(b);
+        return rightA == rightB ? 0 : symbols.symbol(rightA).compareTo(symbols.symbol(rightB));
+    }
+
+    private void push(long pair, int count) {
+        if (heapSize == heapPairs.length) {
+            heapPairs = Arrays.copyOf(heapPairs, heapSize * 2);
+            heapCounts = Arrays.copyOf(heapCounts, heapSize * 2);
+        }
+        int i = heapSize++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!before(count, pair, heapCounts[parent], heapPairs[parent])) {
+                break;
+            }
+            heapPairs[i] = heapPairs[parent];
+            heapCounts[i] = heapCounts[parent];
+            i = parent;
+        }
+        heapPairs[i] = pair;
+        heapCounts[i] = count;
+    }
+
+    private void pop() {
+        long pair = heapPairs[--heapSize];
+        int count = heapCounts[heapSize];
+        int i = 0;
+        int half = heapSize >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < heapSize && before(heapCounts[child + 1], heapPairs[child + 1], heapCounts[child], heapPairs[child])) {
+                child++;
+            }
+            if (!before(heapCounts[child], heapPairs[child], count, pair)) {
+                break;
+            }
+            heapPairs[i] = heapPairs[child];
+            heapCounts[i] = heapCounts[child];
+            i = child;
+        }
+        heapPairs[i] = pair;
+        heapCounts[i] = count;
+    }
+}
@@ -0,0 +1,130 @@
+package fr.mrqsdf.gptlike.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Outils du mode BPE au niveau octet.
+ * <p>
+ * L'alphabet de base est formé des 256 valeurs d'octet UTF-8. Pour que les symboles restent des
+ * chaînes (vocabulaire, fusions, JSON), chaque octet est représenté par un caractère imprimable,
+ * selon la correspondance de GPT-2 : les octets imprimables gardent leur caractère Latin-1,
+ * les autres sont décalés au-delà de U+0100. Un symbole de n caractères représente donc exactement
+ * n octets, et le décodage est sans perte.
+ * <p>
+ * Le découpage en pré-tokens sur les octets est assuré par {@link PreTokenizer}.
+ */
+public final class ByteLevel {
+
+    /** Nombre de symboles de base en mode octet. */
+    public static final int ALPHABET_SIZE = 256;
+
+    private static final char[] BYTE_TO_CHAR = new char[ALPHABET_SIZE];
+    // 68 octets non imprimables sont décalés au-delà de U+0100
+    private static final int[] CHAR_TO_BYTE = new int[ALPHABET_SIZE + 68];
+
+    static {
+        Arrays.fill(CHAR_TO_BYTE, -1);
+        int shifted = 0;
+        for (int b = 0; b < ALPHABET_SIZE; b++) {
+            boolean printable = (b >= '!' && b <= '~') || (b >= 0xA1 && b <= 0xAC) || (b >= 0xAE && b <= 0xFF);
+            char c = printable ? (char) b : (char) (ALPHABET_SIZE + shifted++);
+            BYTE_TO_CHAR[b] = c;
+            CHAR_TO_BYTE[c] = b;
+        }
+    }
+
+    private ByteLevel() {
+    }
+
+    /**
+     * @param b un octet.
+     * @return le caractère qui représente cet octet dans les symboles.
+     */
+    public static char symbolChar(int b) {
+        return BYTE_TO_CHAR[b & 0xFF];
+    }
+
+    /**
+     * @param c un caractère de symbole.
+     * @return l'octet qu'il représente, ou -1 s'il ne représente aucun octet.
+     */
+    public static int byteOf(char c) {
+        return c < CHAR_TO_BYTE.length ? CHAR_TO_BYTE[c] : -1;
+    }
+
+    /**
+     * Convertit un texte en symboles d'octets : un caractère par octet de son encodage UTF-8.
+     *
+     * @param text le texte.
+     * @return la chaîne de symboles correspondante.
+     */
+    public static String toSymbols(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        char[] chars = new char[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i] = BYTE_TO_CHAR[bytes[i] & 0xFF];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Convertit une chaîne de symboles d'octets en octets.
+     *
+     * @param symbol le symbole.
+     * @return les octets représentés, ou null si la chaîne n'est pas un symbole d'octets.
+     */
+    public static byte[] toBytes(String symbol) {
+        byte[] bytes = new byte[symbol.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            int b = byteOf(symbol.charAt(i));
+            if (b < 0) {
+                return null;
+            }
+            bytes[i] = (byte) b;
+        }
+        return bytes;
+    }
+
+    /**
+     * @param lead le premier octet d'une séquence UTF-8.
+     * @return la longueur annoncée de la séquence, 1 pour un octet isolé ou invalide.
+     */
+    public static int sequenceLength(int lead) {
+        if (lead >= 0xC0 && lead < 0xE0) {
+            return 2;
+        } else if (lead >= 0xE0 && lead < 0xF0) {
+            return 3;
+        } else if (lead >= 0xF0 && lead < 0xF8) {
+            return 4;
+        }
+        return 1;
+    }
+
+    /**
+     * Retourne la longueur du plus long préfixe qui ne se termine pas au milieu d'une séquence UTF-8.
+     *
+     * @param bytes  les octets.
+     * @param length le nombre d'octets valides.
+     * @return la longueur du préfixe décodable sans couper de caractère.
+     */
+    public static int completePrefix(byte[] bytes, int length) {
+        int i = 0;
+        while (i < length) {
+            int n = sequenceLength(bytes[i] & 0xFF);
+            if (i + n > length) {
+                // Séquence incomplète seulement si les octets présents sont bien des octets de continuation
+                boolean pending = true;
+                for (int k = i + 1; k < length; k++) {
+                    pending &= (bytes[k] & 0xC0) == 0x80;
+                }
+                if (pending) {
+                    return i;
+                }
+                n = 1;
+            }
+            i += n;
+        }
+        return length;
+    }
+}
@@ -0,0 +1,81 @@
+package fr.mrqsdf.gptlike.utils;
+
+import fr.mrqsdf.gptlike.Main;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Écriture des points de reprise d'un entraînement sur un thread dédié.
+ * <p>
+ * Le thread d'entraînement ne fait que copier l'état ; la sérialisation et l'écriture sur disque
+ * se font en arrière-plan. Si l'écriture précédente n'est pas terminée, le point de reprise est
+ * sauté plutôt que d'attendre ou d'accumuler des copies en mémoire.
+ */
+class CheckpointWriter implements AutoCloseable {
+
+    private static final Logger logger = Main.logger;
+
+    private final Path path;
+    private final int interval;
+    private final ExecutorService executor;
+    private Future<?> inFlight;
+
+    CheckpointWriter(Path path, int interval) {
+        this.path = path;
+        this.interval = interval;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tokenizer-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @param mergeCount le nombre de fusions apprises.
+     * @return vrai si un point de reprise est dû après ce nombre de fusions.
+     */
+    boolean isDue(int mergeCount) {
+        return mergeCount % interval == 0;
+    }
+
+    /**
+     * Capture l'état sur le thread appelant et en confie l'écriture au thread dédié.
+     *
+     * @param capture la copie de l'état, appelée seulement si le point de reprise est écrit.
+     * @return faux si le point de reprise a été sauté.
+     */
+    boolean offer(Supplier<TrainingCheckpoint> capture) {
+        if (inFlight != null && !inFlight.isDone()) {
+            return false;
+        }
+        TrainingCheckpoint checkpoint = capture.get();
+        inFlight = executor.submit(() -> {
+            try {
+                checkpoint.write(path);
+            } catch (IOException e) {
+                logger.warning(() -> "Échec de l'écriture du point de reprise " + path + " : " + e.getMessage());
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Attend la fin de l'écriture en cours et arrête le thread dédié.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
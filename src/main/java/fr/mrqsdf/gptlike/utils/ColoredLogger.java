@@ -23,29 +23,31 @@ public class ColoredLogger {
     public static class ColoredFormatter extends Formatter {
         @Override
         public String format(LogRecord record) {
-            String color;
             Level level = record.getLevel();
+            String message = formatMessage(record);
 
+            // Assemblage direct, sans String.format : le formatter est appelé pour chaque enregistrement
+            StringBuilder sb = new StringBuilder(message.length() + 64).append(colorOf(level));
+            if (displayClassName) {
+                //get Name() pour le nom de la classe
+                sb.append(record.getSourceClassName()).append(": ");
+            }
+            sb.append('[').append(level.getName()).append("] ").append(message);
+            return sb.append(RESET).append('\n').toString();
+        }
+
+        private static String colorOf(Level level) {
             if (level == Level.SEVERE) {
-                color = RED;
+                return RED;
             } else if (level == Level.WARNING) {
-                color = YELLOW;
+                return YELLOW;
             } else if (level == Level.INFO) {
-                color = GREEN;
+                return GREEN;
             } else if (level == Level.CONFIG) {
-                color = CYAN;
-            } else {
-                // Pour les niveaux FINE, FINER, FINEST ou autres, on peut choisir une couleur différente
-                color = BLUE;
+                return CYAN;
             }
-
-            // On peut personnaliser la forme du message ici
-
-            //get Name() pour le nom de la classe
-            String className = record.getSourceClassName();
-            String message = String.format("[%s] %s", level.getName(), formatMessage(record));
-            String formattedMessage = displayClassName ? String.format("%s: %s", className, message) : message;
-            return color + formattedMessage + RESET + "\n";
+            // Pour les niveaux FINE, FINER, FINEST ou autres, on peut choisir une couleur différente
+            return BLUE;
         }
     }
 }
@@ -3,20 +3,27 @@ package fr.mrqsdf.gptlike.utils;
 import fr.mrqsdf.gptlike.Main;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class Dataset {
     private static final Logger logger = Main.logger;
 
-    // Les données brutes sous la forme d'une liste de Map (chaque map représente une ligne du dataset)
-    private final List<Map<String, String>> rawData;
+    // Chargeur du fichier source, relu en flux à chaque passe : les données brutes ne sont pas conservées
+    private final DatasetLoader loader;
     // Le résultat du prétraitement sera stocké dans cette liste
     private List<String> data;
     // Nombre maximum d'éléments à conserver après prétraitement
     private final int maxLength;
+    // Étapes du prétraitement (normalisation, filtres, déduplication)
+    private final TextPipeline pipeline;
 
     /**
      * Constructeur par défaut qui charge le dataset depuis le chemin par défaut
@@ -29,17 +36,32 @@ public class Dataset {
     }
 
     /**
-     * Constructeur avec spécification du chemin du fichier JSON et du nombre maximum d'éléments.
+     * Constructeur avec spécification du chemin du fichier (JSON ou JSON Lines) et du nombre maximum d'éléments.
+     * Le fichier n'est lu qu'au moment du prétraitement ou de la lecture en flux.
      *
-     * @param datasetFilePath Le chemin vers le fichier JSON du dataset.
+     * @param datasetFilePath Le chemin vers le fichier du dataset.
      * @param maxLength Nombre maximum d'éléments à conserver après prétraitement.
-     * @throws IOException en cas d'erreur lors du chargement du fichier.
+     * @throws IOException si le fichier n'existe pas ou n'est pas lisible.
      */
     public Dataset(String datasetFilePath, int maxLength) throws IOException {
-        DatasetLoader loader = new DatasetLoader(datasetFilePath);
-        // Charge le dataset sous forme de List<Map<String, String>>
-        this.rawData = loader.loadDataset();
+        this(datasetFilePath, maxLength, TextPipeline.defaults());
+    }
+
+    /**
+     * Constructeur avec spécification de la chaîne de prétraitement.
+     *
+     * @param datasetFilePath Le chemin vers le fichier du dataset.
+     * @param maxLength Nombre maximum d'éléments à conserver après prétraitement.
+     * @param pipeline Les étapes du prétraitement, appliquées à chaque entrée "utt".
+     * @throws IOException si le fichier n'existe pas ou n'est pas lisible.
+     */
+    public Dataset(String datasetFilePath, int maxLength, TextPipeline pipeline) throws IOException {
+        if (!Files.isReadable(Paths.get(datasetFilePath))) {
+            throw new NoSuchFileException(datasetFilePath);
+        }
+        this.loader = new DatasetLoader(datasetFilePath);
         this.maxLength = maxLength;
+        this.pipeline = pipeline;
         this.data = null;
     }
 
@@ -47,30 +69,50 @@ public class Dataset {
      * Méthode de prétraitement du dataset.
      * <ul>
      *   <li>Extraction de la valeur associée à la clé "utt" pour chaque entrée.</li>
-     *   <li>Suppression des entrées vides ou composées uniquement d'espaces.</li>
-     *   <li>Suppression des entrées dont la longueur est inférieure ou égale à 5 caractères.</li>
+     *   <li>Application de la chaîne de prétraitement ({@link TextPipeline}) ; par défaut, suppression
+     *   des espaces aux extrémités et des entrées de 5 caractères ou moins.</li>
      *   <li>Conservation d'un maximum de maxLength éléments.</li>
      * </ul>
+     * Le fichier est lu en une seule passe ; seules les entrées conservées sont gardées en mémoire.
+     * Le nombre d'entrées retirées par chaque étape est journalisé.
      */
     public void preprocess() {
         logger.info("Début du prétraitement du dataset");
-        List<String> processedData = new ArrayList<>();
-
-        for (Map<String, String> entry : rawData) {
-            String text = entry.get("utt");
-            if (text != null) {
-                text = text.trim();
-                if (text.length() > 5) {
-                    processedData.add(text);
-                }
-            }
+        try (Stream<String> texts = preprocessedSource()) {
+            this.data = texts.collect(Collectors.toCollection(ArrayList::new));
         }
+        logger.info(() -> "Prétraitement terminé, nombre d'éléments traités : " + data.size());
+        logger.info(() -> "Étapes du prétraitement : " + pipeline.getReport());
+    }
 
-        if (processedData.size() > maxLength) {
-            processedData = processedData.subList(0, maxLength);
+    /**
+     * Retourne les données prétraitées sous forme de flux.
+     * Si {@link #preprocess()} a déjà été appelé, le flux parcourt la liste en mémoire ;
+     * sinon le fichier est relu et prétraité à la volée, sans rien conserver en mémoire.
+     * Le flux doit être fermé après usage.
+     *
+     * @return un flux des textes prétraités.
+     */
+    public Stream<String> stream() {
+        List<String> current = data;
+        return current != null ? current.stream() : preprocessedSource();
+    }
+
+    private Stream<String> preprocessedSource() {
+        Stream<String> source;
+        try {
+            source = loader.streamUtterances();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        this.data = processedData;
-        logger.info("Prétraitement terminé, nombre d'éléments traités : " + data.size());
+        return pipeline.apply(source, maxLength);
+    }
+
+    /**
+     * @return La chaîne de prétraitement, dont les transformations s'appliquent aussi aux textes à encoder.
+     */
+    public TextPipeline getPipeline() {
+        return pipeline;
     }
 
     /**
@@ -82,4 +124,3 @@ public class Dataset {
         return data;
     }
 }
-
@@ -1,13 +1,25 @@
 package fr.mrqsdf.gptlike.utils;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import com.google.gson.Gson;
+import com.google.gson.Strictness;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import fr.mrqsdf.gptlike.Main;
 
 public class DatasetLoader {
@@ -39,7 +51,7 @@ public class DatasetLoader {
      * @throws IOException en cas d'erreur de lecture ou de parsing du fichier.
      */
     public List<Map<String, String>> loadDataset() throws IOException {
-        logger.info("Chargement du dataset depuis : " + datasetFilePath);
+        logger.info(() -> "Chargement du dataset depuis : " + datasetFilePath);
         // Lecture du fichier JSON en UTF-8
         String content = new String(Files.readAllBytes(Paths.get(datasetFilePath)), StandardCharsets.UTF_8);
 
@@ -54,6 +66,139 @@ public class DatasetLoader {
         return dataset.getData();
     }
 
+    /**
+     * Lit le dataset en flux et retourne les valeurs associées à la clé "utt", une par entrée.
+     * Le fichier n'est jamais chargé entièrement en mémoire. Deux formats sont acceptés :
+     * <ul>
+     *   <li>JSON : {@code {"data": [{"utt": "..."}, ...]}} ou directement le tableau d'entrées ;</li>
+     *   <li>JSON Lines (extension .jsonl ou .ndjson) : un objet {@code {"utt": "..."}} par ligne.</li>
+     * </ul>
+     * Les entrées sans "utt" sont ignorées. Le flux doit être fermé après usage
+     * (try-with-resources) ; une erreur de lecture est signalée par une {@link UncheckedIOException}.
+     *
+     * @return un flux séquentiel des textes.
+     * @throws IOException si le fichier ne peut pas être ouvert.
+     */
+    public Stream<String> streamUtterances() throws IOException {
+        logger.info(() -> "Lecture en flux du dataset depuis : " + datasetFilePath);
+        UtteranceIterator iterator = new UtteranceIterator(
+                Files.newBufferedReader(Paths.get(datasetFilePath), StandardCharsets.UTF_8), isJsonLines());
+        Spliterator<String> spliterator = Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(iterator::closeUnchecked);
+    }
+
+    private boolean isJsonLines() {
+        String lower = datasetFilePath.toLowerCase();
+        return lower.endsWith(".jsonl") || lower.endsWith(".ndjson");
+    }
+
+    /**
+     * Itérateur sur les valeurs "utt" lues au fil de l'eau avec un {@link JsonReader}.
+     */
+    private static final class UtteranceIterator implements Iterator<String>, Closeable {
+        private final JsonReader reader;
+        private final boolean jsonLines;
+        private boolean started;
+        private String next;
+
+        UtteranceIterator(Reader source, boolean jsonLines) {
+            this.reader = new JsonReader(source);
+            this.jsonLines = jsonLines;
+            // Le mode permissif autorise plusieurs valeurs de premier niveau (JSON Lines)
+            this.reader.setStrictness(jsonLines ? Strictness.LENIENT : Strictness.LEGACY_STRICT);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                try {
+                    next = advance();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String result = next;
+            next = null;
+            return result;
+        }
+
+        private String advance() throws IOException {
+            if (!started) {
+                started = true;
+                if (!jsonLines) {
+                    openDataArray();
+                }
+            }
+            while (true) {
+                JsonToken token = reader.peek();
+                if (token == JsonToken.END_DOCUMENT || token == JsonToken.END_ARRAY) {
+                    return null;
+                }
+                if (token != JsonToken.BEGIN_OBJECT) {
+                    reader.skipValue();
+                    continue;
+                }
+                String utt = readUtterance();
+                if (utt != null) {
+                    return utt;
+                }
+            }
+        }
+
+        // Positionne le lecteur au début du tableau des entrées
+        private void openDataArray() throws IOException {
+            if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                return;
+            }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("data") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    reader.beginArray();
+                    return;
+                }
+                reader.skipValue();
+            }
+            throw new IOException("Le dataset ne contient pas de tableau \"data\".");
+        }
+
+        private String readUtterance() throws IOException {
+            String utt = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("utt") && reader.peek() == JsonToken.STRING) {
+                    utt = reader.nextString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return utt;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+
+        void closeUnchecked() {
+            try {
+                close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
     /**
      * Classe interne représentant la structure du fichier JSON.
      */
@@ -0,0 +1,182 @@
+package fr.mrqsdf.gptlike.utils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Regroupe en lots les demandes d'encodage concurrentes.
+ * <p>
+ * Chaque demande est déposée dans une file ; un thread dédié la vide par lots d'au plus
+ * {@code maxBatch} textes, encodés ensemble par {@link BPETokenizer#encodeBatch(List)}
+ * ou {@link TokenizerHolder#encodeBatch(List)}.
+ * Sans délai d'attente, un lot contient ce qui est arrivé pendant l'encodage du lot précédent :
+ * une demande isolée part aussitôt, et les lots grossissent avec la charge. Un délai positif
+ * attend davantage de demandes pour former des lots plus grands, au prix de la latence.
+ */
+public class EncodeCoalescer implements AutoCloseable {
+
+    private final Function<List<String>, EncodedBatch> encoder;
+    private final int maxBatch;
+    private final long maxDelayNanos;
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final Thread dispatcher;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private volatile boolean closed;
+
+    /**
+     * @param tokenizer le tokenizer entraîné ou chargé.
+     * @param maxBatch  le nombre maximal de textes par lot.
+     * @param maxDelay  l'attente maximale d'autres demandes avant d'encoder un lot incomplet.
+     */
+    public EncodeCoalescer(BPETokenizer tokenizer, int maxBatch, Duration maxDelay) {
+        this(tokenizer::encodeBatch, maxBatch, maxDelay);
+    }
+
+    /**
+     * Chaque lot est encodé par le tokenizer courant de la référence, y compris après un rechargement.
+     *
+     * @param holder   la référence au tokenizer.
+     * @param maxBatch le nombre maximal de textes par lot.
+     * @param maxDelay l'attente maximale d'autres demandes avant d'encoder un lot incomplet.
+     */
+    public EncodeCoalescer(TokenizerHolder holder, int maxBatch, Duration maxDelay) {
+        this(holder::encodeBatch, maxBatch, maxDelay);
+    }
+
+    private EncodeCoalescer(Function<List<String>, EncodedBatch> encoder, int maxBatch, Duration maxDelay) {
+        if (maxBatch < 1) {
+            throw new IllegalArgumentException("La taille des lots doit être positive : " + maxBatch);
+        }
+        this.encoder = encoder;
+        this.maxBatch = maxBatch;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.dispatcher = new Thread(this::dispatch, "encode-coalescer");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Demande l'encodage d'un texte.
+     *
+     * @param text le texte à encoder.
+     * @return les identifiants, disponibles quand le lot qui contient le texte a été encodé.
+     * @throws RejectedExecutionException si le regroupement est arrêté.
+     */
+    public CompletableFuture<int[]> submit(String text) {
+        if (closed) {
+            throw new RejectedExecutionException("Regroupement des encodages arrêté");
+        }
+        Request request = new Request(text);
+        queue.add(request);
+        // Arrêt concurrent : si la demande est encore dans la file, plus personne ne la traitera
+        if (closed && queue.remove(request)) {
+            throw new RejectedExecutionException("Regroupement des encodages arrêté");
+        }
+        requests.increment();
+        return request.result;
+    }
+
+    private void dispatch() {
+        List<Request> batch = new ArrayList<>(maxBatch);
+        List<String> texts = new ArrayList<>(maxBatch);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                Request first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - 1);
+                if (maxDelayNanos > 0) {
+                    long deadline = System.nanoTime() + maxDelayNanos;
+                    while (batch.size() < maxBatch) {
+                        Request next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                        queue.drainTo(batch, maxBatch - batch.size());
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            for (Request request : batch) {
+                texts.add(request.text);
+            }
+            try {
+                EncodedBatch encoded = encoder.apply(texts);
+                for (int i = 0; i < batch.size(); i++) {
+                    batch.get(i).result.complete(encoded.get(i));
+                }
+            } catch (RuntimeException e) {
+                for (Request request : batch) {
+                    request.result.completeExceptionally(e);
+                }
+            }
+            batches.increment();
+            batch.clear();
+            texts.clear();
+        }
+        // Arrêt : les demandes restantes (après interruption) échouent au lieu d'attendre indéfiniment
+        Request request;
+        while ((request = queue.poll()) != null) {
+            request.result.completeExceptionally(new RejectedExecutionException("Regroupement des encodages arrêté"));
+        }
+    }
+
+    /**
+     * @return le nombre de demandes reçues.
+     */
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    /**
+     * @return le nombre de lots encodés.
+     */
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    /**
+     * @return le nombre moyen de textes par lot.
+     */
+    public double getAverageBatchSize() {
+        long count = batches.sum();
+        return count == 0 ? 0 : (double) requests.sum() / count;
+    }
+
+    /**
+     * Refuse les nouvelles demandes, encode celles déjà reçues et arrête le thread dédié.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            dispatcher.join(TimeUnit.MINUTES.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Request {
+        private final String text;
+        private final CompletableFuture<int[]> result = new CompletableFuture<>();
+
+        Request(String text) {
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package fr.mrqsdf.gptlike.utils;
+
+import java.util.Arrays;
+
+/**
+ * Résultat compact de l'encodage d'un lot de textes.
+ * <p>
+ * Tous les identifiants sont stockés bout à bout dans un seul tableau ; les tokens du
+ * texte {@code i} occupent l'intervalle {@code [offsets[i], offsets[i + 1])}.
+ */
+public class EncodedBatch {
+
+    private final int[] ids;
+    private final int[] offsets;
+
+    /**
+     * @param ids     les identifiants de tous les textes, concaténés.
+     * @param offsets les positions de début de chaque texte, suivies de la taille totale.
+     */
+    public EncodedBatch(int[] ids, int[] offsets) {
+        this.ids = ids;
+        this.offsets = offsets;
+    }
+
+    /**
+     * @return le nombre de textes encodés.
+     */
+    public int size() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * @return le nombre total de tokens.
+     */
+    public int tokenCount() {
+        return offsets[offsets.length - 1];
+    }
+
+    /**
+     * @param index l'indice du texte.
+     * @return la position du premier token du texte dans {@link #getIds()}.
+     */
+    public int start(int index) {
+        return offsets[index];
+    }
+
+    /**
+     * @param index l'indice du texte.
+     * @return la position qui suit le dernier token du texte dans {@link #getIds()}.
+     */
+    public int end(int index) {
+        return offsets[index + 1];
+    }
+
+    /**
+     * @param index l'indice du texte.
+     * @return une copie des identifiants du texte.
+     */
+    public int[] get(int index) {
+        return Arrays.copyOfRange(ids, offsets[index], offsets[index + 1]);
+    }
+
+    /**
+     * @return le tableau plat des identifiants (non copié).
+     */
+    public int[] getIds() {
+        return ids;
+    }
+
+    /**
+     * @return le tableau des positions (non copié), de taille {@code size() + 1}.
+     */
+    public int[] getOffsets() {
+        return offsets;
+    }
+}
@@ -0,0 +1,133 @@
+package fr.mrqsdf.gptlike.utils;
+
+import java.util.Arrays;
+
+/**
+ * Écart entre l'encodage glouton par plus long symbole et l'encodage BPE exact, mesuré sur un corpus.
+ * <p>
+ * Les deux encodages coïncident toujours aux frontières des pré-tokens : la comparaison se fait
+ * donc pré-token par pré-token (chaque occurrence compte), et texte par texte.
+ * Les durées sont celles de l'encodage complet de chaque texte par chacun des deux modes.
+ *
+ * @param texts            le nombre de textes comparés.
+ * @param mismatchedTexts  le nombre de textes dont l'encodage diffère.
+ * @param words            le nombre de pré-tokens comparés.
+ * @param mismatchedWords  le nombre de pré-tokens dont la segmentation diffère.
+ * @param bpeTokens        le nombre de tokens produits par le BPE.
+ * @param greedyTokens     le nombre de tokens produits par le mode glouton.
+ * @param bpeNanos         la durée cumulée de l'encodage BPE.
+ * @param greedyNanos      la durée cumulée de l'encodage glouton.
+ */
+public record GreedyComparison(long texts, long mismatchedTexts, long words, long mismatchedWords,
+                               long bpeTokens, long greedyTokens, long bpeNanos, long greedyNanos) {
+
+    /**
+     * Compare les deux modes d'un encodeur sur les textes fournis.
+     * Le cache de segmentations de l'encodeur n'est pas utilisé, pour comparer les deux algorithmes eux-mêmes.
+     *
+     * @param encoder l'encodeur (quel que soit son mode).
+     * @param texts   les textes du corpus.
+     * @return la comparaison.
+     */
+    public static GreedyComparison measure(BPEEncoder encoder, Iterable<? extends CharSequence> texts) {
+        BPEEncoder bpe = encoder.withCache(null).withGreedy(false);
+        BPEEncoder greedy = bpe.withGreedy(true);
+        long textCount = 0;
+        long mismatchedTexts = 0;
+        long words = 0;
+        long mismatchedWords = 0;
+        long bpeTokens = 0;
+        long greedyTokens = 0;
+        long bpeNanos = 0;
+        long greedyNanos = 0;
+        int[] expected = new int[256];
+        int[] actual = new int[256];
+        for (CharSequence text : texts) {
+            int capacity = bpe.maxTokens(text);
+            if (expected.length < capacity) {
+                expected = new int[capacity];
+                actual = new int[capacity];
+            }
+            long start = System.nanoTime();
+            int expectedCount = bpe.encode(text, expected, 0);
+            long middle = System.nanoTime();
+            int actualCount = greedy.encode(text, actual, 0);
+            long end = System.nanoTime();
+            bpeNanos += middle - start;
+            greedyNanos += end - middle;
+            bpeTokens += expectedCount;
+            greedyTokens += actualCount;
+            textCount++;
+            if (Arrays.equals(expected, 0, expectedCount, actual, 0, actualCount)) {
+                words += countWords(text);
+                continue;
+            }
+            mismatchedTexts++;
+
+            // Comparaison pré-token par pré-token, seulement pour les textes qui diffèrent
+            int length = text.length();
+            int wordStart = 0;
+            while (wordStart < length) {
+                int wordEnd = PreTokenizer.end(text, wordStart, length);
+                CharSequence word = text.subSequence(wordStart, wordEnd);
+                int e = bpe.encode(word, expected, 0);
+                int a = greedy.encode(word, actual, 0);
+                words++;
+                if (!Arrays.equals(expected, 0, e, actual, 0, a)) {
+                    mismatchedWords++;
+                }
+                wordStart = wordEnd;
+            }
+        }
+        return new GreedyComparison(textCount, mismatchedTexts, words, mismatchedWords,
+                bpeTokens, greedyTokens, bpeNanos, greedyNanos);
+    }
+
+    private static long countWords(CharSequence text) {
+        int length = text.length();
+        long count = 0;
+        int start = 0;
+        while (start < length) {
+            start = PreTokenizer.end(text, start, length);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return la proportion de pré-tokens segmentés différemment du BPE.
+     */
+    public double wordMismatchRate() {
+        return words == 0 ? 0 : (double) mismatchedWords / words;
+    }
+
+    /**
+     * @return la proportion de textes encodés différemment du BPE.
+     */
+    public double textMismatchRate() {
+        return texts == 0 ? 0 : (double) mismatchedTexts / texts;
+    }
+
+    /**
+     * @return le nombre de tokens gloutons par token BPE.
+     */
+    public double tokenRatio() {
+        return bpeTokens == 0 ? 0 : (double) greedyTokens / bpeTokens;
+    }
+
+    /**
+     * @return le rapport de vitesse du mode glouton sur le BPE.
+     */
+    public double speedup() {
+        return greedyNanos == 0 ? 0 : (double) bpeNanos / greedyNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "texts=" + texts
+                + " wordMismatch=" + Math.round(wordMismatchRate() * 10000) / 100.0 + "%"
+                + " textMismatch=" + Math.round(textMismatchRate() * 10000) / 100.0 + "%"
+                + " tokenRatio=" + Math.round(tokenRatio() * 1000) / 1000.0
+                + " speedup=" + Math.round(speedup() * 10) / 10.0 + "x";
+    }
+}
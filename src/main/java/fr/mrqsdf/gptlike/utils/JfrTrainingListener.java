@@ -0,0 +1,77 @@
+package fr.mrqsdf.gptlike.utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Publie les métriques d'entraînement sous forme d'événements JFR personnalisés.
+ * <p>
+ * Les événements ne coûtent presque rien tant qu'aucun enregistrement JFR n'est actif ;
+ * ils apparaissent dans JDK Mission Control sous la catégorie « GPT-like / Tokenizer ».
+ */
+public class JfrTrainingListener implements TrainingListener {
+
+    @Override
+    public void onPhaseCompleted(TrainingPhase phase, TrainingMetrics metrics) {
+        PhaseEvent event = new PhaseEvent();
+        if (event.isEnabled()) {
+            event.phase = phase.name();
+            event.phaseDuration = metrics.getPhaseNanos(phase);
+            event.commit();
+        }
+    }
+
+    @Override
+    public boolean onProgress(TrainingMetrics metrics) {
+        ProgressEvent event = new ProgressEvent();
+        if (event.isEnabled()) {
+            event.mergeCount = metrics.getMergeCount();
+            event.mergesPerSecond = metrics.getMergesPerSecond();
+            event.bestPairFrequency = metrics.getBestPairFrequency();
+            event.vocabSize = metrics.getVocabSize();
+            event.usedHeap = metrics.getUsedHeapBytes();
+            event.commit();
+        }
+        return true;
+    }
+
+    @Name("fr.mrqsdf.gptlike.TrainingPhase")
+    @Label("BPE Training Phase")
+    @Category({"GPT-like", "Tokenizer"})
+    @Description("Durée d'une phase de l'entraînement BPE")
+    static class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+
+        @Label("Duration")
+        @Timespan(Timespan.NANOSECONDS)
+        long phaseDuration;
+    }
+
+    @Name("fr.mrqsdf.gptlike.TrainingProgress")
+    @Label("BPE Training Progress")
+    @Category({"GPT-like", "Tokenizer"})
+    @Description("Point de progression de la boucle des fusions BPE")
+    static class ProgressEvent extends Event {
+        @Label("Merges")
+        int mergeCount;
+
+        @Label("Merges Per Second")
+        double mergesPerSecond;
+
+        @Label("Best Pair Frequency")
+        int bestPairFrequency;
+
+        @Label("Vocabulary Size")
+        int vocabSize;
+
+        @Label("Used Heap")
+        @DataAmount
+        long usedHeap;
+    }
+}
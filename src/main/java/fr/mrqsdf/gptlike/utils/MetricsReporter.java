@@ -0,0 +1,34 @@
+package fr.mrqsdf.gptlike.utils;
+
+import fr.mrqsdf.gptlike.Main;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Destination des relevés de {@link TokenizerMetrics} (journal, fichier, système de supervision...).
+ */
+@FunctionalInterface
+public interface MetricsReporter {
+
+    /**
+     * @param snapshot le relevé à publier.
+     */
+    void report(TokenizerMetrics.Snapshot snapshot);
+
+    /**
+     * @return le rapporteur par défaut, qui écrit dans le journal de l'application (mis en forme par {@link ColoredLogger}).
+     */
+    static MetricsReporter logging() {
+        return logging(Main.logger, Level.INFO);
+    }
+
+    /**
+     * @param logger le journal de destination.
+     * @param level  le niveau des messages.
+     * @return un rapporteur qui écrit chaque relevé dans le journal.
+     */
+    static MetricsReporter logging(Logger logger, Level level) {
+        return snapshot -> logger.log(level, () -> "Tokenizer metrics: " + snapshot);
+    }
+}
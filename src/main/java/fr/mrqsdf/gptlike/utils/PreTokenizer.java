@@ -0,0 +1,205 @@
+package fr.mrqsdf.gptlike.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Pré-tokenizer écrit à la main, équivalent à l'expression {@code \w+|[^\w\s]|\s} de java.util.regex.
+ * <p>
+ * Le texte est découpé en :
+ * <ul>
+ *   <li>suites de caractères de mot ({@code [a-zA-Z_0-9]}, comme {@code \w} sans option Unicode) ;</li>
+ *   <li>un caractère d'espacement ({@code [ \t\n\x0B\f\r]}) ;</li>
+ *   <li>tout autre point de code isolé (une paire de substitution forme un seul pré-token).</li>
+ * </ul>
+ * Les pré-tokens sont signalés par leurs bornes (début, fin), sans allouer de sous-chaîne.
+ * La même découpe est disponible sur des octets UTF-8, où un point de code non ASCII
+ * correspond à sa séquence d'octets complète.
+ */
+public final class PreTokenizer {
+
+    // Classe de chaque caractère ASCII
+    private static final byte OTHER = 0;
+    private static final byte WORD = 1;
+    private static final byte SPACE = 2;
+    private static final byte[] ASCII_CLASSES = new byte[128];
+
+    static {
+        for (int c = 0; c < 128; c++) {
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_') {
+                ASCII_CLASSES[c] = WORD;
+            } else if (c == ' ' || (c >= '\t' && c <= '\r')) {
+                ASCII_CLASSES[c] = SPACE;
+            }
+        }
+    }
+
+    private PreTokenizer() {
+    }
+
+    /**
+     * Découpe le texte et transmet les bornes de chaque pré-token, dans l'ordre.
+     *
+     * @param text     le texte à découper.
+     * @param consumer l'action appelée pour chaque pré-token.
+     */
+    public static void split(CharSequence text, SpanConsumer consumer) {
+        int length = text.length();
+        int start = 0;
+        while (start < length) {
+            int end = end(text, start, length);
+            consumer.accept(start, end);
+            start = end;
+        }
+    }
+
+    /**
+     * Découpe les octets UTF-8 compris entre la position et la limite du tampon (qui ne sont pas modifiées)
+     * et transmet les bornes absolues de chaque pré-token, dans l'ordre.
+     *
+     * @param bytes    les octets à découper.
+     * @param consumer l'action appelée pour chaque pré-token.
+     */
+    public static void split(ByteBuffer bytes, SpanConsumer consumer) {
+        int limit = bytes.limit();
+        int start = bytes.position();
+        while (start < limit) {
+            int end = end(bytes, start, limit);
+            consumer.accept(start, end);
+            start = end;
+        }
+    }
+
+    /**
+     * Retourne la fin du pré-token qui commence à {@code start}.
+     *
+     * @param text  le texte.
+     * @param start la position de début, inférieure à {@code limit}.
+     * @param limit la fin du texte à découper.
+     * @return la position qui suit le pré-token.
+     */
+    public static int end(CharSequence text, int start, int limit) {
+        char c = text.charAt(start);
+        if (c < 128) {
+            if (ASCII_CLASSES[c] != WORD) {
+                return start + 1;
+            }
+            int end = start + 1;
+            while (end < limit) {
+                char next = text.charAt(end);
+                if (next >= 128 || ASCII_CLASSES[next] != WORD) {
+                    break;
+                }
+                end++;
+            }
+            return end;
+        }
+        if (Character.isHighSurrogate(c) && start + 1 < limit && Character.isLowSurrogate(text.charAt(start + 1))) {
+            return start + 2;
+        }
+        return start + 1;
+    }
+
+    /**
+     * Retourne la fin du pré-token qui commence à {@code start}, sur des octets UTF-8.
+     *
+     * @param bytes les octets (lus par accès absolu).
+     * @param start la position de début, inférieure à {@code limit}.
+     * @param limit la position de fin des données.
+     * @return la position qui suit le pré-token.
+     */
+    public static int end(ByteBuffer bytes, int start, int limit) {
+        int b = bytes.get(start) & 0xFF;
+        if (b < 128) {
+            if (ASCII_CLASSES[b] != WORD) {
+                return start + 1;
+            }
+            int end = start + 1;
+            while (end < limit) {
+                int next = bytes.get(end) & 0xFF;
+                if (next >= 128 || ASCII_CLASSES[next] != WORD) {
+                    break;
+                }
+                end++;
+            }
+            return end;
+        }
+        int length = ByteLevel.sequenceLength(b);
+        if (length == 1 || start + length > limit) {
+            return start + 1;
+        }
+        for (int i = 1; i < length; i++) {
+            if ((bytes.get(start + i) & 0xC0) != 0x80) {
+                return start + 1;
+            }
+        }
+        return start + length;
+    }
+
+    /**
+     * Retourne la position avant laquelle la découpe du texte ne peut plus changer, quels que soient
+     * les caractères qui suivront {@code limit} : le début d'un mot qui touche la limite,
+     * ou un demi-caractère de substitution final. Sert au découpage d'un flux en blocs.
+     *
+     * @param text  le texte.
+     * @param start le début de la zone à découper.
+     * @param limit la fin des données reçues jusqu'ici.
+     * @return une frontière de pré-token comprise entre {@code start} et {@code limit}.
+     */
+    public static int stableEnd(CharSequence text, int start, int limit) {
+        if (limit == start) {
+            return start;
+        }
+        char last = text.charAt(limit - 1);
+        if (Character.isHighSurrogate(last)) {
+            return limit - 1;
+        }
+        int end = limit;
+        while (end > start) {
+            char c = text.charAt(end - 1);
+            if (c >= 128 || ASCII_CLASSES[c] != WORD) {
+                break;
+            }
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Retourne la position avant laquelle la découpe des octets UTF-8 ne peut plus changer, quels que
+     * soient les octets qui suivront {@code limit} : le début d'un mot qui touche la limite, ou celui
+     * d'une séquence UTF-8 encore incomplète. Sert au découpage d'un flux en blocs.
+     *
+     * @param bytes les octets (lus par accès absolu).
+     * @param start le début de la zone à découper.
+     * @param limit la fin des données reçues jusqu'ici.
+     * @return une frontière de pré-token comprise entre {@code start} et {@code limit}.
+     */
+    public static int stableEnd(ByteBuffer bytes, int start, int limit) {
+        for (int i = Math.max(start, limit - 3); i < limit; i++) {
+            if (i + ByteLevel.sequenceLength(bytes.get(i) & 0xFF) > limit) {
+                return i;
+            }
+        }
+        int end = limit;
+        while (end > start) {
+            int b = bytes.get(end - 1) & 0xFF;
+            if (b >= 128 || ASCII_CLASSES[b] != WORD) {
+                break;
+            }
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Action appelée pour chaque pré-token trouvé.
+     */
+    @FunctionalInterface
+    public interface SpanConsumer {
+        /**
+         * @param start le début du pré-token (inclus).
+         * @param end   la fin du pré-token (exclue).
+         */
+        void accept(int start, int end);
+    }
+}
@@ -0,0 +1,182 @@
+package fr.mrqsdf.gptlike.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache borné et thread-safe associant un pré-token (mot, ponctuation) à sa segmentation BPE,
+ * c'est-à-dire la suite d'identifiants obtenue après fusion.
+ * <p>
+ * Le cache est découpé en segments verrouillés indépendamment pour limiter la contention ;
+ * chaque segment applique la politique d'éviction choisie sur sa part de la capacité.
+ */
+public class SegmentationCache {
+
+    /**
+     * Politique d'éviction appliquée lorsque le cache est plein.
+     */
+    public enum EvictionPolicy {
+        /** Évince l'entrée la moins récemment utilisée. */
+        LRU,
+        /** Évince l'entrée la plus anciennement insérée. */
+        FIFO
+    }
+
+    private final int capacity;
+    private final EvictionPolicy policy;
+    private final Segment[] segments;
+    private final int segmentMask;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Crée un cache LRU de la capacité donnée.
+     *
+     * @param capacity nombre maximal de pré-tokens conservés.
+     */
+    public SegmentationCache(int capacity) {
+        this(capacity, EvictionPolicy.LRU);
+    }
+
+    /**
+     * @param capacity nombre maximal de pré-tokens conservés.
+     * @param policy   politique d'éviction.
+     */
+    public SegmentationCache(int capacity, EvictionPolicy policy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("La capacité du cache doit être positive : " + capacity);
+        }
+        this.capacity = capacity;
+        this.policy = policy;
+        int segmentCount = Integer.highestOneBit(Math.max(1, Math.min(
+                Runtime.getRuntime().availableProcessors() * 2, capacity / 16)));
+        this.segments = new Segment[segmentCount];
+        this.segmentMask = segmentCount - 1;
+        int perSegment = (capacity + segmentCount - 1) / segmentCount;
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment(perSegment, policy == EvictionPolicy.LRU);
+        }
+    }
+
+    /**
+     * @param token le pré-token recherché.
+     * @return la segmentation mémorisée, ou null. Le tableau retourné ne doit pas être modifié.
+     */
+    public int[] get(String token) {
+        Segment segment = segmentFor(token);
+        int[] ids;
+        synchronized (segment) {
+            ids = segment.get(token);
+        }
+        if (ids != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return ids;
+    }
+
+    /**
+     * Mémorise la segmentation d'un pré-token.
+     *
+     * @param token le pré-token.
+     * @param ids   sa segmentation ; le tableau ne doit plus être modifié ensuite.
+     */
+    public void put(String token, int[] ids) {
+        Segment segment = segmentFor(token);
+        synchronized (segment) {
+            segment.put(token, ids);
+        }
+    }
+
+    /**
+     * Vide le cache, par exemple après un réentraînement qui change les identifiants.
+     * Les compteurs sont conservés.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * Crée un cache vide de même capacité et de même politique, avec des compteurs à zéro.
+     *
+     * @return le nouveau cache.
+     */
+    public SegmentationCache emptyCopy() {
+        return new SegmentationCache(capacity, policy);
+    }
+
+    /**
+     * @return le nombre d'entrées actuellement en cache.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public EvictionPolicy getPolicy() {
+        return policy;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return la proportion de recherches servies par le cache, 0 si aucune recherche.
+     */
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    private Segment segmentFor(String token) {
+        int h = token.hashCode();
+        return segments[(h ^ (h >>> 16)) & segmentMask];
+    }
+
+    private final class Segment extends LinkedHashMap<String, int[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxEntries;
+
+        Segment(int maxEntries, boolean accessOrder) {
+            super(16, 0.75f, accessOrder);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, int[]> eldest) {
+            if (size() > maxEntries) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package fr.mrqsdf.gptlike.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Décodeur incrémental pour la génération token par token.
+ * <p>
+ * Chaque token est ajouté à un {@link StringBuilder} réutilisé, en O(1) par token.
+ * En mode octet, les octets d'un caractère incomplet sont retenus jusqu'à ce que le token
+ * suivant le complète, si bien que le texte produit n'est jamais coupé au milieu d'un caractère.
+ * Une instance n'est pas thread-safe : il faut en créer une par flux de génération.
+ */
+public class StreamingDecoder {
+
+    private final BPEDecoder decoder;
+    private final StringBuilder buffer;
+    // Octets en attente de la fin d'un caractère (mode octet uniquement)
+    private byte[] pending = new byte[8];
+    private int pendingLength;
+
+    /**
+     * @param decoder la table de décodage à utiliser.
+     */
+    public StreamingDecoder(BPEDecoder decoder) {
+        this(decoder, 256);
+    }
+
+    /**
+     * @param decoder  la table de décodage à utiliser.
+     * @param capacity la capacité initiale du tampon.
+     */
+    public StreamingDecoder(BPEDecoder decoder, int capacity) {
+        this.decoder = decoder;
+        this.buffer = new StringBuilder(capacity);
+    }
+
+    /**
+     * Ajoute un token au texte décodé.
+     *
+     * @param id l'identifiant du token.
+     * @return le texte ajouté ; en mode octet, il peut être vide si le caractère n'est pas encore complet.
+     */
+    public String append(int id) {
+        String token = decoder.isByteLevel() ? appendBytes(decoder.tokenBytes(id)) : decoder.token(id);
+        buffer.append(token);
+        return token;
+    }
+
+    /**
+     * Ajoute une suite de tokens au texte décodé.
+     *
+     * @param ids  les identifiants.
+     * @param from l'indice du premier identifiant (inclus).
+     * @param to   l'indice du dernier identifiant (exclu).
+     */
+    public void append(int[] ids, int from, int to) {
+        for (int i = from; i < to; i++) {
+            append(ids[i]);
+        }
+    }
+
+    // Ajoute les octets d'un token et retourne les caractères devenus complets
+    private String appendBytes(byte[] bytes) {
+        if (pendingLength + bytes.length > pending.length) {
+            pending = Arrays.copyOf(pending, Math.max(pending.length * 2, pendingLength + bytes.length));
+        }
+        System.arraycopy(bytes, 0, pending, pendingLength, bytes.length);
+        pendingLength += bytes.length;
+        int complete = ByteLevel.completePrefix(pending, pendingLength);
+        String text = new String(pending, 0, complete, StandardCharsets.UTF_8);
+        System.arraycopy(pending, complete, pending, 0, pendingLength - complete);
+        pendingLength -= complete;
+        return text;
+    }
+
+    /**
+     * @return le texte décodé jusqu'ici (vue sur le tampon, sans copie).
+     */
+    public CharSequence text() {
+        return buffer;
+    }
+
+    /**
+     * @return le nombre de caractères décodés jusqu'ici.
+     */
+    public int length() {
+        return buffer.length();
+    }
+
+    /**
+     * Retourne le texte décodé et vide le tampon, qui reste réutilisable.
+     * Les octets d'un caractère incomplet restent en attente du token suivant.
+     *
+     * @return le texte décodé depuis le dernier appel.
+     */
+    public String drain() {
+        String text = buffer.toString();
+        buffer.setLength(0);
+        return text;
+    }
+
+    /**
+     * Vide le tampon et les octets en attente sans retourner leur contenu.
+     */
+    public void reset() {
+        buffer.setLength(0);
+        pendingLength = 0;
+    }
+
+    @Override
+    public String toString() {
+        return buffer.toString();
+    }
+}
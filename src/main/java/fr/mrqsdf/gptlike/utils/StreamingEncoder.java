@@ -0,0 +1,220 @@
+package fr.mrqsdf.gptlike.utils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Encodeur incrémental pour les textes trop grands pour être chargés en entier (gros documents, sockets).
+ * <p>
+ * L'entrée est lue par blocs de taille fixe ; ce qui a été reçu est encodé sans attendre que le bloc soit plein,
+ * ce qui convient aussi aux sockets. Chaque bloc est encodé jusqu'à la dernière frontière de
+ * pré-token qui ne peut plus changer (voir {@link PreTokenizer#stableEnd(CharSequence, int, int)}) ;
+ * le reste, typiquement un mot coupé par la fin du bloc, est reporté au début du bloc suivant.
+ * Les identifiants produits sont donc exactement ceux de l'encodage du texte complet.
+ * <p>
+ * La mémoire utilisée ne dépend pas de la taille de l'entrée : elle est bornée par la taille des blocs,
+ * ou par la longueur du plus long pré-token si celui-ci ne tient pas dans un bloc (le tampon est alors agrandi).
+ * Une instance réutilise ses tampons et n'est pas thread-safe : il faut en créer une par flux.
+ */
+public class StreamingEncoder {
+
+    /** Taille des blocs par défaut, en caractères ou en octets. */
+    public static final int DEFAULT_CHUNK_SIZE = 8192;
+
+    private final BPEEncoder encoder;
+    private final TokenizerMetrics metrics;
+    private final int chunkSize;
+    private char[] chars;
+    private ByteBuffer bytes;
+    private int[] ids = new int[0];
+
+    /**
+     * @param encoder l'encodeur à utiliser.
+     */
+    public StreamingEncoder(BPEEncoder encoder) {
+        this(encoder, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param encoder   l'encodeur à utiliser.
+     * @param chunkSize la taille des blocs lus, en caractères ou en octets.
+     */
+    public StreamingEncoder(BPEEncoder encoder, int chunkSize) {
+        this(encoder, chunkSize, null);
+    }
+
+    StreamingEncoder(BPEEncoder encoder, int chunkSize, TokenizerMetrics metrics) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("La taille des blocs doit être positive : " + chunkSize);
+        }
+        this.encoder = encoder;
+        this.chunkSize = chunkSize;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Encode tout le texte lu, jusqu'à la fin du flux (qui n'est pas fermé).
+     *
+     * @param reader le texte à encoder.
+     * @param sink   l'action appelée pour chaque identifiant, dans l'ordre.
+     * @return le nombre d'identifiants produits.
+     * @throws IOException si la lecture échoue.
+     */
+    public long encode(Reader reader, IntConsumer sink) throws IOException {
+        if (chars == null) {
+            chars = new char[chunkSize];
+        }
+        CharBuffer view = CharBuffer.wrap(chars);
+        long total = 0;
+        int length = 0;
+        boolean eof = false;
+        while (!eof) {
+            // Une seule lecture par tour : ce qui est déjà reçu est encodé sans attendre un bloc complet
+            int read = reader.read(chars, length, chars.length - length);
+            if (read < 0) {
+                eof = true;
+            } else {
+                length += read;
+            }
+            int end = eof ? length : PreTokenizer.stableEnd(view, 0, length);
+            if (end == 0 && !eof) {
+                if (length == chars.length) {
+                    // Un pré-token occupe tout le tampon : il faut l'agrandir pour le lire en entier
+                    chars = Arrays.copyOf(chars, chars.length * 2);
+                    view = CharBuffer.wrap(chars);
+                }
+                continue;
+            }
+            view.limit(end);
+            total += encodeChunk(view, end, sink);
+            view.clear();
+            System.arraycopy(chars, end, chars, 0, length - end);
+            length -= end;
+        }
+        return total;
+    }
+
+    /**
+     * Encode tous les octets UTF-8 lus, jusqu'à la fin du canal (qui n'est pas fermé).
+     * Hors mode octet, les séquences UTF-8 invalides sont remplacées par U+FFFD, comme dans
+     * {@link BPEEncoder#encode(ByteBuffer, int[], int)}. Le canal doit être bloquant.
+     *
+     * @param channel les octets à encoder.
+     * @param sink    l'action appelée pour chaque identifiant, dans l'ordre.
+     * @return le nombre d'identifiants produits.
+     * @throws IOException si la lecture échoue.
+     */
+    public long encode(ReadableByteChannel channel, IntConsumer sink) throws IOException {
+        if (!encoder.isByteLevel()) {
+            Reader reader = Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE), chunkSize);
+            return encode(reader, sink);
+        }
+        if (bytes == null) {
+            bytes = ByteBuffer.allocate(chunkSize);
+        }
+        ByteBuffer buffer = bytes;
+        buffer.clear();
+        long total = 0;
+        boolean eof = false;
+        while (!eof) {
+            if (channel.read(buffer) < 0) {
+                eof = true;
+            }
+            buffer.flip();
+            int end = eof ? buffer.limit() : PreTokenizer.stableEnd(buffer, 0, buffer.limit());
+            if (end == 0 && !eof) {
+                if (buffer.limit() == buffer.capacity()) {
+                    // Un pré-token occupe tout le tampon : il faut l'agrandir pour le lire en entier
+                    ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+                    larger.put(buffer);
+                    buffer = larger;
+                    bytes = larger;
+                } else {
+                    buffer.position(buffer.limit()).limit(buffer.capacity());
+                }
+                continue;
+            }
+            int limit = buffer.limit();
+            buffer.limit(end);
+            total += encodeChunk(buffer, end, sink);
+            buffer.limit(limit).position(end);
+            buffer.compact();
+        }
+        return total;
+    }
+
+    /**
+     * Encode tout le texte lu et écrit les identifiants dans le tampon fourni.
+     *
+     * @param reader le texte à encoder.
+     * @param sink   le tampon de sortie, à partir de sa position.
+     * @return le nombre d'identifiants écrits.
+     * @throws IOException                       si la lecture échoue.
+     * @throws java.nio.BufferOverflowException si le tampon est trop petit.
+     */
+    public long encode(Reader reader, IntBuffer sink) throws IOException {
+        return encode(reader, sink::put);
+    }
+
+    /**
+     * Encode tous les octets UTF-8 lus et écrit les identifiants dans le tampon fourni.
+     *
+     * @param channel les octets à encoder.
+     * @param sink    le tampon de sortie, à partir de sa position.
+     * @return le nombre d'identifiants écrits.
+     * @throws IOException                       si la lecture échoue.
+     * @throws java.nio.BufferOverflowException si le tampon est trop petit.
+     */
+    public long encode(ReadableByteChannel channel, IntBuffer sink) throws IOException {
+        return encode(channel, sink::put);
+    }
+
+    // Encode un bloc de pré-tokens complets et transmet ses identifiants
+    private int encodeChunk(CharSequence text, int length, IntConsumer sink) {
+        int[] out = ids(encoder.maxTokens(text));
+        TokenizerMetrics m = metrics;
+        long start = m == null ? 0 : System.nanoTime();
+        int count = encoder.encode(text, out, 0);
+        if (m != null) {
+            m.recordEncode(length, out, 0, count, encoder.getUnkId(), System.nanoTime() - start);
+        }
+        emit(out, count, sink);
+        return count;
+    }
+
+    private int encodeChunk(ByteBuffer buffer, int length, IntConsumer sink) {
+        int[] out = ids(length);
+        TokenizerMetrics m = metrics;
+        long start = m == null ? 0 : System.nanoTime();
+        int count = encoder.encode(buffer, out, 0);
+        if (m != null) {
+            m.recordEncode(length, out, 0, count, encoder.getUnkId(), System.nanoTime() - start);
+        }
+        emit(out, count, sink);
+        return count;
+    }
+
+    private int[] ids(int capacity) {
+        if (ids.length < capacity) {
+            ids = new int[Math.max(capacity, ids.length * 2)];
+        }
+        return ids;
+    }
+
+    private static void emit(int[] out, int count, IntConsumer sink) {
+        for (int i = 0; i < count; i++) {
+            sink.accept(out[i]);
+        }
+    }
+}
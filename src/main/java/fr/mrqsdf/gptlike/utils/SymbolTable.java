@@ -0,0 +1,99 @@
+package fr.mrqsdf.gptlike.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interneur de symboles : associe chaque symbole (caractère ou fusion) à un identifiant int dense.
+ * <p>
+ * Les boucles critiques de l'entraînement et de l'encodage manipulent uniquement ces identifiants ;
+ * une paire de symboles adjacents est représentée par un seul long (voir {@link #pairKey(int, int)}).
+ * L'internement d'un caractère passe par une table directe, sans allocation après le premier appel.
+ */
+public class SymbolTable {
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> symbols = new ArrayList<>();
+    private final int[] charIds = new int[Character.MAX_VALUE + 1];
+
+    public SymbolTable() {
+        Arrays.fill(charIds, -1);
+    }
+
+    /**
+     * @param symbol le symbole.
+     * @return son identifiant, attribué s'il est vu pour la première fois.
+     */
+    public int intern(String symbol) {
+        if (symbol.length() == 1) {
+            return intern(symbol.charAt(0));
+        }
+        Integer id = ids.get(symbol);
+        if (id == null) {
+            id = symbols.size();
+            ids.put(symbol, id);
+            symbols.add(symbol);
+        }
+        return id;
+    }
+
+    /**
+     * @param c le caractère.
+     * @return l'identifiant du symbole formé de ce seul caractère.
+     */
+    public int intern(char c) {
+        int id = charIds[c];
+        if (id < 0) {
+            String symbol = String.valueOf(c);
+            id = symbols.size();
+            ids.put(symbol, id);
+            symbols.add(symbol);
+            charIds[c] = id;
+        }
+        return id;
+    }
+
+    /**
+     * @param symbol le symbole recherché.
+     * @return son identifiant, ou -1 s'il n'a jamais été interné.
+     */
+    public int idOf(String symbol) {
+        return ids.getOrDefault(symbol, -1);
+    }
+
+    /**
+     * @param id un identifiant attribué par cette table.
+     * @return le symbole correspondant.
+     */
+    public String symbol(int id) {
+        return symbols.get(id);
+    }
+
+    public int size() {
+        return symbols.size();
+    }
+
+    /**
+     * Combine deux identifiants en une clé de paire unique.
+     */
+    public static long pairKey(int left, int right) {
+        return ((long) left << 32) | (right & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @return l'identifiant de gauche d'une clé de paire.
+     */
+    public static int left(long pairKey) {
+        return (int) (pairKey >>> 32);
+    }
+
+    /**
+     * @return l'identifiant de droite d'une clé de paire.
+     */
+    public static int right(long pairKey) {
+        return (int) pairKey;
+    }
+}
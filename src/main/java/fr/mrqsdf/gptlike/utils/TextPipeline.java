@@ -0,0 +1,565 @@
+package fr.mrqsdf.gptlike.utils;
+
+import fr.mrqsdf.gptlike.resources.LongIntHashMap;
+
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Chaîne de prétraitement des textes d'un {@link Dataset}, composée d'étapes appliquées dans l'ordre :
+ * normalisation, filtres (longueur, jeu de caractères...), déduplication exacte et quasi-déduplication
+ * par MinHash.
+ * <p>
+ * Les textes sont traités en flux, par blocs. Dans un bloc, les transformations, les filtres et le
+ * calcul des empreintes de déduplication sont parallélisés ; les décisions de déduplication sont
+ * ensuite prises dans l'ordre d'entrée, si bien que le résultat est le même qu'un traitement en série :
+ * c'est toujours la première occurrence qui est conservée. Le nombre de textes retirés par chaque
+ * étape est disponible dans le {@link Report} du dernier traitement.
+ */
+public class TextPipeline {
+
+    // Nombre de textes lus avant chaque traitement parallèle
+    private static final int CHUNK_SIZE = 4096;
+
+    private final List<Stage> stages = new ArrayList<>();
+    private volatile Report report;
+
+    /**
+     * @return la chaîne historique du dataset : suppression des espaces aux extrémités et des textes
+     * de 5 caractères ou moins.
+     */
+    public static TextPipeline defaults() {
+        return new TextPipeline().trim().minLength(6);
+    }
+
+    /**
+     * Ajoute une transformation.
+     *
+     * @param name      le nom de l'étape dans le rapport.
+     * @param transform la transformation, sans état (elle est appelée depuis plusieurs threads).
+     * @return cette chaîne.
+     */
+    public TextPipeline map(String name, UnaryOperator<String> transform) {
+        stages.add(new Stage(name, transform, null, null));
+        return this;
+    }
+
+    /**
+     * Ajoute un filtre.
+     *
+     * @param name   le nom de l'étape dans le rapport.
+     * @param accept vrai pour conserver le texte ; sans état (il est appelé depuis plusieurs threads).
+     * @return cette chaîne.
+     */
+    public TextPipeline filter(String name, Predicate<String> accept) {
+        stages.add(new Stage(name, null, accept, null));
+        return this;
+    }
+
+    /**
+     * Retire les espaces aux extrémités.
+     *
+     * @return cette chaîne.
+     */
+    public TextPipeline trim() {
+        return map("trim", String::trim);
+    }
+
+    /**
+     * Normalise les textes sous la forme Unicode indiquée (NFC pour recomposer les caractères accentués).
+     *
+     * @param form la forme de normalisation.
+     * @return cette chaîne.
+     */
+    public TextPipeline normalize(Normalizer.Form form) {
+        return map(form.name().toLowerCase(Locale.ROOT),
+                text -> Normalizer.isNormalized(text, form) ? text : Normalizer.normalize(text, form));
+    }
+
+    /**
+     * Met les textes en minuscules, indépendamment de la langue du système.
+     *
+     * @return cette chaîne.
+     */
+    public TextPipeline lowercase() {
+        return map("lowercase", text -> text.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * @param minLength la longueur minimale conservée, en caractères.
+     * @return cette chaîne.
+     */
+    public TextPipeline minLength(int minLength) {
+        return filter("minLength", text -> text.length() >= minLength);
+    }
+
+    /**
+     * @param maxLength la longueur maximale conservée, en caractères.
+     * @return cette chaîne.
+     */
+    public TextPipeline maxLength(int maxLength) {
+        return filter("maxLength", text -> text.length() <= maxLength);
+    }
+
+    /**
+     * Retire les textes dont la part de caractères non autorisés dépasse le seuil
+     * (par exemple pour écarter les textes dans une autre écriture).
+     *
+     * @param name              le nom de l'étape dans le rapport.
+     * @param allowed           vrai pour un point de code autorisé.
+     * @param maxRejectedRatio  la part maximale de points de code non autorisés, entre 0 et 1.
+     * @return cette chaîne.
+     */
+    public TextPipeline charset(String name, IntPredicate allowed, double maxRejectedRatio) {
+        return filter(name, text -> {
+            long total = 0;
+            long rejected = 0;
+            for (int i = 0; i < text.length(); ) {
+                int codePoint = text.codePointAt(i);
+                if (!allowed.test(codePoint)) {
+                    rejected++;
+                }
+                total++;
+                i += Character.charCount(codePoint);
+            }
+            return rejected <= maxRejectedRatio * total;
+        });
+    }
+
+    /**
+     * Retire les textes qui ne sont pas entièrement représentables dans le jeu de caractères.
+     *
+     * @param charset le jeu de caractères (par exemple ISO-8859-1).
+     * @return cette chaîne.
+     */
+    public TextPipeline charset(Charset charset) {
+        // Un encodeur n'est pas utilisable par plusieurs threads à la fois
+        ThreadLocal<CharsetEncoder> encoders = ThreadLocal.withInitial(charset::newEncoder);
+        return filter(charset.name(), text -> encoders.get().canEncode(text));
+    }
+
+    /**
+     * Retire les textes identiques à un texte déjà conservé (à ce stade de la chaîne),
+     * comparés par une empreinte de 64 bits.
+     *
+     * @return cette chaîne.
+     */
+    public TextPipeline dedup() {
+        stages.add(new Stage("dedup", null, null, ExactDeduplicator::new));
+        return this;
+    }
+
+    /**
+     * Retire les textes presque identiques à un texte déjà conservé : la similarité de Jaccard
+     * de leurs 5-grammes de caractères, estimée par MinHash, atteint le seuil.
+     *
+     * @param threshold la similarité à partir de laquelle deux textes sont des doublons, entre 0 et 1.
+     * @return cette chaîne.
+     */
+    public TextPipeline nearDedup(double threshold) {
+        if (!(threshold > 0 && threshold <= 1)) {
+            throw new IllegalArgumentException("Seuil invalide : " + threshold);
+        }
+        stages.add(new Stage("nearDedup", null, null, () -> new MinHashDeduplicator(threshold)));
+        return this;
+    }
+
+    /**
+     * Applique les seules transformations de la chaîne, par exemple à un texte à encoder
+     * pour qu'il soit normalisé comme les textes d'entraînement.
+     *
+     * @param text le texte.
+     * @return le texte transformé.
+     */
+    public String normalize(String text) {
+        String result = text;
+        for (Stage stage : stages) {
+            if (stage.transform != null) {
+                result = stage.transform.apply(result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Applique la chaîne à un flux de textes. Le flux retourné est lu par blocs ; le rapport
+     * ({@link #getReport()}) est mis à jour au fil de la lecture.
+     *
+     * @param texts les textes bruts.
+     * @param limit le nombre maximal de textes conservés, ou une valeur négative pour aucune limite.
+     * @return le flux des textes conservés, dans l'ordre d'entrée.
+     */
+    public Stream<String> apply(Stream<String> texts, long limit) {
+        Run run = new Run(texts.iterator(), limit);
+        report = run.report;
+        Spliterator<String> spliterator = Spliterators.spliteratorUnknownSize(run,
+                Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(texts::close);
+    }
+
+    /**
+     * @return le rapport du dernier traitement, ou null si la chaîne n'a pas encore servi.
+     */
+    public Report getReport() {
+        return report;
+    }
+
+    /**
+     * Étape de la chaîne : exactement une transformation, un filtre ou une déduplication.
+     */
+    private record Stage(String name, UnaryOperator<String> transform, Predicate<String> accept,
+                         Supplier<Deduplicator> deduplicator) {
+    }
+
+    /**
+     * Déduplication en deux temps : l'empreinte est calculée en parallèle,
+     * la décision est prise en série, dans l'ordre d'entrée.
+     */
+    private interface Deduplicator {
+        Object fingerprint(String text);
+
+        /**
+         * @return vrai si le texte est nouveau ; il est alors retenu pour les comparaisons suivantes.
+         */
+        boolean add(Object fingerprint);
+    }
+
+    /**
+     * Traitement d'un flux : état des déduplications et itérateur sur les textes conservés.
+     */
+    private final class Run implements Iterator<String> {
+        private final Iterator<String> source;
+        private final long limit;
+        private final Stage[] steps = stages.toArray(new Stage[0]);
+        private final Deduplicator[] deduplicators = new Deduplicator[steps.length];
+        private final Report report;
+        private final String[] chunk = new String[CHUNK_SIZE];
+        private final Prepared[] prepared = new Prepared[CHUNK_SIZE];
+        private final List<String> output = new ArrayList<>();
+        private int outputPosition;
+        private long kept;
+
+        Run(Iterator<String> source, long limit) {
+            this.source = source;
+            this.limit = limit;
+            String[] names = new String[steps.length];
+            for (int i = 0; i < steps.length; i++) {
+                names[i] = steps[i].name;
+                if (steps[i].deduplicator != null) {
+                    deduplicators[i] = steps[i].deduplicator.get();
+                }
+            }
+            this.report = new Report(names);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (outputPosition == output.size()) {
+                if ((limit >= 0 && kept >= limit) || !source.hasNext()) {
+                    return false;
+                }
+                processChunk();
+            }
+            return true;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return output.get(outputPosition++);
+        }
+
+        private void processChunk() {
+            output.clear();
+            outputPosition = 0;
+            int size = 0;
+            while (size < CHUNK_SIZE && source.hasNext()) {
+                chunk[size++] = source.next();
+            }
+            // Transformations, filtres et empreintes : indépendants d'un texte à l'autre
+            IntStream.range(0, size).parallel().forEach(i -> prepared[i] = prepare(chunk[i]));
+            // Décisions de déduplication dans l'ordre d'entrée
+            for (int i = 0; i < size && (limit < 0 || kept < limit); i++) {
+                Prepared record = prepared[i];
+                report.input++;
+                int removedAt = record.removedAt;
+                int end = removedAt >= 0 ? removedAt : steps.length;
+                for (int s = 0; s < end; s++) {
+                    if (deduplicators[s] != null && !deduplicators[s].add(record.fingerprints[s])) {
+                        removedAt = s;
+                        break;
+                    }
+                }
+                if (removedAt >= 0) {
+                    report.removed[removedAt]++;
+                } else {
+                    output.add(record.text);
+                    kept++;
+                    report.output++;
+                }
+            }
+            Arrays.fill(chunk, 0, size, null);
+            Arrays.fill(prepared, 0, size, null);
+        }
+
+        private Prepared prepare(String text) {
+            Object[] fingerprints = null;
+            String current = text;
+            for (int s = 0; s < steps.length; s++) {
+                Stage stage = steps[s];
+                if (stage.transform != null) {
+                    current = stage.transform.apply(current);
+                } else if (stage.accept != null) {
+                    if (!stage.accept.test(current)) {
+                        return new Prepared(current, s, fingerprints);
+                    }
+                } else {
+                    if (fingerprints == null) {
+                        fingerprints = new Object[steps.length];
+                    }
+                    fingerprints[s] = deduplicators[s].fingerprint(current);
+                }
+            }
+            return new Prepared(current, -1, fingerprints);
+        }
+    }
+
+    /**
+     * Texte après les étapes parallèles : le texte transformé, l'étape de filtre qui l'a retiré
+     * (ou -1) et ses empreintes pour chaque étape de déduplication atteinte.
+     */
+    private record Prepared(String text, int removedAt, Object[] fingerprints) {
+    }
+
+    /**
+     * Compte des textes lus, retirés par chaque étape et conservés. Mis à jour par le thread
+     * qui lit le flux produit par {@link #apply(Stream, long)}.
+     */
+    public static final class Report {
+        private final String[] stages;
+        private final long[] removed;
+        private long input;
+        private long output;
+
+        Report(String[] stages) {
+            this.stages = stages;
+            this.removed = new long[stages.length];
+        }
+
+        /**
+         * @return le nombre de textes lus.
+         */
+        public long getInput() {
+            return input;
+        }
+
+        /**
+         * @return le nombre de textes conservés.
+         */
+        public long getOutput() {
+            return output;
+        }
+
+        /**
+         * @param stage l'indice de l'étape, dans l'ordre de la chaîne.
+         * @return le nombre de textes retirés par cette étape.
+         */
+        public long getRemoved(int stage) {
+            return removed[stage];
+        }
+
+        public int getStageCount() {
+            return stages.length;
+        }
+
+        public String getStageName(int stage) {
+            return stages[stage];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder().append("input=").append(input);
+            for (int s = 0; s < stages.length; s++) {
+                if (removed[s] > 0) {
+                    sb.append(' ').append(stages[s]).append("=-").append(removed[s]);
+                }
+            }
+            return sb.append(" output=").append(output).toString();
+        }
+    }
+
+    /**
+     * Déduplication exacte par empreinte 64 bits (FNV-1a sur les caractères, puis mélange).
+     */
+    private static final class ExactDeduplicator implements Deduplicator {
+        private final LongIntHashMap seen = new LongIntHashMap(1024, 0);
+
+        @Override
+        public Object fingerprint(String text) {
+            long h = 0xcbf29ce484222325L;
+            for (int i = 0; i < text.length(); i++) {
+                h = (h ^ text.charAt(i)) * 0x100000001b3L;
+            }
+            return mix(h ^ text.length());
+        }
+
+        @Override
+        public boolean add(Object fingerprint) {
+            long key = (Long) fingerprint;
+            if (seen.containsKey(key)) {
+                return false;
+            }
+            seen.put(key, 1);
+            return true;
+        }
+    }
+
+    /**
+     * Quasi-déduplication par MinHash et LSH.
+     * <p>
+     * La signature d'un texte est le minimum, pour chacune des {@value #HASHES} fonctions de hachage,
+     * des hachages de ses 5-grammes de caractères. La signature est découpée en bandes : deux textes
+     * qui partagent une bande sont candidats, et sont déclarés doublons si la part des minima
+     * communs (estimation de leur similarité de Jaccard) atteint le seuil. Chaque bande garde tous
+     * les textes conservés qui la contiennent : un texte est comparé à chacun de ses candidats.
+     */
+    private static final class MinHashDeduplicator implements Deduplicator {
+        private static final int HASHES = 64;
+        private static final int SHINGLE = 5;
+        private static final long[] SEEDS = new long[HASHES];
+
+        static {
+            long seed = 0x9E3779B97F4A7C15L;
+            for (int i = 0; i < HASHES; i++) {
+                seed += 0x9E3779B97F4A7C15L;
+                SEEDS[i] = mix(seed);
+            }
+        }
+
+        private final double threshold;
+        private final int rows;
+        private final int bands;
+        // Bande (numéro et valeurs) -> dernière entrée de la liste chaînée des textes conservés qui la contiennent ;
+        // l'entrée text * bands + b désigne la bande b du texte text, et next[entrée] l'entrée précédente (-1 en fin)
+        private final LongIntHashMap buckets = new LongIntHashMap(1024, -1);
+        private int[] next;
+        // Dernier ajout pour lequel chaque texte conservé a été comparé, pour ne le comparer qu'une fois
+        private int[] compared = new int[256];
+        private int additions;
+        // Signatures des textes conservés, bout à bout
+        private int[] signatures = new int[HASHES * 256];
+        private int count;
+
+        MinHashDeduplicator(double threshold) {
+            this.threshold = threshold;
+            // Le seuil de détection des bandes, environ (1 / bandes)^(1 / lignes), est placé
+            // juste sous le seuil demandé pour que les candidats le couvrent
+            int bestRows = 1;
+            for (int r = 1; r <= HASHES; r++) {
+                if (HASHES % r == 0 && Math.pow(1.0 / (HASHES / r), 1.0 / r) <= threshold * 0.9) {
+                    bestRows = r;
+                }
+            }
+            this.rows = bestRows;
+            this.bands = HASHES / bestRows;
+            this.next = new int[bands * 256];
+        }
+
+        @Override
+        public Object fingerprint(String text) {
+            int[] signature = new int[HASHES];
+            Arrays.fill(signature, Integer.MAX_VALUE);
+            int shingles = Math.max(1, text.length() - SHINGLE + 1);
+            for (int start = 0; start < shingles; start++) {
+                long h = 0xcbf29ce484222325L;
+                int end = Math.min(text.length(), start + SHINGLE);
+                for (int i = start; i < end; i++) {
+                    h = (h ^ text.charAt(i)) * 0x100000001b3L;
+                }
+                for (int k = 0; k < HASHES; k++) {
+                    int value = (int) (mix(h ^ SEEDS[k]) >>> 33);
+                    if (value < signature[k]) {
+                        signature[k] = value;
+                    }
+                }
+            }
+            return signature;
+        }
+
+        @Override
+        public boolean add(Object fingerprint) {
+            int[] signature = (int[]) fingerprint;
+            long[] keys = new long[bands];
+            // Numéro d'ajout non nul, distinct de la valeur initiale de compared
+            int addition = ++additions;
+            for (int b = 0; b < bands; b++) {
+                long h = b;
+                for (int r = b * rows; r < (b + 1) * rows; r++) {
+                    h = mix(h * 31 + signature[r]);
+                }
+                keys[b] = h;
+                for (int entry = buckets.get(h); entry >= 0; entry = next[entry]) {
+                    int candidate = entry / bands;
+                    if (compared[candidate] != addition) {
+                        compared[candidate] = addition;
+                        if (similarity(signature, candidate) >= threshold) {
+                            return false;
+                        }
+                    }
+                }
+            }
+            if (count * HASHES == signatures.length) {
+                signatures = Arrays.copyOf(signatures, signatures.length * 2);
+                next = Arrays.copyOf(next, next.length * 2);
+                compared = Arrays.copyOf(compared, compared.length * 2);
+            }
+            System.arraycopy(signature, 0, signatures, count * HASHES, HASHES);
+            for (int b = 0; b < bands; b++) {
+                int entry = count * bands + b;
+                next[entry] = buckets.put(keys[b], entry);
+            }
+            count++;
+            return true;
+        }
+
+        private double similarity(int[] signature, int other) {
+            int base = other * HASHES;
+            int equal = 0;
+            for (int k = 0; k < HASHES; k++) {
+                if (signature[k] == signatures[base + k]) {
+                    equal++;
+                }
+            }
+            return (double) equal / HASHES;
+        }
+    }
+
+    // Finaliseur de MurmurHash3
+    private static long mix(long value) {
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
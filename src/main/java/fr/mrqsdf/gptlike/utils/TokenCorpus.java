@@ -0,0 +1,129 @@
+package fr.mrqsdf.gptlike.utils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.random.RandomGenerator;
+
+/**
+ * Corpus pré-tokenisé formé de tous les shards d'un répertoire, pour la constitution des lots d'entraînement.
+ * <p>
+ * Une fenêtre de {@code contextLength} tokens ne déborde jamais d'un shard. Les fenêtres possibles
+ * sont numérotées globalement de 0 à {@link #windowCount(int)} - 1, ce qui permet un tirage uniforme
+ * sur tout le corpus. Pour la prédiction du token suivant, demander {@code contextLength + 1} tokens.
+ */
+public class TokenCorpus {
+
+    private final TokenShardReader[] shards;
+    private final long tokenCount;
+    private final long documentCount;
+
+    private TokenCorpus(TokenShardReader[] shards) {
+        this.shards = shards;
+        long tokens = 0;
+        long documents = 0;
+        for (TokenShardReader shard : shards) {
+            tokens += shard.getTokenCount();
+            documents += shard.getDocumentCount();
+        }
+        this.tokenCount = tokens;
+        this.documentCount = documents;
+    }
+
+    /**
+     * Projette en mémoire tous les shards d'un répertoire.
+     *
+     * @param directory le répertoire écrit par {@link TokenShardWriter}.
+     * @return le corpus.
+     * @throws IOException si un shard est illisible ou corrompu.
+     */
+    public static TokenCorpus open(Path directory) throws IOException {
+        Path[] paths = TokenShardWriter.listShards(directory);
+        TokenShardReader[] shards = new TokenShardReader[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            shards[i] = TokenShardReader.open(paths[i]);
+        }
+        return new TokenCorpus(shards);
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    public TokenShardReader getShard(int index) {
+        return shards[index];
+    }
+
+    public long getTokenCount() {
+        return tokenCount;
+    }
+
+    public long getDocumentCount() {
+        return documentCount;
+    }
+
+    /**
+     * @param contextLength la longueur des fenêtres.
+     * @return le nombre de positions de départ possibles, tous shards confondus.
+     */
+    public long windowCount(int contextLength) {
+        long count = 0;
+        for (TokenShardReader shard : shards) {
+            count += windowsIn(shard, contextLength);
+        }
+        return count;
+    }
+
+    /**
+     * Retourne la fenêtre de numéro global {@code index}, sans copie.
+     *
+     * @param index         le numéro de la fenêtre, entre 0 et {@link #windowCount(int)} exclu.
+     * @param contextLength la longueur de la fenêtre.
+     * @return la fenêtre.
+     */
+    public TokenWindow window(long index, int contextLength) {
+        if (index < 0) {
+            throw new IndexOutOfBoundsException("Numéro de fenêtre négatif : " + index);
+        }
+        long remaining = index;
+        for (TokenShardReader shard : shards) {
+            long windows = windowsIn(shard, contextLength);
+            if (remaining < windows) {
+                return shard.window(remaining, contextLength);
+            }
+            remaining -= windows;
+        }
+        throw new IndexOutOfBoundsException("Numéro de fenêtre hors du corpus : " + index);
+    }
+
+    /**
+     * Tire une fenêtre uniformément parmi toutes les fenêtres du corpus.
+     *
+     * @param random        le générateur aléatoire.
+     * @param contextLength la longueur de la fenêtre.
+     * @return la fenêtre tirée.
+     */
+    public TokenWindow randomWindow(RandomGenerator random, int contextLength) {
+        long count = windowCount(contextLength);
+        if (count == 0) {
+            throw new IllegalStateException("Aucune fenêtre de " + contextLength + " tokens dans le corpus");
+        }
+        return window(random.nextLong(count), contextLength);
+    }
+
+    /**
+     * Remplit un lot de fenêtres tirées au hasard, à raison de {@code contextLength} identifiants par ligne.
+     *
+     * @param random        le générateur aléatoire.
+     * @param contextLength la longueur de chaque fenêtre.
+     * @param batch         le tableau de destination, de taille multiple de {@code contextLength}.
+     */
+    public void sampleBatch(RandomGenerator random, int contextLength, int[] batch) {
+        for (int offset = 0; offset + contextLength <= batch.length; offset += contextLength) {
+            randomWindow(random, contextLength).copyTo(batch, offset);
+        }
+    }
+
+    private static long windowsIn(TokenShardReader shard, int contextLength) {
+        return Math.max(0, shard.getTokenCount() - contextLength + 1);
+    }
+}
@@ -0,0 +1,158 @@
+package fr.mrqsdf.gptlike.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Lecture par projection mémoire d'un shard écrit par {@link TokenShardWriter}.
+ * <p>
+ * Les tokens sont projetés directement depuis le fichier (une seule projection par shard) et
+ * les fenêtres retournées sont des vues sur la projection, sans copie. L'index des documents,
+ * petit devant les tokens, est chargé en mémoire.
+ * Le lecteur est immuable et peut être partagé entre threads.
+ */
+public class TokenShardReader {
+
+    private final Path path;
+    private final int tokenWidth;
+    private final int documentCount;
+    private final long tokenCount;
+    private final ByteBuffer tokens;
+    private final long[] documentStarts;
+
+    private TokenShardReader(Path path, int tokenWidth, int documentCount, long tokenCount,
+                             ByteBuffer tokens, long[] documentStarts) {
+        this.path = path;
+        this.tokenWidth = tokenWidth;
+        this.documentCount = documentCount;
+        this.tokenCount = tokenCount;
+        this.tokens = tokens;
+        this.documentStarts = documentStarts;
+    }
+
+    /**
+     * Projette un shard en mémoire après vérification de son en-tête.
+     *
+     * @param path le fichier du shard.
+     * @return le lecteur du shard.
+     * @throws IOException si le fichier est illisible, d'une version inconnue ou tronqué.
+     */
+    public static TokenShardReader open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < TokenShardWriter.HEADER_BYTES) {
+                throw new IOException("Shard de tokens invalide : " + path);
+            }
+            ByteBuffer header = ByteBuffer.allocate(TokenShardWriter.HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, 0);
+            if (header.getInt(0) != TokenShardWriter.MAGIC) {
+                throw new IOException("Shard de tokens invalide : " + path);
+            }
+            int version = header.getInt(4);
+            if (version != TokenShardWriter.VERSION) {
+                throw new IOException("Version de shard non supportée : " + version);
+            }
+            int tokenWidth = header.getInt(8);
+            long documentCount = header.getLong(16);
+            long tokenCount = header.getLong(24);
+
+            long tokenBytes = tokenCount * tokenWidth;
+            long indexOffset = TokenShardWriter.HEADER_BYTES + (tokenBytes + 7) / 8 * 8;
+            long indexBytes = (documentCount + 1) * Long.BYTES;
+            if ((tokenWidth != 2 && tokenWidth != 4) || tokenCount < 0 || documentCount < 0
+                    || tokenBytes > Integer.MAX_VALUE || indexBytes > Integer.MAX_VALUE
+                    || indexOffset + indexBytes != size) {
+                throw new IOException("Shard de tokens tronqué : " + path);
+            }
+            ByteBuffer tokens = channel.map(FileChannel.MapMode.READ_ONLY, TokenShardWriter.HEADER_BYTES, tokenBytes)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer index = ByteBuffer.allocate((int) indexBytes).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, index, indexOffset);
+            long[] documentStarts = new long[(int) documentCount + 1];
+            index.asLongBuffer().get(documentStarts);
+            return new TokenShardReader(path, tokenWidth, (int) documentCount, tokenCount, tokens, documentStarts);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer target, long position) throws IOException {
+        while (target.hasRemaining()) {
+            if (channel.read(target, position + target.position()) < 0) {
+                throw new IOException("Fin de fichier inattendue");
+            }
+        }
+        target.flip();
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return la largeur d'un token en octets (2 ou 4).
+     */
+    public int getTokenWidth() {
+        return tokenWidth;
+    }
+
+    public long getTokenCount() {
+        return tokenCount;
+    }
+
+    public int getDocumentCount() {
+        return documentCount;
+    }
+
+    /**
+     * @param document l'indice du document.
+     * @return la position de son premier token dans le shard.
+     */
+    public long documentStart(int document) {
+        return documentStarts[document];
+    }
+
+    /**
+     * @param document l'indice du document.
+     * @return la position qui suit son dernier token.
+     */
+    public long documentEnd(int document) {
+        return documentStarts[document + 1];
+    }
+
+    /**
+     * @param position la position du token dans le shard.
+     * @return l'identifiant du token.
+     */
+    public int get(long position) {
+        int index = Math.toIntExact(position) * tokenWidth;
+        return tokenWidth == 2 ? tokens.getShort(index) & 0xFFFF : tokens.getInt(index);
+    }
+
+    /**
+     * Retourne une vue sur {@code length} tokens consécutifs, sans copie.
+     *
+     * @param start  la position du premier token.
+     * @param length le nombre de tokens.
+     * @return la fenêtre demandée.
+     */
+    public TokenWindow window(long start, int length) {
+        if (start < 0 || length < 0 || start + length > tokenCount) {
+            throw new IndexOutOfBoundsException("Fenêtre [" + start + ", " + (start + length)
+                    + ") hors du shard de " + tokenCount + " tokens");
+        }
+        ByteBuffer slice = tokens.slice((int) start * tokenWidth, length * tokenWidth).order(ByteOrder.LITTLE_ENDIAN);
+        return new TokenWindow(slice, tokenWidth);
+    }
+
+    /**
+     * @param document l'indice du document.
+     * @return une vue sur tous les tokens du document.
+     */
+    public TokenWindow document(int document) {
+        long start = documentStart(document);
+        return window(start, (int) (documentEnd(document) - start));
+    }
+}
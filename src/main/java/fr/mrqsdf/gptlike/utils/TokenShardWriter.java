@@ -0,0 +1,248 @@
+package fr.mrqsdf.gptlike.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.StreamSupport;
+
+/**
+ * Écrit un corpus pré-tokenisé sous forme de shards binaires à largeur fixe, relus par {@link TokenShardReader}.
+ * <p>
+ * Disposition d'un shard (little-endian) :
+ * <pre>
+ * en-tête  : magic "TOKS", version, largeur d'un token (2 ou 4 octets), réservé (int),
+ *            nombre de documents (long), nombre de tokens (long)
+ * tokens   : nombre de tokens × largeur (uint16 ou uint32), complété jusqu'à un multiple de 8 octets
+ * index    : (nombre de documents + 1) positions de début de document (long), la dernière valant le nombre de tokens
+ * </pre>
+ * Chaque shard passe par un fichier temporaire renommé une fois complet. Un document n'est jamais
+ * réparti sur deux shards, sauf s'il dépasse à lui seul la taille d'un shard : il est alors découpé.
+ */
+public class TokenShardWriter implements Closeable {
+
+    // "TOKS" lu en little-endian
+    public static final int MAGIC = 0x534B4F54;
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 32;
+    // 256 Mi tokens, soit 512 Mo par shard en uint16
+    public static final long DEFAULT_SHARD_TOKENS = 1L << 28;
+
+    private static final String PREFIX = "shard-";
+    private static final String SUFFIX = ".tok";
+
+    private final Path directory;
+    private final int tokenWidth;
+    private final long maxTokensPerShard;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+
+    private FileChannel channel;
+    private Path temp;
+    private long[] documentStarts = new long[1024];
+    private int shardDocuments;
+    private long shardTokens;
+    private int shardCount;
+    private long totalTokens;
+    private long totalDocuments;
+
+    /**
+     * Prépare l'écriture des shards dans un répertoire ; les shards existants y sont supprimés.
+     *
+     * @param directory         le répertoire des shards (créé si besoin).
+     * @param tokenWidth        2 pour des identifiants uint16, 4 pour des uint32.
+     * @param maxTokensPerShard nombre maximal de tokens par shard.
+     * @throws IOException en cas d'erreur d'accès au répertoire.
+     */
+    public TokenShardWriter(Path directory, int tokenWidth, long maxTokensPerShard) throws IOException {
+        if (tokenWidth != 2 && tokenWidth != 4) {
+            throw new IllegalArgumentException("Largeur de token non supportée : " + tokenWidth);
+        }
+        // Les tokens d'un shard sont projetés en une seule fois : au plus 2 Go
+        if (maxTokensPerShard <= 0 || maxTokensPerShard * tokenWidth > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Taille de shard invalide : " + maxTokensPerShard);
+        }
+        this.directory = directory;
+        this.tokenWidth = tokenWidth;
+        this.maxTokensPerShard = maxTokensPerShard;
+        Files.createDirectories(directory);
+        for (Path shard : listShards(directory)) {
+            Files.delete(shard);
+        }
+    }
+
+    /**
+     * @param vocabularySize le nombre d'identifiants du tokenizer.
+     * @return la plus petite largeur de token capable de représenter tous les identifiants.
+     */
+    public static int widthFor(int vocabularySize) {
+        return vocabularySize <= 0x10000 ? 2 : 4;
+    }
+
+    /**
+     * Ajoute un document au corpus.
+     *
+     * @param ids  les identifiants des tokens.
+     * @param from l'indice du premier identifiant (inclus).
+     * @param to   l'indice du dernier identifiant (exclu).
+     * @throws IOException en cas d'erreur d'écriture.
+     */
+    public void addDocument(int[] ids, int from, int to) throws IOException {
+        if (channel != null && shardTokens + (to - from) > maxTokensPerShard && shardTokens > 0) {
+            finishShard();
+        }
+        int position = from;
+        do {
+            if (channel == null) {
+                startShard();
+            }
+            int count = (int) Math.min(to - position, maxTokensPerShard - shardTokens);
+            beginDocument();
+            for (int i = position; i < position + count; i++) {
+                putToken(ids[i]);
+            }
+            shardTokens += count;
+            totalTokens += count;
+            position += count;
+            if (position < to) {
+                finishShard();
+            }
+        } while (position < to);
+    }
+
+    /**
+     * Ajoute tous les textes d'un lot encodé, chacun comme un document.
+     *
+     * @param batch le lot encodé.
+     * @throws IOException en cas d'erreur d'écriture.
+     */
+    public void addDocuments(EncodedBatch batch) throws IOException {
+        int[] ids = batch.getIds();
+        for (int i = 0; i < batch.size(); i++) {
+            addDocument(ids, batch.start(i), batch.end(i));
+        }
+    }
+
+    public int getShardCount() {
+        return shardCount + (channel != null ? 1 : 0);
+    }
+
+    public long getTokenCount() {
+        return totalTokens;
+    }
+
+    public long getDocumentCount() {
+        return totalDocuments;
+    }
+
+    /**
+     * Termine le shard en cours et le rend visible sous son nom définitif.
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            finishShard();
+        }
+    }
+
+    /**
+     * @param directory le répertoire des shards.
+     * @return les shards du répertoire, dans l'ordre d'écriture.
+     * @throws IOException en cas d'erreur de lecture du répertoire.
+     */
+    public static Path[] listShards(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return new Path[0];
+        }
+        Path[] shards;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            shards = StreamSupport.stream(stream.spliterator(), false).toArray(Path[]::new);
+        }
+        Arrays.sort(shards);
+        return shards;
+    }
+
+    private void startShard() throws IOException {
+        temp = Files.createTempFile(directory, PREFIX, ".tmp");
+        channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        channel.position(HEADER_BYTES);
+        shardDocuments = 0;
+        shardTokens = 0;
+    }
+
+    private void beginDocument() {
+        if (shardDocuments + 1 >= documentStarts.length) {
+            documentStarts = Arrays.copyOf(documentStarts, documentStarts.length * 2);
+        }
+        documentStarts[shardDocuments++] = shardTokens;
+        totalDocuments++;
+    }
+
+    private void putToken(int id) throws IOException {
+        if (buffer.remaining() < tokenWidth) {
+            flush();
+        }
+        if (tokenWidth == 2) {
+            if ((id & 0xFFFF0000) != 0) {
+                throw new IllegalArgumentException("Identifiant hors de la plage uint16 : " + id);
+            }
+            buffer.putShort((short) id);
+        } else {
+            buffer.putInt(id);
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void finishShard() throws IOException {
+        try {
+            // Alignement de l'index sur 8 octets
+            long tokenBytes = shardTokens * tokenWidth;
+            for (long pad = (8 - tokenBytes % 8) % 8; pad > 0; pad--) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                buffer.put((byte) 0);
+            }
+            documentStarts[shardDocuments] = shardTokens;
+            for (int d = 0; d <= shardDocuments; d++) {
+                if (buffer.remaining() < Long.BYTES) {
+                    flush();
+                }
+                buffer.putLong(documentStarts[d]);
+            }
+            flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(tokenWidth).putInt(0)
+                    .putLong(shardDocuments).putLong(shardTokens).flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+            channel.close();
+            channel = null;
+
+            Path shard = directory.resolve(String.format("%s%05d%s", PREFIX, shardCount++, SUFFIX));
+            Files.move(temp, shard, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+            Files.deleteIfExists(temp);
+        }
+    }
+}
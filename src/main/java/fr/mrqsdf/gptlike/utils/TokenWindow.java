@@ -0,0 +1,75 @@
+package fr.mrqsdf.gptlike.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Vue en lecture seule sur une suite de tokens consécutifs d'un shard projeté en mémoire.
+ * <p>
+ * Aucun identifiant n'est copié à la création : les lectures se font directement dans la projection.
+ */
+public class TokenWindow {
+
+    private final ByteBuffer tokens;
+    private final int tokenWidth;
+    private final int length;
+
+    TokenWindow(ByteBuffer tokens, int tokenWidth) {
+        this.tokens = tokens;
+        this.tokenWidth = tokenWidth;
+        this.length = tokens.remaining() / tokenWidth;
+    }
+
+    /**
+     * @return le nombre de tokens de la fenêtre.
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return la largeur d'un token en octets (2 ou 4).
+     */
+    public int getTokenWidth() {
+        return tokenWidth;
+    }
+
+    /**
+     * @param index la position dans la fenêtre.
+     * @return l'identifiant du token.
+     */
+    public int get(int index) {
+        return tokenWidth == 2 ? tokens.getShort(index * 2) & 0xFFFF : tokens.getInt(index * 4);
+    }
+
+    /**
+     * Copie les identifiants de la fenêtre dans un tableau, par exemple pour constituer un lot.
+     *
+     * @param target le tableau de destination.
+     * @param offset la position d'écriture.
+     */
+    public void copyTo(int[] target, int offset) {
+        if (tokenWidth == 4) {
+            tokens.asIntBuffer().get(0, target, offset, length);
+            return;
+        }
+        for (int i = 0; i < length; i++) {
+            target[offset + i] = tokens.getShort(i * 2) & 0xFFFF;
+        }
+    }
+
+    /**
+     * @return les identifiants de la fenêtre dans un nouveau tableau.
+     */
+    public int[] toArray() {
+        int[] ids = new int[length];
+        copyTo(ids, 0);
+        return ids;
+    }
+
+    /**
+     * @return les octets bruts de la fenêtre (little-endian), en lecture seule et sans copie.
+     */
+    public ByteBuffer asByteBuffer() {
+        return tokens.asReadOnlyBuffer().order(tokens.order());
+    }
+}
@@ -0,0 +1,222 @@
+package fr.mrqsdf.gptlike.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * Format binaire versionné d'un tokenizer, lu par projection mémoire ({@link MappedByteBuffer}).
+ * <p>
+ * Disposition du fichier (entiers 32 bits little-endian) :
+ * <pre>
+ * en-tête   : magic "BPET", version, flags, nombre de symboles, nombre de fusions, CRC32C du contenu
+ * fusions   : nombre de fusions × (gauche, droite, résultat), par rang croissant
+ * symboles  : pour chaque identifiant, longueur en octets (-1 si non attribué) puis octets UTF-8
+ * </pre>
+ * Un caractère hors BMP est découpé en deux symboles de base à l'entraînement : ces substituts isolés,
+ * que l'UTF-8 strict remplace par '?', sont écrits sur 3 octets comme en WTF-8.
+ * Les fusions sont placées juste après l'en-tête pour rester alignées et être lues en bloc.
+ * Le format JSON de {@link BPETokenizer#save(String)} reste disponible pour l'import et l'export.
+ */
+public final class TokenizerBinaryFormat {
+
+    // "BPET" lu en little-endian
+    public static final int MAGIC = 0x54455042;
+    public static final int VERSION = 1;
+    // Bit des flags : symboles de base au niveau octet (voir ByteLevel)
+    public static final int FLAG_BYTE_LEVEL = 1;
+
+    private static final int HEADER_BYTES = 6 * Integer.BYTES;
+
+    private TokenizerBinaryFormat() {
+    }
+
+    /**
+     * Écrit les tables dans un fichier. L'écriture passe par un fichier temporaire
+     * renommé à la fin, si bien qu'un lecteur ne voit jamais un fichier partiel.
+     *
+     * @param path   le fichier de destination.
+     * @param tables les tables à écrire.
+     * @param flags  options du tokenizer enregistrées dans l'en-tête.
+     * @throws IOException en cas d'erreur d'écriture.
+     */
+    public static void write(Path path, TokenizerTables tables, int flags) throws IOException {
+        String[] symbols = tables.getSymbols();
+        int[] merges = tables.getMerges();
+
+        byte[][] encoded = new byte[symbols.length][];
+        int payloadBytes = merges.length * Integer.BYTES;
+        for (int id = 0; id < symbols.length; id++) {
+            payloadBytes += Integer.BYTES;
+            if (symbols[id] != null) {
+                encoded[id] = encodeSymbol(symbols[id]);
+                payloadBytes += encoded[id].length;
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + payloadBytes).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(HEADER_BYTES);
+        buffer.asIntBuffer().put(merges);
+        buffer.position(HEADER_BYTES + merges.length * Integer.BYTES);
+        for (byte[] bytes : encoded) {
+            if (bytes == null) {
+                buffer.putInt(-1);
+            } else {
+                buffer.putInt(bytes.length);
+                buffer.put(bytes);
+            }
+        }
+
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), HEADER_BYTES, payloadBytes);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, flags);
+        buffer.putInt(12, symbols.length);
+        buffer.putInt(16, tables.mergeCount());
+        buffer.putInt(20, (int) crc.getValue());
+
+        Path parent = path.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, buffer.array());
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Lit un fichier binaire par projection mémoire et vérifie sa somme de contrôle.
+     *
+     * @param path le fichier à lire.
+     * @return le contenu du fichier.
+     * @throws IOException si le fichier est illisible, d'une version inconnue ou corrompu.
+     */
+    public static Contents read(Path path) throws IOException {
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        ByteBuffer buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Fichier de tokenizer binaire invalide : " + path);
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Version de tokenizer binaire non supportée : " + version);
+        }
+        int flags = buffer.getInt(8);
+        int symbolCount = buffer.getInt(12);
+        int mergeCount = buffer.getInt(16);
+        int checksum = buffer.getInt(20);
+
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.duplicate().position(HEADER_BYTES));
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Somme de contrôle invalide pour le tokenizer binaire : " + path);
+        }
+
+        try {
+            int[] merges = new int[mergeCount * 3];
+            buffer.position(HEADER_BYTES);
+            buffer.asIntBuffer().get(merges);
+            buffer.position(HEADER_BYTES + merges.length * Integer.BYTES);
+            // Les triplets (gauche, droite, fusion) sont utilisés tels quels comme indices dans les symboles
+            for (int i = 0; i < merges.length; i++) {
+                if (merges[i] < 0 || merges[i] >= symbolCount) {
+                    throw new IOException("Identifiant de symbole hors limites dans la fusion " + i / 3
+                            + " du tokenizer binaire : " + merges[i] + " (" + symbolCount + " symboles) : " + path);
+                }
+            }
+
+            String[] symbols = new String[symbolCount];
+            byte[] scratch = new byte[64];
+            for (int id = 0; id < symbolCount; id++) {
+                int length = buffer.getInt();
+                if (length < 0) {
+                    continue;
+                }
+                if (scratch.length < length) {
+                    scratch = new byte[Math.max(length, scratch.length * 2)];
+                }
+                buffer.get(scratch, 0, length);
+                symbols[id] = decodeSymbol(scratch, length);
+            }
+            return new Contents(new TokenizerTables(symbols, merges), flags);
+        } catch (RuntimeException e) {
+            throw new IOException("Tokenizer binaire tronqué : " + path, e);
+        }
+    }
+
+    // UTF-8, sauf pour les substituts isolés, écrits sur 3 octets au lieu d'être remplacés
+    static byte[] encodeSymbol(String symbol) {
+        byte[] out = new byte[symbol.length() * 3];
+        int n = 0;
+        for (int i = 0; i < symbol.length(); i++) {
+            char c = symbol.charAt(i);
+            if (c < 0x80) {
+                out[n++] = (byte) c;
+            } else if (c < 0x800) {
+                out[n++] = (byte) (0xC0 | c >> 6);
+                out[n++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < symbol.length() && Character.isLowSurrogate(symbol.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, symbol.charAt(++i));
+                out[n++] = (byte) (0xF0 | cp >> 18);
+                out[n++] = (byte) (0x80 | cp >> 12 & 0x3F);
+                out[n++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                out[n++] = (byte) (0x80 | cp & 0x3F);
+            } else {
+                out[n++] = (byte) (0xE0 | c >> 12);
+                out[n++] = (byte) (0x80 | c >> 6 & 0x3F);
+                out[n++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    // Inverse de encodeSymbol ; le décodeur UTF-8 standard suffit sans substitut isolé (octets ED A0 à ED BF)
+    static String decodeSymbol(byte[] bytes, int length) {
+        boolean surrogates = false;
+        for (int i = 0; i + 1 < length && !surrogates; i++) {
+            surrogates = bytes[i] == (byte) 0xED && (bytes[i + 1] & 0xFF) >= 0xA0;
+        }
+        if (!surrogates) {
+            return new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+        StringBuilder sb = new StringBuilder(length);
+        int i = 0;
+        while (i < length) {
+            int b = bytes[i] & 0xFF;
+            if (b < 0x80) {
+                sb.append((char) b);
+                i++;
+            } else if (b < 0xE0) {
+                sb.append((char) ((b & 0x1F) << 6 | bytes[i + 1] & 0x3F));
+                i += 2;
+            } else if (b < 0xF0) {
+                sb.append((char) ((b & 0x0F) << 12 | (bytes[i + 1] & 0x3F) << 6 | bytes[i + 2] & 0x3F));
+                i += 3;
+            } else {
+                sb.appendCodePoint((b & 0x07) << 18 | (bytes[i + 1] & 0x3F) << 12 | (bytes[i + 2] & 0x3F) << 6 | bytes[i + 3] & 0x3F);
+                i += 4;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Contenu d'un fichier binaire : les tables et les options enregistrées.
+     */
+    public record Contents(TokenizerTables tables, int flags) {
+    }
+}
@@ -0,0 +1,305 @@
+package fr.mrqsdf.gptlike.utils;
+
+import fr.mrqsdf.gptlike.Main;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Référence partagée vers le tokenizer courant, remplacé d'un bloc quand son fichier change.
+ * <p>
+ * Les threads d'encodage lisent l'instantané courant par {@link #get()}, une simple lecture sans verrou,
+ * et l'utilisent jusqu'à la fin de leur travail. Un rechargement construit le nouvel instantané à part,
+ * sur le thread de surveillance, puis le publie atomiquement : les encodages en cours ne sont ni bloqués
+ * ni interrompus, et les suivants utilisent le nouveau tokenizer. Si le fichier est illisible ou invalide,
+ * l'instantané courant est conservé.
+ * <p>
+ * La surveillance repose sur un {@link WatchService} du répertoire du fichier. Les événements sont
+ * regroupés jusqu'à un court délai sans modification, et un fichier dont la date, la taille et
+ * l'identité n'ont pas changé n'est pas rechargé. Les sauvegardes du projet
+ * ({@link BPETokenizer#save(String)}, {@link TokenizerSnapshot#saveBinary(Path)}) remplacent le fichier
+ * par renommage : le fichier n'est jamais lu à moitié écrit.
+ */
+public class TokenizerHolder implements AutoCloseable {
+
+    private static final Logger logger = Main.logger;
+
+    // Délai sans nouvel événement avant de recharger le fichier
+    private static final long QUIET_MILLIS = 200;
+
+    private final AtomicReference<TokenizerSnapshot> current;
+    private final Path path;
+    private final LongAdder reloads = new LongAdder();
+    // Capacité du cache de segmentations de chaque instantané publié, 0 sans cache (protégée par this)
+    private int cacheCapacity;
+    private volatile TokenizerMetrics metrics;
+    private WatchService watcher;
+    private Thread watchThread;
+    // Date, taille et identité du fichier au dernier chargement
+    private Object loadedStamp;
+
+    /**
+     * Référence sans fichier associé : le tokenizer n'est remplacé que par {@link #set(TokenizerSnapshot)}.
+     *
+     * @param initial le tokenizer initial.
+     */
+    public TokenizerHolder(TokenizerSnapshot initial) {
+        this.current = new AtomicReference<>(Objects.requireNonNull(initial));
+        this.path = null;
+    }
+
+    private TokenizerHolder(TokenizerSnapshot initial, Path path, Object stamp) {
+        this.current = new AtomicReference<>(initial);
+        this.path = path;
+        this.loadedStamp = stamp;
+    }
+
+    /**
+     * Charge un tokenizer (binaire ou JSON, voir {@link TokenizerSnapshot#load(Path)}) et le recharge
+     * à chaque modification de son fichier.
+     *
+     * @param path le fichier du tokenizer.
+     * @return la référence au tokenizer chargé.
+     * @throws IOException si le fichier ne peut pas être chargé ou son répertoire surveillé.
+     */
+    public static TokenizerHolder watch(Path path) throws IOException {
+        Path file = path.toAbsolutePath();
+        Object stamp = stamp(file);
+        TokenizerHolder holder = new TokenizerHolder(TokenizerSnapshot.load(file), file, stamp);
+        holder.startWatching();
+        return holder;
+    }
+
+    /**
+     * @return le tokenizer courant, à utiliser pour toute une requête.
+     */
+    public TokenizerSnapshot get() {
+        return current.get();
+    }
+
+    /**
+     * Publie un nouveau tokenizer, par exemple tout juste entraîné ({@link BPETokenizer#snapshot()}).
+     * Les publications ({@link #reload()}, {@link #setSegmentationCacheCapacity(int)}) sont sérialisées :
+     * aucune n'est perdue, et chacune reçoit un cache de la capacité en vigueur.
+     *
+     * @param snapshot le nouveau tokenizer.
+     */
+    public synchronized void set(TokenizerSnapshot snapshot) {
+        current.set(snapshot.withCache(cacheCapacity > 0 ? new SegmentationCache(cacheCapacity) : null));
+    }
+
+    /**
+     * Recharge immédiatement le fichier surveillé, qu'il ait changé ou non.
+     *
+     * @return le tokenizer publié.
+     * @throws IOException si le fichier ne peut pas être chargé ; le tokenizer courant est alors conservé.
+     */
+    public synchronized TokenizerSnapshot reload() throws IOException {
+        if (path == null) {
+            throw new IllegalStateException("Aucun fichier de tokenizer associé");
+        }
+        Object stamp = stamp(path);
+        TokenizerSnapshot loaded;
+        try {
+            loaded = TokenizerSnapshot.load(path);
+        } catch (RuntimeException e) {
+            throw new IOException("Fichier de tokenizer invalide : " + path, e);
+        }
+        set(loaded);
+        loadedStamp = stamp;
+        reloads.increment();
+        return get();
+    }
+
+    // Recharge le fichier s'il a changé depuis le dernier chargement
+    private synchronized void reloadIfChanged() {
+        try {
+            if (!Files.exists(path) || stamp(path).equals(loadedStamp)) {
+                return;
+            }
+            TokenizerSnapshot loaded = reload();
+            logger.info(() -> "Tokenizer rechargé depuis " + path + " (" + loaded.getVocabSize() + " tokens)");
+        } catch (IOException e) {
+            logger.warning(() -> "Échec du rechargement du tokenizer " + path + ", version précédente conservée : " + e.getMessage());
+        }
+    }
+
+    private void startWatching() throws IOException {
+        Path directory = path.getParent();
+        watcher = FileSystems.getDefault().newWatchService();
+        directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        watchThread = new Thread(this::watchLoop, "tokenizer-reload");
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    private void watchLoop() {
+        Path name = path.getFileName();
+        try {
+            while (true) {
+                if (!concerns(watcher.take(), name)) {
+                    continue;
+                }
+                // Attend la fin des écritures en cours avant de relire le fichier
+                WatchKey key;
+                while ((key = watcher.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    concerns(key, name);
+                }
+                reloadIfChanged();
+            }
+        } catch (ClosedWatchServiceException e) {
+            // Surveillance arrêtée par close()
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Consomme les événements de la clé et indique si l'un d'eux peut concerner le fichier surveillé
+    private static boolean concerns(WatchKey key, Path name) {
+        boolean concerned = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            // Événements perdus : le fichier a pu changer
+            concerned |= event.kind() == StandardWatchEventKinds.OVERFLOW || name.equals(event.context());
+        }
+        key.reset();
+        return concerned;
+    }
+
+    private static Object stamp(Path path) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        return List.of(attributes.lastModifiedTime(), attributes.size(), Objects.requireNonNullElse(attributes.fileKey(), ""));
+    }
+
+    /**
+     * Donne à chaque tokenizer publié son propre cache de segmentations : les segmentations d'un ancien
+     * tokenizer, encore en usage pendant un rechargement, ne se mêlent jamais à celles du nouveau.
+     *
+     * @param capacity la capacité du cache, ou 0 pour le désactiver.
+     */
+    public synchronized void setSegmentationCacheCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("La capacité du cache doit être positive ou nulle : " + capacity);
+        }
+        cacheCapacity = capacity;
+        set(get());
+    }
+
+    /**
+     * Encode un texte avec le tokenizer courant, en alimentant les métriques si elles sont activées.
+     *
+     * @param text le texte à encoder.
+     * @return les identifiants des tokens.
+     */
+    public int[] encode(CharSequence text) {
+        TokenizerSnapshot snapshot = get();
+        TokenizerMetrics m = metrics;
+        if (m == null) {
+            return snapshot.encode(text);
+        }
+        long start = System.nanoTime();
+        int[] ids = snapshot.encode(text);
+        BPEEncoder encoder = snapshot.getEncoder();
+        m.recordEncode(text.length(), ids, 0, ids.length, encoder.getUnkId(), System.nanoTime() - start);
+        return ids;
+    }
+
+    /**
+     * Encode un lot de textes en parallèle avec le tokenizer courant : tout le lot utilise le même tokenizer,
+     * même si un rechargement a lieu pendant l'encodage.
+     *
+     * @param texts les textes à encoder.
+     * @return les identifiants de tous les textes, dans l'ordre d'entrée.
+     */
+    public EncodedBatch encodeBatch(List<String> texts) {
+        return BPETokenizer.encodeBatch(get().getEncoder(), metrics, texts, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Décode des identifiants avec le tokenizer courant.
+     *
+     * @param tokenIds les identifiants.
+     * @return le texte correspondant.
+     */
+    public String decode(int[] tokenIds) {
+        TokenizerSnapshot snapshot = get();
+        TokenizerMetrics m = metrics;
+        if (m == null) {
+            return snapshot.decode(tokenIds);
+        }
+        long start = System.nanoTime();
+        String text = snapshot.decode(tokenIds);
+        m.recordDecode(tokenIds.length, text.length(), System.nanoTime() - start);
+        return text;
+    }
+
+    /**
+     * Active la collecte des métriques de {@link #encode}, {@link #encodeBatch} et {@link #decode}
+     * (sans effet si elle l'est déjà). Elles couvrent tous les tokenizers publiés successivement.
+     *
+     * @return les métriques.
+     */
+    public synchronized TokenizerMetrics enableMetrics() {
+        TokenizerMetrics m = metrics;
+        if (m == null) {
+            m = new TokenizerMetrics(() -> get().getEncoder().getCache());
+            metrics = m;
+        }
+        return m;
+    }
+
+    /**
+     * @return les métriques, ou null si elles ne sont pas activées.
+     */
+    public TokenizerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return le fichier surveillé, ou null.
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return le nombre de rechargements réussis depuis la création.
+     */
+    public long getReloadCount() {
+        return reloads.sum();
+    }
+
+    /**
+     * Arrête la surveillance du fichier ; le tokenizer courant reste utilisable.
+     */
+    @Override
+    public void close() {
+        if (watcher == null) {
+            return;
+        }
+        try {
+            watcher.close();
+        } catch (IOException e) {
+            // Le service de surveillance n'a rien d'autre à libérer
+        }
+        try {
+            watchThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
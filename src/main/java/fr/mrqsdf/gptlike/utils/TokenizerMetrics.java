@@ -0,0 +1,217 @@
+package fr.mrqsdf.gptlike.utils;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Métriques d'exécution de l'encodage et du décodage d'un {@link BPETokenizer}.
+ * <p>
+ * Les compteurs sont des {@link LongAdder} et les latences sont enregistrées dans des
+ * {@link LatencyHistogram} : l'enregistrement ne prend aucun verrou. Les métriques ne sont
+ * collectées qu'une fois activées par {@link BPETokenizer#enableMetrics()} ; désactivées,
+ * leur coût se limite à la lecture d'un champ.
+ * <p>
+ * Un appel plus lent que le seuil configuré produit un événement JFR
+ * ({@code fr.mrqsdf.gptlike.SlowTokenizerCall}), qui ne coûte rien sans enregistrement actif.
+ */
+public class TokenizerMetrics {
+
+    private final LongAdder encodeCalls = new LongAdder();
+    private final LongAdder encodeChars = new LongAdder();
+    private final LongAdder encodeTokens = new LongAdder();
+    private final LongAdder unknownTokens = new LongAdder();
+    private final LongAdder decodeCalls = new LongAdder();
+    private final LongAdder decodeTokens = new LongAdder();
+    private final LongAdder decodeChars = new LongAdder();
+    private final LatencyHistogram encodeLatency = new LatencyHistogram();
+    private final LatencyHistogram decodeLatency = new LatencyHistogram();
+    // Cache de segmentation courant du tokenizer, lu au moment du relevé
+    private final Supplier<SegmentationCache> cache;
+    private volatile long slowCallNanos = TimeUnit.MILLISECONDS.toNanos(10);
+
+    TokenizerMetrics(Supplier<SegmentationCache> cache) {
+        this.cache = cache;
+    }
+
+    void recordEncode(int chars, int[] ids, int from, int to, int unkId, long nanos) {
+        int unknown = 0;
+        for (int i = from; i < to; i++) {
+            if (ids[i] == unkId) {
+                unknown++;
+            }
+        }
+        encodeCalls.increment();
+        encodeChars.add(chars);
+        encodeTokens.add(to - from);
+        if (unknown > 0) {
+            unknownTokens.add(unknown);
+        }
+        encodeLatency.record(nanos);
+        if (nanos >= slowCallNanos) {
+            commitSlowCall("encode", chars, to - from, nanos);
+        }
+    }
+
+    void recordDecode(int tokens, int chars, long nanos) {
+        decodeCalls.increment();
+        decodeTokens.add(tokens);
+        decodeChars.add(chars);
+        decodeLatency.record(nanos);
+        if (nanos >= slowCallNanos) {
+            commitSlowCall("decode", chars, tokens, nanos);
+        }
+    }
+
+    private static void commitSlowCall(String operation, int chars, int tokens, long nanos) {
+        SlowCallEvent event = new SlowCallEvent();
+        if (event.isEnabled()) {
+            event.operation = operation;
+            event.chars = chars;
+            event.tokens = tokens;
+            event.latency = nanos;
+            event.commit();
+        }
+    }
+
+    /**
+     * Fixe la latence à partir de laquelle un appel produit un événement JFR (10 ms par défaut).
+     *
+     * @param threshold le seuil.
+     */
+    public void setSlowCallThreshold(Duration threshold) {
+        this.slowCallNanos = threshold.toNanos();
+    }
+
+    /**
+     * @return un relevé des métriques (les compteurs sont lus l'un après l'autre, sans verrou).
+     */
+    public Snapshot snapshot() {
+        SegmentationCache current = cache.get();
+        return new Snapshot(
+                encodeCalls.sum(), encodeChars.sum(), encodeTokens.sum(), unknownTokens.sum(),
+                encodeLatency.quantile(0.5), encodeLatency.quantile(0.99),
+                decodeCalls.sum(), decodeTokens.sum(), decodeChars.sum(),
+                decodeLatency.quantile(0.5), decodeLatency.quantile(0.99),
+                current != null ? current.getHitRate() : -1);
+    }
+
+    /**
+     * Remet tous les compteurs et histogrammes à zéro.
+     */
+    public void reset() {
+        encodeCalls.reset();
+        encodeChars.reset();
+        encodeTokens.reset();
+        unknownTokens.reset();
+        decodeCalls.reset();
+        decodeTokens.reset();
+        decodeChars.reset();
+        encodeLatency.reset();
+        decodeLatency.reset();
+    }
+
+    /**
+     * Transmet un relevé au rapporteur.
+     *
+     * @param reporter la destination du relevé.
+     */
+    public void report(MetricsReporter reporter) {
+        reporter.report(snapshot());
+    }
+
+    /**
+     * Transmet périodiquement un relevé au rapporteur, depuis un thread démon dédié.
+     *
+     * @param period   l'intervalle entre deux relevés.
+     * @param reporter la destination des relevés.
+     * @return un objet dont la fermeture arrête les relevés.
+     */
+    public Closeable startReporting(Duration period, MetricsReporter reporter) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tokenizer-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long nanos = period.toNanos();
+        scheduler.scheduleAtFixedRate(() -> report(reporter), nanos, nanos, TimeUnit.NANOSECONDS);
+        return scheduler::shutdown;
+    }
+
+    /**
+     * Relevé des métriques ; les latences sont en nanosecondes.
+     *
+     * @param cacheHitRate taux de succès du cache de segmentation, ou -1 sans cache.
+     */
+    public record Snapshot(long encodeCalls, long encodeChars, long encodeTokens, long unknownTokens,
+                           long encodeP50, long encodeP99,
+                           long decodeCalls, long decodeTokens, long decodeChars,
+                           long decodeP50, long decodeP99,
+                           double cacheHitRate) {
+
+        /**
+         * @return la proportion de tokens encodés en {@code <UNK>}.
+         */
+        public double unknownRate() {
+            return encodeTokens > 0 ? (double) unknownTokens / encodeTokens : 0;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder()
+                    .append("encode calls=").append(encodeCalls)
+                    .append(" chars=").append(encodeChars)
+                    .append(" tokens=").append(encodeTokens)
+                    .append(" unkRate=").append(percent(unknownRate()))
+                    .append(" p50=").append(micros(encodeP50))
+                    .append(" p99=").append(micros(encodeP99))
+                    .append(" | decode calls=").append(decodeCalls)
+                    .append(" tokens=").append(decodeTokens)
+                    .append(" chars=").append(decodeChars)
+                    .append(" p50=").append(micros(decodeP50))
+                    .append(" p99=").append(micros(decodeP99));
+            if (cacheHitRate >= 0) {
+                sb.append(" | cache hitRate=").append(percent(cacheHitRate));
+            }
+            return sb.toString();
+        }
+
+        private static String percent(double rate) {
+            return Math.round(rate * 1000) / 10.0 + "%";
+        }
+
+        private static String micros(long nanos) {
+            return Math.round(nanos / 100.0) / 10.0 + "µs";
+        }
+    }
+
+    @Name("fr.mrqsdf.gptlike.SlowTokenizerCall")
+    @Label("Slow Tokenizer Call")
+    @Category({"GPT-like", "Tokenizer"})
+    @Description("Appel d'encodage ou de décodage plus lent que le seuil configuré")
+    static class SlowCallEvent extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Characters")
+        int chars;
+
+        @Label("Tokens")
+        int tokens;
+
+        @Label("Latency")
+        @Timespan(Timespan.NANOSECONDS)
+        long latency;
+    }
+}
@@ -0,0 +1,256 @@
+package fr.mrqsdf.gptlike.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Tokenizer compilé et immuable : tables, encodeur et décodeur d'un même état.
+ * <p>
+ * Contrairement à {@link BPETokenizer}, dont {@code load} et {@code train} remplacent l'état en place,
+ * un instantané ne change jamais : il peut être partagé sans synchronisation par tous les threads
+ * d'encodage, et remplacé d'un bloc par un autre (voir {@link TokenizerHolder}). Un thread qui a lu
+ * un instantané termine ses encodages avec lui, même si un rechargement en publie un nouveau entre-temps.
+ * <p>
+ * Un instantané n'a par défaut pas de cache de segmentations ; {@link #withCache(SegmentationCache)}
+ * en associe un, qui ne doit servir qu'à cet instantané.
+ */
+public final class TokenizerSnapshot {
+
+    private final TokenizerTables tables;
+    private final BPEEncoder encoder;
+    private final BPEDecoder decoder;
+
+    TokenizerSnapshot(TokenizerTables tables, BPEEncoder encoder, BPEDecoder decoder) {
+        this.tables = tables;
+        this.encoder = encoder;
+        this.decoder = decoder;
+    }
+
+    /**
+     * Compile l'encodeur et le décodeur des tables fournies.
+     *
+     * @param tables    les tables du tokenizer.
+     * @param byteLevel vrai si l'alphabet de base est formé des 256 octets UTF-8.
+     * @return le tokenizer compilé.
+     */
+    public static TokenizerSnapshot compile(TokenizerTables tables, boolean byteLevel) {
+        return new TokenizerSnapshot(tables, new BPEEncoder(tables, byteLevel), new BPEDecoder(tables.getSymbols(), byteLevel));
+    }
+
+    /**
+     * Charge un tokenizer enregistré au format binaire ({@link TokenizerBinaryFormat}, reconnu à son
+     * nombre magique) ou JSON ({@link BPETokenizer#save(String)}).
+     *
+     * @param path le fichier du tokenizer.
+     * @return le tokenizer compilé.
+     * @throws IOException en cas d'erreur de lecture ou de fichier corrompu.
+     */
+    public static TokenizerSnapshot load(Path path) throws IOException {
+        if (isBinary(path)) {
+            TokenizerBinaryFormat.Contents contents = TokenizerBinaryFormat.read(path);
+            return compile(contents.tables(), (contents.flags() & TokenizerBinaryFormat.FLAG_BYTE_LEVEL) != 0);
+        }
+        BPETokenizer tokenizer = new BPETokenizer();
+        tokenizer.load(path.toString());
+        return tokenizer.snapshot();
+    }
+
+    // Vrai si le fichier commence par le nombre magique du format binaire
+    private static boolean isBinary(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            byte[] header = in.readNBytes(Integer.BYTES);
+            return header.length == Integer.BYTES
+                    && ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN).getInt() == TokenizerBinaryFormat.MAGIC;
+        }
+    }
+
+    /**
+     * Enregistre ce tokenizer au format binaire. Le fichier est remplacé d'un bloc : un
+     * {@link TokenizerHolder} qui le surveille ne lit jamais un fichier à moitié écrit.
+     *
+     * @param path le fichier de destination.
+     * @throws IOException en cas d'erreur d'écriture.
+     */
+    public void saveBinary(Path path) throws IOException {
+        TokenizerBinaryFormat.write(path, tables, isByteLevel() ? TokenizerBinaryFormat.FLAG_BYTE_LEVEL : 0);
+    }
+
+    /**
+     * @param cache le cache de segmentations, ou null pour le désactiver.
+     * @return un instantané partageant les mêmes tables et utilisant le cache fourni.
+     */
+    public TokenizerSnapshot withCache(SegmentationCache cache) {
+        return cache == encoder.getCache() ? this : new TokenizerSnapshot(tables, encoder.withCache(cache), decoder);
+    }
+
+    /**
+     * @param greedy vrai pour l'encodage glouton (voir {@link BPETokenizer#setGreedyEncoding(boolean)}).
+     * @return un instantané partageant les mêmes tables dans le mode d'encodage demandé.
+     */
+    public TokenizerSnapshot withGreedy(boolean greedy) {
+        return greedy == encoder.isGreedy() ? this : new TokenizerSnapshot(tables, encoder.withGreedy(greedy), decoder);
+    }
+
+    /**
+     * @param text le texte à encoder.
+     * @return les identifiants des tokens.
+     */
+    public int[] encode(CharSequence text) {
+        return encoder.encode(text);
+    }
+
+    /**
+     * Encode un texte dans un tampon fourni par l'appelant, dimensionné par {@link #maxTokenCount(CharSequence)}.
+     *
+     * @param text   le texte à encoder.
+     * @param buffer le tampon de sortie.
+     * @param offset la position d'écriture dans le tampon.
+     * @return le nombre d'identifiants écrits.
+     */
+    public int encode(CharSequence text, int[] buffer, int offset) {
+        return encoder.encode(text, buffer, offset);
+    }
+
+    /**
+     * Encode des octets UTF-8 lus entre la position et la limite du tampon, sans les modifier.
+     *
+     * @param bytes  les octets à encoder.
+     * @param buffer le tampon de sortie, d'au moins {@code bytes.remaining()} places après offset.
+     * @param offset la position d'écriture dans le tampon.
+     * @return le nombre d'identifiants écrits.
+     */
+    public int encode(ByteBuffer bytes, int[] buffer, int offset) {
+        return encoder.encode(bytes, buffer, offset);
+    }
+
+    /**
+     * @param text le texte à encoder.
+     * @return une taille de tampon suffisante pour encoder le texte.
+     */
+    public int maxTokenCount(CharSequence text) {
+        return encoder.maxTokens(text);
+    }
+
+    /**
+     * Encode un lot de textes en parallèle sur le pool ForkJoin commun.
+     *
+     * @param texts les textes à encoder.
+     * @return les identifiants de tous les textes, dans l'ordre d'entrée.
+     */
+    public EncodedBatch encodeBatch(List<String> texts) {
+        return encodeBatch(texts, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Encode un lot de textes en parallèle sur l'exécuteur fourni.
+     *
+     * @param texts    les textes à encoder.
+     * @param executor l'exécuteur sur lequel répartir le travail.
+     * @return les identifiants de tous les textes, dans l'ordre d'entrée.
+     */
+    public EncodedBatch encodeBatch(List<String> texts, Executor executor) {
+        return BPETokenizer.encodeBatch(encoder, null, texts, executor);
+    }
+
+    /**
+     * @param tokenIds les identifiants.
+     * @return le texte correspondant.
+     */
+    public String decode(int[] tokenIds) {
+        return decoder.decode(tokenIds);
+    }
+
+    /**
+     * @param tokenIds la liste d'identifiants.
+     * @return le texte correspondant.
+     */
+    public String decode(List<Integer> tokenIds) {
+        return decoder.decode(tokenIds);
+    }
+
+    /**
+     * @param chunkSize la taille des blocs lus, en caractères ou en octets.
+     * @return un nouvel encodeur incrémental, à utiliser par un seul flux à la fois.
+     */
+    public StreamingEncoder streamingEncoder(int chunkSize) {
+        return new StreamingEncoder(encoder, chunkSize);
+    }
+
+    /**
+     * @return un nouvel encodeur incrémental avec des blocs de {@link StreamingEncoder#DEFAULT_CHUNK_SIZE}.
+     */
+    public StreamingEncoder streamingEncoder() {
+        return streamingEncoder(StreamingEncoder.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @return un nouveau décodeur incrémental, à utiliser par un seul flux de génération.
+     */
+    public StreamingDecoder streamingDecoder() {
+        return new StreamingDecoder(decoder);
+    }
+
+    /**
+     * @param symbol le symbole (en mode octet, sous sa forme de caractères d'octets).
+     * @return son identifiant, ou -1 s'il est absent.
+     */
+    public int tokenId(CharSequence symbol) {
+        return encoder.idOf(symbol);
+    }
+
+    /**
+     * @return le nombre d'identifiants de tokens, c'est-à-dire le plus grand identifiant plus un.
+     */
+    public int getVocabSize() {
+        return tables.getSymbols().length;
+    }
+
+    /**
+     * @return le nombre de fusions apprises.
+     */
+    public int getMergeCount() {
+        return tables.mergeCount();
+    }
+
+    /**
+     * @return vrai si l'alphabet de base est formé des 256 octets UTF-8.
+     */
+    public boolean isByteLevel() {
+        return encoder.isByteLevel();
+    }
+
+    /**
+     * @return vrai si l'encodage glouton est utilisé.
+     */
+    public boolean isGreedy() {
+        return encoder.isGreedy();
+    }
+
+    /**
+     * @return les tables du tokenizer.
+     */
+    public TokenizerTables getTables() {
+        return tables;
+    }
+
+    /**
+     * @return l'encodeur compilé.
+     */
+    public BPEEncoder getEncoder() {
+        return encoder;
+    }
+
+    /**
+     * @return le décodeur compilé.
+     */
+    public BPEDecoder getDecoder() {
+        return decoder;
+    }
+}
@@ -0,0 +1,126 @@
+package fr.mrqsdf.gptlike.utils;
+
+import fr.mrqsdf.gptlike.resources.Pair;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Représentation compacte d'un tokenizer entraîné, indexée par identifiant.
+ * <ul>
+ *   <li>{@code symbols[id]} est le texte du symbole {@code id}, ou null si l'identifiant n'est pas attribué ;</li>
+ *   <li>{@code merges} contient, par rang croissant, les triplets (gauche, droite, résultat) d'identifiants.</li>
+ * </ul>
+ * C'est la forme à partir de laquelle l'encodeur et le décodeur sont compilés,
+ * et celle qui est écrite dans le format binaire. Les tables sont immuables : elles sont copiées
+ * à la construction, et seules les classes du paquetage accèdent aux tableaux eux-mêmes.
+ */
+public final class TokenizerTables {
+
+    private final String[] symbols;
+    private final int[] merges;
+
+    /**
+     * @param symbols table identifiant → symbole (copiée).
+     * @param merges  triplets (gauche, droite, résultat) par rang croissant (copiés).
+     */
+    public TokenizerTables(String[] symbols, int[] merges) {
+        if (merges.length % 3 != 0) {
+            throw new IllegalArgumentException("Les fusions doivent être des triplets d'identifiants");
+        }
+        this.symbols = symbols.clone();
+        this.merges = merges.clone();
+    }
+
+    /**
+     * Construit les tables à partir du vocabulaire et des fusions ordonnées.
+     * Les fusions dont un symbole est absent du vocabulaire sont ignorées.
+     *
+     * @param vocab  association symbole → identifiant.
+     * @param merges fusions dans leur ordre d'entraînement.
+     * @return les tables correspondantes.
+     */
+    public static TokenizerTables fromMaps(Map<String, Integer> vocab, Map<Pair, String> merges) {
+        int maxId = -1;
+        for (int id : vocab.values()) {
+            maxId = Math.max(maxId, id);
+        }
+        String[] symbols = new String[maxId + 1];
+        for (Map.Entry<String, Integer> entry : vocab.entrySet()) {
+            symbols[entry.getValue()] = entry.getKey();
+        }
+
+        int[] triples = new int[merges.size() * 3];
+        int count = 0;
+        for (Map.Entry<Pair, String> entry : merges.entrySet()) {
+            Integer left = vocab.get(entry.getKey().first);
+            Integer right = vocab.get(entry.getKey().second);
+            Integer result = vocab.get(entry.getValue());
+            if (left != null && right != null && result != null) {
+                triples[count++] = left;
+                triples[count++] = right;
+                triples[count++] = result;
+            }
+        }
+        return new TokenizerTables(symbols, count == triples.length ? triples : Arrays.copyOf(triples, count));
+    }
+
+    /**
+     * @return le vocabulaire symbole → identifiant, dans l'ordre des identifiants.
+     */
+    public Map<String, Integer> toVocab() {
+        Map<String, Integer> vocab = new LinkedHashMap<>();
+        for (int id = 0; id < symbols.length; id++) {
+            if (symbols[id] != null) {
+                vocab.put(symbols[id], id);
+            }
+        }
+        return vocab;
+    }
+
+    /**
+     * @return les fusions dans leur ordre d'entraînement.
+     */
+    public Map<Pair, String> toMerges() {
+        Map<Pair, String> result = new LinkedHashMap<>();
+        for (int i = 0; i < merges.length; i += 3) {
+            result.put(new Pair(symbols[merges[i]], symbols[merges[i + 1]]), symbols[merges[i + 2]]);
+        }
+        return result;
+    }
+
+    /**
+     * @param symbol le symbole recherché.
+     * @return son identifiant, ou -1 s'il est absent (recherche linéaire, hors chemin critique).
+     */
+    public int idOf(String symbol) {
+        for (int id = 0; id < symbols.length; id++) {
+            if (symbol.equals(symbols[id])) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return la table identifiant → symbole (non copiée, à ne pas modifier).
+     */
+    String[] getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * @return les triplets de fusion (non copiés, à ne pas modifier).
+     */
+    int[] getMerges() {
+        return merges;
+    }
+
+    /**
+     * @return le nombre de fusions.
+     */
+    public int mergeCount() {
+        return merges.length / 3;
+    }
+}
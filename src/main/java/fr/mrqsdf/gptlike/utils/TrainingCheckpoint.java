@@ -0,0 +1,334 @@
+package fr.mrqsdf.gptlike.utils;
+
+import fr.mrqsdf.gptlike.resources.Pair;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Point de reprise d'un entraînement BPE, pris entre deux fusions.
+ * <p>
+ * Il contient tout ce dont la suite de l'entraînement dépend : la configuration, la table des
+ * symboles, le vocabulaire et les fusions déjà apprises (dans leur ordre), ainsi que le découpage
+ * courant de chaque mot et sa fréquence. Les comptes de paires s'en déduisent ; les mots réduits
+ * à un seul symbole, qui ne participent plus à aucune paire, sont omis.
+ * <p>
+ * Disposition du fichier (entiers 32 bits little-endian) :
+ * <pre>
+ * en-tête  : magic "BPEC", version, flags, vocabSize, minFrequency, fusions prévues, fusions faites,
+ *            prochain identifiant, nombre de symboles, taille du vocabulaire, nombre de mots,
+ *            nombre total de symboles des mots, CRC32C du contenu
+ * symboles : pour chaque identifiant, longueur puis caractères UTF-16
+ * vocab    : pour chaque entrée, dans l'ordre d'insertion, la chaîne puis l'identifiant
+ * fusions  : pour chaque fusion, dans l'ordre, les chaînes gauche, droite et résultat
+ * mots     : fréquences, longueurs, puis symboles de tous les mots bout à bout
+ * </pre>
+ * Les chaînes sont stockées en UTF-16 car un symbole peut être une moitié de paire de substitution,
+ * que l'UTF-8 ne sait pas représenter.
+ */
+public final class TrainingCheckpoint {
+
+    // "BPEC" lu en little-endian
+    public static final int MAGIC = 0x43455042;
+    public static final int VERSION = 1;
+
+    private static final int HEADER_INTS = 13;
+    private static final int HEADER_BYTES = HEADER_INTS * Integer.BYTES;
+
+    private final int vocabSize;
+    private final int minFrequency;
+    private final boolean byteLevel;
+    private final int targetMerges;
+    private final int mergeCount;
+    private final int nextId;
+    private final String[] symbols;
+    private final String[] vocabKeys;
+    private final int[] vocabIds;
+    private final String[] mergeTriples;
+    private final Words words;
+
+    TrainingCheckpoint(int vocabSize, int minFrequency, boolean byteLevel, int targetMerges, int mergeCount,
+                       int nextId, String[] symbols, String[] vocabKeys, int[] vocabIds, String[] mergeTriples,
+                       Words words) {
+        this.vocabSize = vocabSize;
+        this.minFrequency = minFrequency;
+        this.byteLevel = byteLevel;
+        this.targetMerges = targetMerges;
+        this.mergeCount = mergeCount;
+        this.nextId = nextId;
+        this.symbols = symbols;
+        this.vocabKeys = vocabKeys;
+        this.vocabIds = vocabIds;
+        this.mergeTriples = mergeTriples;
+        this.words = words;
+    }
+
+    /**
+     * Copie l'état d'un entraînement ; appelé par le thread d'entraînement entre deux fusions.
+     */
+    static TrainingCheckpoint capture(int vocabSize, int minFrequency, boolean byteLevel, int targetMerges,
+                                      int mergeCount, int nextId, SymbolTable symbolTable,
+                                      Map<String, Integer> vocab, Map<Pair, String> merges, BPETrainer trainer) {
+        String[] symbols = new String[symbolTable.size()];
+        for (int id = 0; id < symbols.length; id++) {
+            symbols[id] = symbolTable.symbol(id);
+        }
+        String[] vocabKeys = new String[vocab.size()];
+        int[] vocabIds = new int[vocab.size()];
+        int i = 0;
+        for (Map.Entry<String, Integer> entry : vocab.entrySet()) {
+            vocabKeys[i] = entry.getKey();
+            vocabIds[i++] = entry.getValue();
+        }
+        String[] mergeTriples = new String[merges.size() * 3];
+        i = 0;
+        for (Map.Entry<Pair, String> entry : merges.entrySet()) {
+            mergeTriples[i++] = entry.getKey().first;
+            mergeTriples[i++] = entry.getKey().second;
+            mergeTriples[i++] = entry.getValue();
+        }
+        return new TrainingCheckpoint(vocabSize, minFrequency, byteLevel, targetMerges, mergeCount, nextId,
+                symbols, vocabKeys, vocabIds, mergeTriples, trainer.snapshotWords());
+    }
+
+    public int getVocabSize() {
+        return vocabSize;
+    }
+
+    public int getMinFrequency() {
+        return minFrequency;
+    }
+
+    public boolean isByteLevel() {
+        return byteLevel;
+    }
+
+    /**
+     * @return le nombre maximal de fusions de l'entraînement.
+     */
+    public int getTargetMerges() {
+        return targetMerges;
+    }
+
+    /**
+     * @return le nombre de fusions apprises au moment du point de reprise.
+     */
+    public int getMergeCount() {
+        return mergeCount;
+    }
+
+    int getNextId() {
+        return nextId;
+    }
+
+    Words getWords() {
+        return words;
+    }
+
+    /**
+     * @return une table des symboles où chaque symbole retrouve son identifiant d'origine.
+     */
+    SymbolTable toSymbolTable() {
+        SymbolTable table = new SymbolTable();
+        for (String symbol : symbols) {
+            table.intern(symbol);
+        }
+        return table;
+    }
+
+    Map<String, Integer> toVocab() {
+        Map<String, Integer> vocab = new LinkedHashMap<>();
+        for (int i = 0; i < vocabKeys.length; i++) {
+            vocab.put(vocabKeys[i], vocabIds[i]);
+        }
+        return vocab;
+    }
+
+    Map<Pair, String> toMerges() {
+        Map<Pair, String> merges = new LinkedHashMap<>();
+        for (int i = 0; i < mergeTriples.length; i += 3) {
+            merges.put(new Pair(mergeTriples[i], mergeTriples[i + 1]), mergeTriples[i + 2]);
+        }
+        return merges;
+    }
+
+    /**
+     * Écrit le point de reprise. L'écriture passe par un fichier temporaire renommé à la fin :
+     * un arrêt brutal laisse intact le point de reprise précédent.
+     *
+     * @param path le fichier de destination.
+     * @throws IOException en cas d'erreur d'écriture.
+     */
+    public void write(Path path) throws IOException {
+        long payloadBytes = stringsBytes(symbols) + stringsBytes(vocabKeys) + (long) vocabIds.length * Integer.BYTES
+                + stringsBytes(mergeTriples)
+                + (2L * words.frequencies().length + words.symbols().length) * Integer.BYTES;
+        if (HEADER_BYTES + payloadBytes > Integer.MAX_VALUE) {
+            throw new IOException("Point de reprise trop volumineux : " + payloadBytes + " octets");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + (int) payloadBytes).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(HEADER_BYTES);
+        putStrings(buffer, symbols);
+        for (int i = 0; i < vocabKeys.length; i++) {
+            putString(buffer, vocabKeys[i]);
+            buffer.putInt(vocabIds[i]);
+        }
+        putStrings(buffer, mergeTriples);
+        putInts(buffer, words.frequencies());
+        putInts(buffer, words.lengths());
+        putInts(buffer, words.symbols());
+
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), HEADER_BYTES, (int) payloadBytes);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, byteLevel ? TokenizerBinaryFormat.FLAG_BYTE_LEVEL : 0);
+        buffer.putInt(12, vocabSize);
+        buffer.putInt(16, minFrequency);
+        buffer.putInt(20, targetMerges);
+        buffer.putInt(24, mergeCount);
+        buffer.putInt(28, nextId);
+        buffer.putInt(32, symbols.length);
+        buffer.putInt(36, vocabKeys.length);
+        buffer.putInt(40, words.frequencies().length);
+        buffer.putInt(44, words.symbols().length);
+        buffer.putInt(48, (int) crc.getValue());
+        buffer.rewind();
+
+        Path parent = path.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                // Le contenu doit être sur disque avant que le renommage ne le rende visible
+                channel.force(true);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Lit un point de reprise et vérifie sa somme de contrôle.
+     *
+     * @param path le fichier à lire.
+     * @return le point de reprise.
+     * @throws IOException si le fichier est illisible, d'une version inconnue ou corrompu.
+     */
+    public static TrainingCheckpoint read(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Point de reprise invalide : " + path);
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Version de point de reprise non supportée : " + version);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), HEADER_BYTES, buffer.limit() - HEADER_BYTES);
+        if ((int) crc.getValue() != buffer.getInt(48)) {
+            throw new IOException("Somme de contrôle invalide pour le point de reprise : " + path);
+        }
+
+        try {
+            boolean byteLevel = (buffer.getInt(8) & TokenizerBinaryFormat.FLAG_BYTE_LEVEL) != 0;
+            int symbolCount = buffer.getInt(32);
+            int vocabCount = buffer.getInt(36);
+            int wordCount = buffer.getInt(40);
+            int symbolTotal = buffer.getInt(44);
+            buffer.position(HEADER_BYTES);
+            String[] symbols = getStrings(buffer, symbolCount);
+            String[] vocabKeys = new String[vocabCount];
+            int[] vocabIds = new int[vocabCount];
+            for (int i = 0; i < vocabCount; i++) {
+                vocabKeys[i] = getString(buffer);
+                vocabIds[i] = buffer.getInt();
+            }
+            String[] mergeTriples = getStrings(buffer, buffer.getInt(24) * 3);
+            Words words = new Words(getInts(buffer, wordCount), getInts(buffer, wordCount), getInts(buffer, symbolTotal));
+            return new TrainingCheckpoint(buffer.getInt(12), buffer.getInt(16), byteLevel, buffer.getInt(20),
+                    buffer.getInt(24), buffer.getInt(28), symbols, vocabKeys, vocabIds, mergeTriples, words);
+        } catch (RuntimeException e) {
+            throw new IOException("Point de reprise tronqué : " + path, e);
+        }
+    }
+
+    private static long stringsBytes(String[] strings) {
+        long bytes = 0;
+        for (String string : strings) {
+            bytes += Integer.BYTES + (long) string.length() * Character.BYTES;
+        }
+        return bytes;
+    }
+
+    private static void putStrings(ByteBuffer buffer, String[] strings) {
+        for (String string : strings) {
+            putString(buffer, string);
+        }
+    }
+
+    private static void putString(ByteBuffer buffer, String string) {
+        buffer.putInt(string.length());
+        for (int i = 0; i < string.length(); i++) {
+            buffer.putChar(string.charAt(i));
+        }
+    }
+
+    private static String[] getStrings(ByteBuffer buffer, int count) {
+        String[] strings = new String[count];
+        for (int i = 0; i < count; i++) {
+            strings[i] = getString(buffer);
+        }
+        return strings;
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        char[] chars = new char[buffer.getInt()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = buffer.getChar();
+        }
+        return new String(chars);
+    }
+
+    private static void putInts(ByteBuffer buffer, int[] values) {
+        buffer.asIntBuffer().put(values);
+        buffer.position(buffer.position() + values.length * Integer.BYTES);
+    }
+
+    private static int[] getInts(ByteBuffer buffer, int count) {
+        int[] values = new int[count];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + count * Integer.BYTES);
+        return values;
+    }
+
+    /**
+     * Découpage courant des mots, à plat : le mot {@code i} a la fréquence {@code frequencies[i]}
+     * et ses {@code lengths[i]} symboles suivent ceux du mot précédent dans {@code symbols}.
+     */
+    record Words(int[] frequencies, int[] lengths, int[] symbols) {
+
+        int[][] toArrays() {
+            int[][] words = new int[lengths.length][];
+            int position = 0;
+            for (int i = 0; i < words.length; i++) {
+                words[i] = new int[lengths[i]];
+                System.arraycopy(symbols, position, words[i], 0, lengths[i]);
+                position += lengths[i];
+            }
+            return words;
+        }
+    }
+}
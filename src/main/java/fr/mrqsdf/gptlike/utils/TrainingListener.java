@@ -0,0 +1,52 @@
+package fr.mrqsdf.gptlike.utils;
+
+/**
+ * Observateur de l'entraînement d'un {@link BPETokenizer}.
+ * <p>
+ * Les méthodes sont appelées sur le thread d'entraînement : elles doivent rester brèves.
+ * Les métriques reçues sont une vue vivante, mise à jour au fil de l'entraînement.
+ */
+public interface TrainingListener {
+
+    /**
+     * Appelée à la fin de chaque phase.
+     *
+     * @param phase   la phase terminée.
+     * @param metrics les métriques de l'entraînement en cours.
+     */
+    default void onPhaseCompleted(TrainingPhase phase, TrainingMetrics metrics) {
+    }
+
+    /**
+     * Appelée périodiquement pendant la boucle des fusions (voir {@link BPETokenizer#setProgressInterval(int)}).
+     *
+     * @param metrics les métriques de l'entraînement en cours.
+     * @return false pour arrêter l'entraînement après la fusion courante.
+     */
+    default boolean onProgress(TrainingMetrics metrics) {
+        return true;
+    }
+
+    /**
+     * Appelée une fois l'entraînement terminé, normalement ou par arrêt anticipé.
+     *
+     * @param metrics les métriques finales.
+     */
+    default void onCompleted(TrainingMetrics metrics) {
+    }
+
+    /**
+     * Arrêt anticipé dès que la fréquence de la meilleure paire passe sous un seuil utile.
+     *
+     * @param minFrequency la fréquence minimale de la meilleure paire.
+     * @return l'observateur correspondant.
+     */
+    static TrainingListener stopBelowFrequency(int minFrequency) {
+        return new TrainingListener() {
+            @Override
+            public boolean onProgress(TrainingMetrics metrics) {
+                return metrics.getBestPairFrequency() >= minFrequency;
+            }
+        };
+    }
+}
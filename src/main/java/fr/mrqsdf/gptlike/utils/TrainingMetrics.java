@@ -0,0 +1,172 @@
+package fr.mrqsdf.gptlike.utils;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Métriques d'un entraînement BPE : durée de chaque phase, rythme des fusions,
+ * fréquence de la meilleure paire, taille du vocabulaire et estimation de la mémoire.
+ * <p>
+ * Les valeurs sont écrites par le thread d'entraînement et peuvent être lues
+ * depuis un autre thread (supervision) pendant l'entraînement.
+ */
+public class TrainingMetrics {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final AtomicLongArray phaseNanos = new AtomicLongArray(TrainingPhase.values().length);
+    private final long startAllocatedBytes = currentThreadAllocatedBytes();
+    private volatile int targetMerges;
+    private volatile int mergeCount;
+    private volatile int bestPairFrequency;
+    private volatile int vocabSize;
+    private volatile long mergeStartNanos;
+    private volatile long mergeEndNanos;
+    private volatile long usedHeapBytes;
+    private volatile long peakUsedHeapBytes;
+    private volatile long allocatedBytes = -1;
+    private volatile boolean stoppedEarly;
+
+    void recordPhase(TrainingPhase phase, long nanos) {
+        phaseNanos.set(phase.ordinal(), nanos);
+    }
+
+    void startMerges(int targetMerges, int vocabSize) {
+        this.targetMerges = targetMerges;
+        this.vocabSize = vocabSize;
+        this.mergeStartNanos = System.nanoTime();
+        sampleMemory();
+    }
+
+    void recordMerge(int bestPairFrequency, int vocabSize) {
+        this.mergeCount++;
+        this.bestPairFrequency = bestPairFrequency;
+        this.vocabSize = vocabSize;
+    }
+
+    void recordBestPair(int bestPairFrequency) {
+        this.bestPairFrequency = bestPairFrequency;
+    }
+
+    void endMerges(boolean stoppedEarly) {
+        this.mergeEndNanos = System.nanoTime();
+        this.stoppedEarly = stoppedEarly;
+        recordPhase(TrainingPhase.MERGE, mergeEndNanos - mergeStartNanos);
+        sampleMemory();
+    }
+
+    // Relevé du tas et des allocations du thread d'entraînement ; appelé à chaque point de progression
+    void sampleMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        usedHeapBytes = used;
+        if (used > peakUsedHeapBytes) {
+            peakUsedHeapBytes = used;
+        }
+        long allocated = currentThreadAllocatedBytes();
+        if (allocated >= 0 && startAllocatedBytes >= 0) {
+            allocatedBytes = allocated - startAllocatedBytes;
+        }
+    }
+
+    /**
+     * @param phase la phase.
+     * @return sa durée en nanosecondes, 0 si elle n'a pas (encore) eu lieu.
+     */
+    public long getPhaseNanos(TrainingPhase phase) {
+        if (phase == TrainingPhase.MERGE && mergeEndNanos == 0 && mergeStartNanos != 0) {
+            return System.nanoTime() - mergeStartNanos;
+        }
+        return phaseNanos.get(phase.ordinal());
+    }
+
+    /**
+     * @return le nombre maximal de fusions prévu.
+     */
+    public int getTargetMerges() {
+        return targetMerges;
+    }
+
+    public int getMergeCount() {
+        return mergeCount;
+    }
+
+    /**
+     * @return la fréquence de la dernière meilleure paire examinée.
+     */
+    public int getBestPairFrequency() {
+        return bestPairFrequency;
+    }
+
+    public int getVocabSize() {
+        return vocabSize;
+    }
+
+    /**
+     * @return le nombre de fusions par seconde depuis le début de la boucle des fusions.
+     */
+    public double getMergesPerSecond() {
+        long nanos = getPhaseNanos(TrainingPhase.MERGE);
+        return nanos > 0 ? mergeCount * 1e9 / nanos : 0;
+    }
+
+    /**
+     * @return le tas utilisé au dernier relevé, en octets.
+     */
+    public long getUsedHeapBytes() {
+        return usedHeapBytes;
+    }
+
+    /**
+     * @return le plus grand tas utilisé parmi les relevés, en octets.
+     */
+    public long getPeakUsedHeapBytes() {
+        return peakUsedHeapBytes;
+    }
+
+    /**
+     * @return les octets alloués par le thread d'entraînement depuis le début, ou -1 si la JVM ne le mesure pas.
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * @return vrai si un observateur a arrêté l'entraînement avant son terme.
+     */
+    public boolean isStoppedEarly() {
+        return stoppedEarly;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (TrainingPhase phase : TrainingPhase.values()) {
+            sb.append(phase.name().toLowerCase()).append('=')
+                    .append(TimeUnit.NANOSECONDS.toMillis(getPhaseNanos(phase))).append("ms ");
+        }
+        sb.append("merges=").append(mergeCount).append('/').append(targetMerges)
+                .append(" mergesPerSecond=").append(Math.round(getMergesPerSecond()))
+                .append(" bestPairFrequency=").append(bestPairFrequency)
+                .append(" vocabSize=").append(vocabSize)
+                .append(" heapMB=").append(usedHeapBytes >> 20)
+                .append(" peakHeapMB=").append(peakUsedHeapBytes >> 20);
+        if (allocatedBytes >= 0) {
+            sb.append(" allocatedMB=").append(allocatedBytes >> 20);
+        }
+        if (stoppedEarly) {
+            sb.append(" (arrêt anticipé)");
+        }
+        return sb.toString();
+    }
+
+    private static long currentThreadAllocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean threads
+                && threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+            return threads.getCurrentThreadAllocatedBytes();
+        }
+        return -1;
+    }
+}
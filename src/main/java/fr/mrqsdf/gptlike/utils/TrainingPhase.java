@@ -0,0 +1,15 @@
+package fr.mrqsdf.gptlike.utils;
+
+/**
+ * Phases de l'entraînement BPE dont la durée est mesurée par {@link TrainingMetrics}.
+ */
+public enum TrainingPhase {
+    /** Découpage des textes en pré-tokens (temps cumulé des threads de comptage). */
+    PRE_TOKENIZE,
+    /** Comptage des pré-tokens (temps cumulé des threads de comptage). */
+    COUNT,
+    /** Sélection des mots fréquents et internement des symboles de base. */
+    PREPARE,
+    /** Boucle des fusions. */
+    MERGE
+}
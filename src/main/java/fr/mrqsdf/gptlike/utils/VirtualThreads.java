@@ -0,0 +1,66 @@
+package fr.mrqsdf.gptlike.utils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Exécuteurs à un thread par tâche, sur threads virtuels quand la JVM les propose.
+ * <p>
+ * Le projet compile pour Java 17 : les threads virtuels (Java 21) sont donc obtenus par réflexion.
+ * Sur une JVM qui ne les propose pas, l'exécuteur repose sur un pool de threads démons créés à la demande,
+ * qui offre le même modèle de programmation (une tâche bloquante par requête) avec des threads plus coûteux.
+ */
+public final class VirtualThreads {
+
+    private static final boolean AVAILABLE = virtualFactory("probe") != null;
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return vrai si la JVM courante propose les threads virtuels.
+     */
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    /**
+     * Crée un exécuteur qui lance chaque tâche sur son propre thread.
+     *
+     * @param name le préfixe du nom des threads.
+     * @return un exécuteur sur threads virtuels, ou à défaut sur un pool de threads démons.
+     */
+    public static ExecutorService newPerTaskExecutor(String name) {
+        ThreadFactory factory = AVAILABLE ? virtualFactory(name) : null;
+        if (factory != null) {
+            try {
+                Method method = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+                return (ExecutorService) method.invoke(null, factory);
+            } catch (ReflectiveOperationException e) {
+                // Ne devrait pas arriver si la fabrique a pu être créée : repli sur les threads classiques
+            }
+        }
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Thread.ofVirtual().name(name, 0).factory(), ou null si la JVM ne le permet pas
+    // (avant Java 21, ou en préversion désactivée)
+    private static ThreadFactory virtualFactory(String name) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> ofVirtual = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            builder = ofVirtual.getMethod("name", String.class, long.class).invoke(builder, name + "-", 0L);
+            return (ThreadFactory) ofVirtual.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package fr.mrqsdf.gptlike.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+
+/**
+ * Compare plusieurs tailles de vocabulaire en un seul entraînement.
+ * <p>
+ * Le tokenizer est entraîné une fois jusqu'à la plus grande taille demandée, puis tronqué à
+ * chacune des autres ({@link BPETokenizer#truncate(int)}) : les fusions BPE forment un ordre
+ * de préfixes, le résultat est identique à un entraînement séparé par taille.
+ * Chaque tokenizer est ensuite évalué sur une part du dataset écartée de l'entraînement
+ * (tokens par caractère, proportion de {@code <UNK>}).
+ */
+public class VocabularySweep {
+
+    public static final double DEFAULT_HELD_OUT_FRACTION = 0.1;
+
+    private final int[] vocabSizes;
+    private final int minFrequency;
+    private final boolean byteLevel;
+    private final List<TrainingListener> trainingListeners = new ArrayList<>();
+    private double heldOutFraction = DEFAULT_HELD_OUT_FRACTION;
+    private long seed = 42;
+
+    /**
+     * @param vocabSizes les tailles de vocabulaire à comparer.
+     */
+    public VocabularySweep(int... vocabSizes) {
+        this(vocabSizes, 2, false);
+    }
+
+    /**
+     * @param vocabSizes   les tailles de vocabulaire à comparer.
+     * @param minFrequency fréquence minimale d'un token ou d'une paire pour être retenu.
+     * @param byteLevel    vrai pour entraîner en mode octet.
+     */
+    public VocabularySweep(int[] vocabSizes, int minFrequency, boolean byteLevel) {
+        if (vocabSizes.length == 0) {
+            throw new IllegalArgumentException("Aucune taille de vocabulaire");
+        }
+        this.vocabSizes = Arrays.stream(vocabSizes).distinct().sorted().toArray();
+        if (this.vocabSizes[0] <= 0) {
+            throw new IllegalArgumentException("Taille de vocabulaire invalide : " + this.vocabSizes[0]);
+        }
+        this.minFrequency = minFrequency;
+        this.byteLevel = byteLevel;
+    }
+
+    /**
+     * Fixe la part des textes écartée de l'entraînement pour l'évaluation (10 % par défaut)
+     * et la graine du tirage, pour que le découpage soit reproductible.
+     *
+     * @param heldOutFraction la part des textes réservée à l'évaluation, entre 0 et 1.
+     * @param seed            la graine du tirage.
+     */
+    public void setHeldOut(double heldOutFraction, long seed) {
+        if (!(heldOutFraction >= 0 && heldOutFraction < 1)) {
+            throw new IllegalArgumentException("Part d'évaluation invalide : " + heldOutFraction);
+        }
+        this.heldOutFraction = heldOutFraction;
+        this.seed = seed;
+    }
+
+    /**
+     * Ajoute un observateur à l'entraînement unique.
+     *
+     * @param listener l'observateur.
+     */
+    public void addTrainingListener(TrainingListener listener) {
+        trainingListeners.add(listener);
+    }
+
+    /**
+     * Découpe le dataset, entraîne un tokenizer à la plus grande taille puis évalue chaque taille.
+     * Le dataset est parcouru une seule fois ; seuls les textes d'évaluation sont conservés en mémoire.
+     *
+     * @param dataset le dataset, prétraité ou non.
+     * @return un résultat par taille, par taille croissante.
+     */
+    public List<Result> run(Dataset dataset) {
+        BPETokenizer full = new BPETokenizer(vocabSizes[vocabSizes.length - 1], minFrequency, byteLevel);
+        for (TrainingListener listener : trainingListeners) {
+            full.addTrainingListener(listener);
+        }
+        // Chaque texte est tiré au sort dans l'ordre du dataset : le découpage ne dépend que de la graine
+        List<String> heldOut = new ArrayList<>();
+        SplittableRandom random = new SplittableRandom(seed);
+        try (Stream<String> texts = dataset.stream()) {
+            full.train(texts.filter(text -> {
+                if (random.nextDouble() < heldOutFraction) {
+                    heldOut.add(text);
+                    return false;
+                }
+                return true;
+            }));
+        }
+        return evaluate(full, heldOut);
+    }
+
+    /**
+     * Évalue chaque taille à partir d'un tokenizer déjà entraîné à la plus grande d'entre elles.
+     *
+     * @param full    le tokenizer entraîné.
+     * @param heldOut les textes d'évaluation, absents de l'entraînement.
+     * @return un résultat par taille, par taille croissante.
+     */
+    public List<Result> evaluate(BPETokenizer full, List<String> heldOut) {
+        long chars = 0;
+        for (String text : heldOut) {
+            chars += text.length();
+        }
+        List<Result> results = new ArrayList<>(vocabSizes.length);
+        for (int vocabSize : vocabSizes) {
+            BPETokenizer tokenizer = full.truncate(vocabSize);
+            EncodedBatch batch = tokenizer.encodeBatch(heldOut);
+            int[] ids = batch.getIds();
+            int unkId = tokenizer.getUnkId();
+            long unknown = 0;
+            for (int i = 0; i < batch.tokenCount(); i++) {
+                if (ids[i] == unkId) {
+                    unknown++;
+                }
+            }
+            results.add(new Result(vocabSize, tokenizer, chars, batch.tokenCount(), unknown));
+        }
+        return results;
+    }
+
+    /**
+     * Statistiques de compression d'une taille de vocabulaire sur les textes d'évaluation.
+     *
+     * @param requestedVocabSize la taille demandée ; le vocabulaire obtenu peut être plus petit
+     *                           si l'entraînement s'est arrêté avant (paires trop rares).
+     * @param tokenizer          le tokenizer tronqué à cette taille.
+     */
+    public record Result(int requestedVocabSize, BPETokenizer tokenizer,
+                         long heldOutChars, long heldOutTokens, long unknownTokens) {
+
+        /**
+         * @return le nombre moyen de tokens par caractère (plus bas = meilleure compression).
+         */
+        public double tokensPerChar() {
+            return heldOutChars > 0 ? (double) heldOutTokens / heldOutChars : 0;
+        }
+
+        /**
+         * @return la proportion de tokens {@code <UNK>}.
+         */
+        public double unknownRate() {
+            return heldOutTokens > 0 ? (double) unknownTokens / heldOutTokens : 0;
+        }
+
+        @Override
+        public String toString() {
+            return "vocabSize=" + requestedVocabSize
+                    + " (ids=" + tokenizer.getVocabSize() + ", merges=" + tokenizer.getMergeCount() + ")"
+                    + " tokensPerChar=" + Math.round(tokensPerChar() * 10000) / 10000.0
+                    + " unkRate=" + Math.round(unknownRate() * 1000) / 10.0 + "%"
+                    + " heldOutTokens=" + heldOutTokens;
+        }
+    }
+}
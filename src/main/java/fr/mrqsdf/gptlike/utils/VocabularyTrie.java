@@ -0,0 +1,367 @@
+package fr.mrqsdf.gptlike.utils;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Trie à double tableau (<i>double-array trie</i>) sur les symboles d'un vocabulaire.
+ * <p>
+ * Chaque état est un entier ; la transition de l'état {@code s} par le code {@code c} mène à
+ * {@code t = base[s] + c}, valide si {@code check[t] == s}. Une recherche ne fait donc que
+ * des accès à des tableaux d'entiers, sans allouer ni hacher de chaîne.
+ * <ul>
+ *   <li>en mode caractère, les caractères présents dans le vocabulaire sont renumérotés de façon dense ;</li>
+ *   <li>en mode octet (voir {@link ByteLevel}), les transitions se font directement sur les octets,
+ *       un symbole de n caractères étant un chemin de n octets.</li>
+ * </ul>
+ * Le trie sert à la recherche exacte d'un identifiant et à la recherche du plus long symbole
+ * commençant à une position, utilisée par l'encodage glouton de {@link BPEEncoder}.
+ * Il est immuable une fois construit.
+ */
+public final class VocabularyTrie {
+
+    private static final int FREE = -1;
+    private static final int ROOT = 0;
+
+    private final boolean byteLevel;
+    // Code de transition de chaque caractère en mode caractère, 0 s'il n'apparaît dans aucun symbole
+    private final char[] codes;
+    private final int[] base;
+    private final int[] check;
+    // Identifiant du symbole qui se termine à chaque état, -1 sinon
+    private final int[] values;
+    private final int size;
+
+    private VocabularyTrie(boolean byteLevel, char[] codes, int[] base, int[] check, int[] values, int size) {
+        this.byteLevel = byteLevel;
+        this.codes = codes;
+        this.base = base;
+        this.check = check;
+        this.values = values;
+        this.size = size;
+    }
+
+    /**
+     * Compile le vocabulaire des tables d'un tokenizer.
+     * Si plusieurs identifiants portent le même symbole, le plus petit est retenu.
+     *
+     * @param tables    les tables du tokenizer.
+     * @param byteLevel vrai si les symboles représentent des octets (voir {@link ByteLevel}).
+     * @return le trie compilé.
+     */
+    public static VocabularyTrie compile(TokenizerTables tables, boolean byteLevel) {
+        String[] symbols = tables.getSymbols();
+        char[] codes = null;
+        if (!byteLevel) {
+            // Numérotation dense des caractères, dans l'ordre des caractères
+            boolean[] present = new boolean[Character.MAX_VALUE + 1];
+            for (String symbol : symbols) {
+                if (symbol != null) {
+                    for (int i = 0; i < symbol.length(); i++) {
+                        present[symbol.charAt(i)] = true;
+                    }
+                }
+            }
+            codes = new char[Character.MAX_VALUE + 1];
+            char next = 1;
+            for (int c = 0; c < present.length; c++) {
+                if (present[c]) {
+                    codes[c] = next++;
+                }
+            }
+        }
+
+        List<int[]> keys = new ArrayList<>(symbols.length);
+        List<Integer> ids = new ArrayList<>(symbols.length);
+        for (int id = 0; id < symbols.length; id++) {
+            int[] key = symbols[id] == null ? null : toKey(symbols[id], codes);
+            if (key != null && key.length > 0) {
+                keys.add(key);
+                ids.add(id);
+            }
+        }
+        Integer[] order = new Integer[keys.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int cmp = Arrays.compare(keys.get(a), keys.get(b));
+            return cmp != 0 ? cmp : Integer.compare(ids.get(a), ids.get(b));
+        });
+        int[][] sortedKeys = new int[order.length][];
+        int[] sortedIds = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedKeys[i] = keys.get(order[i]);
+            sortedIds[i] = ids.get(order[i]);
+        }
+
+        Builder builder = new Builder(Math.max(256, sortedKeys.length * 2));
+        builder.place(ROOT, sortedKeys, sortedIds, 0, sortedKeys.length, 0);
+        return builder.build(byteLevel, codes);
+    }
+
+    // Codes de transition d'un symbole, ou null s'il ne peut pas être représenté
+    private static int[] toKey(String symbol, char[] codes) {
+        int[] key = new int[symbol.length()];
+        for (int i = 0; i < key.length; i++) {
+            char c = symbol.charAt(i);
+            if (codes != null) {
+                key[i] = codes[c];
+            } else {
+                int b = ByteLevel.byteOf(c);
+                if (b < 0) {
+                    return null;
+                }
+                key[i] = b + 1;
+            }
+        }
+        return key;
+    }
+
+    /**
+     * @param symbol le symbole recherché (en mode octet, sous sa forme de caractères d'octets).
+     * @return son identifiant, ou -1 s'il est absent.
+     */
+    public int idOf(CharSequence symbol) {
+        return idOf(symbol, 0, symbol.length());
+    }
+
+    /**
+     * @param text  le texte contenant le symbole.
+     * @param start le début du symbole.
+     * @param end   la fin (exclue) du symbole.
+     * @return l'identifiant du symbole {@code text[start, end)}, ou -1 s'il est absent.
+     */
+    public int idOf(CharSequence text, int start, int end) {
+        if (start >= end) {
+            return -1;
+        }
+        int state = ROOT;
+        for (int i = start; i < end && state >= 0; i++) {
+            state = next(state, charCode(text.charAt(i)));
+        }
+        return state < 0 ? -1 : values[state];
+    }
+
+    /**
+     * Recherche le plus long symbole qui commence à {@code start} et se termine au plus à {@code end}.
+     *
+     * @return {@code longueur << 32 | identifiant}, ou 0 si aucun symbole ne commence à cette position.
+     */
+    long longestMatch(CharSequence text, int start, int end) {
+        long match = 0;
+        int state = ROOT;
+        for (int i = start; i < end; i++) {
+            state = next(state, charCode(text.charAt(i)));
+            if (state < 0) {
+                break;
+            }
+            int id = values[state];
+            if (id >= 0) {
+                match = ((long) (i + 1 - start) << 32) | id;
+            }
+        }
+        return match;
+    }
+
+    /**
+     * Recherche sur des octets UTF-8 le plus long symbole qui commence à {@code start}
+     * et se termine au plus à {@code end} (mode octet uniquement).
+     *
+     * @return {@code longueur << 32 | identifiant}, ou 0 si aucun symbole ne commence à cette position.
+     */
+    long longestMatch(ByteBuffer bytes, int start, int end) {
+        long match = 0;
+        int state = ROOT;
+        for (int i = start; i < end; i++) {
+            state = next(state, (bytes.get(i) & 0xFF) + 1);
+            if (state < 0) {
+                break;
+            }
+            int id = values[state];
+            if (id >= 0) {
+                match = ((long) (i + 1 - start) << 32) | id;
+            }
+        }
+        return match;
+    }
+
+    private int charCode(char c) {
+        if (codes != null) {
+            return codes[c];
+        }
+        int b = ByteLevel.byteOf(c);
+        return b < 0 ? 0 : b + 1;
+    }
+
+    // État atteint par le code depuis l'état, ou -1 (le code 0 n'a jamais de transition)
+    private int next(int state, int code) {
+        if (code == 0) {
+            return -1;
+        }
+        int target = base[state] + code;
+        return target < check.length && check[target] == state ? target : -1;
+    }
+
+    /**
+     * @return le nombre de symboles du trie.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return la taille des tableaux d'états.
+     */
+    public int capacity() {
+        return base.length;
+    }
+
+    /**
+     * @return vrai si les transitions se font sur des octets.
+     */
+    public boolean isByteLevel() {
+        return byteLevel;
+    }
+
+    /**
+     * Construction du double tableau à partir des clés triées, nœud par nœud.
+     * Pour chaque nœud, la base retenue est la première pour laquelle toutes les cases
+     * de ses enfants sont libres ; seules les cases libres, chaînées entre elles, sont parcourues.
+     */
+    private static final class Builder {
+        private int[] base;
+        private int[] check;
+        private int[] values;
+        // Liste doublement chaînée des cases libres, -1 en fin de liste
+        private int[] nextFree;
+        private int[] prevFree;
+        private int firstFree = -1;
+        private int lastFree = -1;
+        private int used = 1;
+        private int size;
+
+        Builder(int capacity) {
+            base = new int[0];
+            check = new int[0];
+            values = new int[0];
+            nextFree = new int[0];
+            prevFree = new int[0];
+            ensure(capacity);
+            occupy(ROOT, ROOT);
+        }
+
+        // Place les enfants de state, formés par les clés [lo, hi) qui partagent leurs depth premiers codes
+        void place(int state, int[][] keys, int[] ids, int lo, int hi, int depth) {
+            // Les clés triées de longueur depth viennent en premier : elles se terminent sur cet état
+            while (lo < hi && keys[lo].length == depth) {
+                if (values[state] < 0) {
+                    values[state] = ids[lo];
+                    size++;
+                }
+                lo++;
+            }
+            if (lo == hi) {
+                return;
+            }
+
+            int childCount = 0;
+            int[] childCodes = new int[hi - lo];
+            int[] childStarts = new int[hi - lo + 1];
+            for (int i = lo; i < hi; i++) {
+                int code = keys[i][depth];
+                if (childCount == 0 || childCodes[childCount - 1] != code) {
+                    childCodes[childCount] = code;
+                    childStarts[childCount++] = i;
+                }
+            }
+            childStarts[childCount] = hi;
+
+            int b = findBase(childCodes, childCount);
+            base[state] = b;
+            for (int k = 0; k < childCount; k++) {
+                occupy(b + childCodes[k], state);
+            }
+            used = Math.max(used, b + childCodes[childCount - 1] + 1);
+            for (int k = 0; k < childCount; k++) {
+                place(b + childCodes[k], keys, ids, childStarts[k], childStarts[k + 1], depth + 1);
+            }
+        }
+
+        private int findBase(int[] childCodes, int childCount) {
+            int first = childCodes[0];
+            int last = childCodes[childCount - 1];
+            for (int cell = firstFree; ; cell = nextFree[cell]) {
+                if (cell < 0) {
+                    // Aucune case libre ne convient : on agrandit et on repart de la première case ajoutée
+                    cell = check.length;
+                    ensure(check.length + last + 1);
+                }
+                int b = cell - first;
+                if (b < 1) {
+                    continue;
+                }
+                ensure(b + last + 1);
+                boolean fits = true;
+                for (int k = 1; k < childCount; k++) {
+                    if (check[b + childCodes[k]] != FREE) {
+                        fits = false;
+                        break;
+                    }
+                }
+                if (fits) {
+                    return b;
+                }
+            }
+        }
+
+        private void occupy(int cell, int parent) {
+            check[cell] = parent;
+            int prev = prevFree[cell];
+            int next = nextFree[cell];
+            if (prev >= 0) {
+                nextFree[prev] = next;
+            } else {
+                firstFree = next;
+            }
+            if (next >= 0) {
+                prevFree[next] = prev;
+            } else {
+                lastFree = prev;
+            }
+        }
+
+        private void ensure(int capacity) {
+            if (capacity <= check.length) {
+                return;
+            }
+            int oldCapacity = check.length;
+            int newCapacity = Math.max(capacity, oldCapacity * 2);
+            base = Arrays.copyOf(base, newCapacity);
+            check = Arrays.copyOf(check, newCapacity);
+            values = Arrays.copyOf(values, newCapacity);
+            nextFree = Arrays.copyOf(nextFree, newCapacity);
+            prevFree = Arrays.copyOf(prevFree, newCapacity);
+            Arrays.fill(check, oldCapacity, newCapacity, FREE);
+            Arrays.fill(values, oldCapacity, newCapacity, -1);
+            // Les nouvelles cases sont ajoutées en fin de liste, dans l'ordre
+            for (int cell = oldCapacity; cell < newCapacity; cell++) {
+                prevFree[cell] = lastFree;
+                nextFree[cell] = -1;
+                if (lastFree >= 0) {
+                    nextFree[lastFree] = cell;
+                } else {
+                    firstFree = cell;
+                }
+                lastFree = cell;
+            }
+        }
+
+        VocabularyTrie build(boolean byteLevel, char[] codes) {
+            return new VocabularyTrie(byteLevel, codes, Arrays.copyOf(base, used), Arrays.copyOf(check, used),
+                    Arrays.copyOf(values, used), size);
+        }
+    }
+}
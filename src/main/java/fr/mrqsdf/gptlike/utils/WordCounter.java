@@ -0,0 +1,210 @@
+package fr.mrqsdf.gptlike.utils;
+
+import fr.mrqsdf.gptlike.resources.StringIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Étape parallèle de pré-tokenisation et de comptage des mots avant l'entraînement BPE.
+ * <p>
+ * Les textes sont découpés en lots transmis par une file bornée à des threads de comptage.
+ * Chaque thread compte dans sa propre table à valeurs primitives, directement sur les portions
+ * de texte trouvées par le pré-tokenizer (aucune liste intermédiaire de tokens, aucune chaîne
+ * allouée pour un mot déjà vu). Les tables sont fusionnées à la fin.
+ * La mémoire utilisée ne dépend que du nombre de mots distincts et de la taille de la file,
+ * ce qui permet de consommer une source en flux.
+ * <p>
+ * Chaque lot est d'abord découpé en pré-tokens, puis compté : le temps passé dans chacune
+ * des deux étapes est cumulé sur l'ensemble des threads (voir {@link #getPreTokenizeNanos()}).
+ */
+public class WordCounter {
+
+    // Lot vide signalant la fin de la source aux threads de comptage
+    private static final List<String> END = new ArrayList<>();
+
+    private final int parallelism;
+    private final int batchSize;
+    private final LongAdder preTokenizeNanos = new LongAdder();
+    private final LongAdder countNanos = new LongAdder();
+
+    public WordCounter() {
+        this(Runtime.getRuntime().availableProcessors(), 256);
+    }
+
+    /**
+     * @param parallelism nombre de threads de comptage.
+     * @param batchSize   nombre de textes par lot.
+     */
+    public WordCounter(int parallelism, int batchSize) {
+        if (parallelism <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("parallelism et batchSize doivent être positifs");
+        }
+        this.parallelism = parallelism;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Compte les mots d'une liste de textes ; les lots sont des vues sur la liste, sans copie.
+     *
+     * @param texts les textes.
+     * @return la table mot → nombre d'occurrences.
+     */
+    public StringIntHashMap count(List<String> texts) {
+        return run(queue -> {
+            for (int from = 0; from < texts.size(); from += batchSize) {
+                queue.put(texts.subList(from, Math.min(texts.size(), from + batchSize)));
+            }
+        });
+    }
+
+    /**
+     * Compte les mots d'une source parcourue une seule fois (par exemple un flux de dataset).
+     *
+     * @param texts les textes.
+     * @return la table mot → nombre d'occurrences.
+     */
+    public StringIntHashMap count(Iterator<String> texts) {
+        return run(queue -> {
+            List<String> batch = new ArrayList<>(batchSize);
+            while (texts.hasNext()) {
+                batch.add(texts.next());
+                if (batch.size() == batchSize) {
+                    queue.put(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                queue.put(batch);
+            }
+        });
+    }
+
+    /**
+     * @return le temps de pré-tokenisation cumulé sur les threads de comptage, en nanosecondes.
+     */
+    public long getPreTokenizeNanos() {
+        return preTokenizeNanos.sum();
+    }
+
+    /**
+     * @return le temps de comptage cumulé sur les threads de comptage, en nanosecondes.
+     */
+    public long getCountNanos() {
+        return countNanos.sum();
+    }
+
+    private StringIntHashMap run(Producer producer) {
+        BlockingQueue<List<String>> queue = new ArrayBlockingQueue<>(parallelism * 2);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        StringIntHashMap[] partials = new StringIntHashMap[parallelism];
+        Thread[] workers = new Thread[parallelism];
+        for (int w = 0; w < parallelism; w++) {
+            StringIntHashMap counts = new StringIntHashMap(1024);
+            partials[w] = counts;
+            workers[w] = new Thread(() -> consume(queue, counts, failure), "bpe-count-" + w);
+            workers[w].setDaemon(true);
+            workers[w].start();
+        }
+
+        try {
+            try {
+                producer.produce(queue);
+            } finally {
+                for (int w = 0; w < parallelism; w++) {
+                    queue.put(END);
+                }
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (Thread worker : workers) {
+                worker.interrupt();
+            }
+            throw new IllegalStateException("Comptage des mots interrompu", e);
+        }
+
+        Throwable error = failure.get();
+        if (error instanceof RuntimeException runtime) {
+            throw runtime;
+        } else if (error instanceof Error fatal) {
+            throw fatal;
+        }
+
+        // Fusion des tables partielles dans la plus grande
+        int largest = 0;
+        for (int w = 1; w < parallelism; w++) {
+            if (partials[w].size() > partials[largest].size()) {
+                largest = w;
+            }
+        }
+        StringIntHashMap total = partials[largest];
+        for (int w = 0; w < parallelism; w++) {
+            if (w != largest) {
+                total.addAll(partials[w]);
+            }
+        }
+        return total;
+    }
+
+    private void consume(BlockingQueue<List<String>> queue, StringIntHashMap counts,
+                                AtomicReference<Throwable> failure) {
+        // Fins des pré-tokens du lot courant, réutilisées d'un lot à l'autre
+        int[] ends = new int[4096];
+        try {
+            List<String> batch;
+            while ((batch = queue.take()) != END) {
+                // Après une erreur, les lots restants sont vidés sans être comptés pour ne pas bloquer la source
+                if (failure.get() != null) {
+                    continue;
+                }
+                try {
+                    long start = System.nanoTime();
+                    int spanCount = 0;
+                    for (String text : batch) {
+                        int length = text.length();
+                        for (int pos = 0; pos < length; ) {
+                            pos = PreTokenizer.end(text, pos, length);
+                            if (spanCount == ends.length) {
+                                ends = Arrays.copyOf(ends, spanCount * 2);
+                            }
+                            ends[spanCount++] = pos;
+                        }
+                    }
+                    long split = System.nanoTime();
+                    // Les fins sont relues dans le même ordre ; le dernier pré-token d'un texte s'arrête à sa longueur
+                    int span = 0;
+                    for (String text : batch) {
+                        int length = text.length();
+                        int pos = 0;
+                        while (pos < length) {
+                            int end = ends[span++];
+                            counts.addTo(text, pos, end, 1);
+                            pos = end;
+                        }
+                    }
+                    long done = System.nanoTime();
+                    preTokenizeNanos.add(split - start);
+                    countNanos.add(done - split);
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Producer {
+        void produce(BlockingQueue<List<String>> queue) throws InterruptedException;
+    }
+}
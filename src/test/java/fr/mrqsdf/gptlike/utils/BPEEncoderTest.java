@@ -0,0 +1,130 @@
+package fr.mrqsdf.gptlike.utils;
+
+import fr.mrqsdf.gptlike.resources.Pair;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BPEEncoderTest {
+
+    private static final Pattern PATTERN = Pattern.compile("\\w+|[^\\w\\s]|\\s");
+
+    @Test
+    void encodeAppliesLowestRankMergeFirst() {
+        // "abc" : (b, c) est plus ancienne que (a, b), bien que (a, b) soit rencontrée la première
+        Map<String, Integer> vocab = new LinkedHashMap<>();
+        for (String symbol : new String[]{"<UNK>", "<PAD>", "<SPACE>", "a", "b", "c", "bc", "ab"}) {
+            vocab.put(symbol, vocab.size());
+        }
+        Map<Pair, String> merges = new LinkedHashMap<>();
+        merges.put(new Pair("b", "c"), "bc");
+        merges.put(new Pair("a", "b"), "ab");
+        assertArrayEquals(new int[]{3, 6}, new BPEEncoder(TokenizerTables.fromMaps(vocab, merges)).encode("abc"));
+    }
+
+    @Test
+    void encodeMatchesReference() {
+        BPETokenizer tokenizer = new BPETokenizer(600, 2);
+        tokenizer.train(TestCorpus.sentences(2000, 7).stream());
+        TokenizerTables tables = tokenizer.snapshot().getTables();
+        Map<String, Integer> vocab = tables.toVocab();
+        Map<Pair, String> merges = tables.toMerges();
+        assertTrue(merges.size() > 100, "trop peu de fusions pour que le test soit significatif : " + merges.size());
+        BPEEncoder encoder = new BPEEncoder(tables);
+
+        List<String> texts = new ArrayList<>(TestCorpus.sentences(500, 8));
+        // Caractères absents du vocabulaire (<UNK>), seuls ou dans un mot, et caractères hors BMP
+        texts.add("xyz kaxto Ωmega ψ");
+        texts.add("😀 ka😀to 𝄞 日本語");
+        texts.add("");
+        for (String text : texts) {
+            assertArrayEquals(reference(text, vocab, merges), encoder.encode(text), text);
+        }
+    }
+
+    @Test
+    void concurrentEncodingMatchesSequential() throws InterruptedException, ExecutionException {
+        // Plus d'appels simultanés que de tampons en réserve, sur des threads créés pour chaque tâche
+        for (boolean byteLevel : new boolean[]{false, true}) {
+            BPETokenizer tokenizer = new BPETokenizer(600, 2, byteLevel);
+            tokenizer.train(TestCorpus.sentences(2000, 7).stream());
+            BPEEncoder encoder = new BPEEncoder(tokenizer.snapshot().getTables(), byteLevel);
+            // Textes longs, pour que les encodages se chevauchent
+            List<String> sentences = TestCorpus.sentences(4000, 9);
+            List<String> texts = new ArrayList<>();
+            for (int i = 0; i + 20 <= sentences.size(); i += 20) {
+                texts.add(String.join(" ", sentences.subList(i, i + 20)));
+            }
+            List<int[]> expected = new ArrayList<>();
+            for (String text : texts) {
+                expected.add(encoder.encode(text));
+            }
+
+            ExecutorService executor = VirtualThreads.newPerTaskExecutor("encode-test");
+            try {
+                List<Future<int[]>> results = new ArrayList<>();
+                for (String text : texts) {
+                    results.add(executor.submit(() -> encoder.encode(text)));
+                }
+                for (int i = 0; i < texts.size(); i++) {
+                    assertArrayEquals(expected.get(i), results.get(i).get(), texts.get(i));
+                }
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+
+    // Référence : applique tant que possible la fusion de plus petit rang, la plus à gauche en cas d'égalité
+    private static int[] reference(String text, Map<String, Integer> vocab, Map<Pair, String> merges) {
+        Map<Pair, Integer> ranks = new HashMap<>();
+        for (Pair pair : merges.keySet()) {
+            ranks.put(pair, ranks.size());
+        }
+        int unk = vocab.get("<UNK>");
+        List<Integer> ids = new ArrayList<>();
+        Matcher matcher = PATTERN.matcher(text);
+        while (matcher.find()) {
+            String token = matcher.group();
+            if (token.equals(" ")) {
+                ids.add(vocab.get("<SPACE>"));
+                continue;
+            }
+            List<String> symbols = new ArrayList<>();
+            for (char c : token.toCharArray()) {
+                symbols.add(String.valueOf(c));
+            }
+            while (true) {
+                int best = -1;
+                int bestRank = Integer.MAX_VALUE;
+                for (int i = 0; i + 1 < symbols.size(); i++) {
+                    Integer rank = ranks.get(new Pair(symbols.get(i), symbols.get(i + 1)));
+                    if (rank != null && rank < bestRank) {
+                        best = i;
+                        bestRank = rank;
+                    }
+                }
+                if (best < 0) {
+                    break;
+                }
+                symbols.set(best, symbols.get(best) + symbols.remove(best + 1));
+            }
+            for (String symbol : symbols) {
+                ids.add(vocab.getOrDefault(symbol, unk));
+            }
+        }
+        return ids.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
@@ -0,0 +1,121 @@
+package fr.mrqsdf.gptlike.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BPETokenizerTest {
+
+    private static final List<String> CORPUS = TestCorpus.sentences(2000, 5);
+    private static final List<String> SAMPLES = samples();
+
+    @Test
+    void truncateMatchesSeparateTraining() {
+        BPETokenizer full = trained(800, false);
+        for (int vocabSize : new int[]{300, 450, 600}) {
+            assertSameTables(trained(vocabSize, false), full.truncate(vocabSize));
+        }
+    }
+
+    @Test
+    void byteLevelDecodingIsLossless() {
+        BPETokenizer tokenizer = trained(600, true);
+        for (String text : SAMPLES) {
+            int[] ids = tokenizer.encodeToArray(text);
+            assertEquals(text, tokenizer.decode(ids));
+            assertArrayEquals(ids, tokenizer.encodeBytes(text.getBytes(StandardCharsets.UTF_8)), text);
+        }
+    }
+
+    @Test
+    void binaryFormatRoundTrip(@TempDir Path directory) throws IOException {
+        for (boolean byteLevel : new boolean[]{false, true}) {
+            BPETokenizer tokenizer = trained(600, byteLevel);
+            Path file = directory.resolve("tokenizer-" + byteLevel + ".bin");
+            tokenizer.saveBinary(file.toString());
+            BPETokenizer loaded = new BPETokenizer();
+            loaded.loadBinary(file.toString());
+            assertEquals(byteLevel, loaded.isByteLevel());
+            assertSameTables(tokenizer, loaded);
+            assertSameEncoding(tokenizer, loaded);
+        }
+    }
+
+    @Test
+    void binaryFormatRejectsOutOfRangeMergeIds(@TempDir Path directory) throws IOException {
+        // Somme de contrôle valide, mais la fusion désigne un symbole inexistant
+        Path file = directory.resolve("tokenizer.bin");
+        TokenizerBinaryFormat.write(file, new TokenizerTables(new String[]{"a", "b", "ab"}, new int[]{0, 1, 3}), 0);
+        assertThrows(IOException.class, () -> TokenizerBinaryFormat.read(file));
+        TokenizerBinaryFormat.write(file, new TokenizerTables(new String[]{"a", "b", "ab"}, new int[]{-1, 1, 2}), 0);
+        assertThrows(IOException.class, () -> TokenizerBinaryFormat.read(file));
+    }
+
+    @Test
+    void jsonRoundTrip(@TempDir Path directory) throws IOException {
+        for (boolean byteLevel : new boolean[]{false, true}) {
+            BPETokenizer tokenizer = trained(600, byteLevel);
+            Path file = directory.resolve("tokenizer-" + byteLevel + ".json");
+            tokenizer.save(file.toString());
+            BPETokenizer loaded = new BPETokenizer();
+            loaded.load(file.toString());
+            assertEquals(byteLevel, loaded.isByteLevel());
+            assertSameTables(tokenizer, loaded);
+            assertSameEncoding(tokenizer, loaded);
+        }
+    }
+
+    @Test
+    void resumeMatchesUninterruptedTraining(@TempDir Path directory) throws IOException {
+        Path checkpoint = directory.resolve("tokenizer.ckpt");
+        BPETokenizer uninterrupted = new BPETokenizer(800, 2);
+        uninterrupted.setCheckpoint(checkpoint, 50);
+        uninterrupted.train(CORPUS.stream());
+        assertTrue(Files.exists(checkpoint));
+
+        BPETokenizer resumed = new BPETokenizer(800, 2);
+        resumed.resume(checkpoint);
+        assertSameTables(uninterrupted, resumed);
+    }
+
+    private static BPETokenizer trained(int vocabSize, boolean byteLevel) {
+        BPETokenizer tokenizer = new BPETokenizer(vocabSize, 2, byteLevel);
+        tokenizer.train(CORPUS.stream());
+        return tokenizer;
+    }
+
+    private static void assertSameTables(BPETokenizer expected, BPETokenizer actual) {
+        TokenizerTables e = expected.snapshot().getTables();
+        TokenizerTables a = actual.snapshot().getTables();
+        assertArrayEquals(e.getSymbols(), a.getSymbols());
+        assertArrayEquals(e.getMerges(), a.getMerges());
+    }
+
+    private static void assertSameEncoding(BPETokenizer expected, BPETokenizer actual) {
+        for (String text : SAMPLES) {
+            int[] ids = expected.encodeToArray(text);
+            assertArrayEquals(ids, actual.encodeToArray(text), text);
+            assertEquals(expected.decode(ids), actual.decode(ids), text);
+        }
+    }
+
+    private static List<String> samples() {
+        List<String> samples = new ArrayList<>(CORPUS.subList(0, 200));
+        // Textes absents du corpus : symboles inconnus, caractères hors BMP, espaces Unicode
+        samples.add("");
+        samples.add("Ωmega ψ 😀😀 日本語   fin");
+        samples.add("x".repeat(500));
+        return samples;
+    }
+}
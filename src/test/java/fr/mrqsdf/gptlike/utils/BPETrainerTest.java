@@ -0,0 +1,130 @@
+package fr.mrqsdf.gptlike.utils;
+
+import fr.mrqsdf.gptlike.resources.Pair;
+import fr.mrqsdf.gptlike.resources.StringIntHashMap;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BPETrainerTest {
+
+    private static final int VOCAB_SIZE = 600;
+    private static final int MIN_FREQUENCY = 2;
+
+    @Test
+    void incrementalTrainingMatchesFullRecount() {
+        List<String> texts = TestCorpus.sentences(2000, 1);
+        BPETokenizer tokenizer = new BPETokenizer(VOCAB_SIZE, MIN_FREQUENCY);
+        tokenizer.train(texts.stream());
+
+        List<String> expected = fullRecountMerges(new WordCounter().count(texts));
+        List<String> actual = new ArrayList<>();
+        tokenizer.snapshot().getTables().toMerges().forEach((pair, merged) -> actual.add(describe(pair, merged)));
+        assertTrue(actual.size() > 100, "trop peu de fusions pour que le test soit significatif : " + actual.size());
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    void parallelMergesMatchSingleThreadedTraining() {
+        StringIntHashMap counts = TestCorpus.wordCounts(40000, 2);
+        TokenizerTables single = train(counts, 1);
+        for (int parallelism : new int[]{2, 4}) {
+            TokenizerTables parallel = train(counts, parallelism);
+            assertArrayEquals(single.getSymbols(), parallel.getSymbols(), "parallélisme " + parallelism);
+            assertArrayEquals(single.getMerges(), parallel.getMerges(), "parallélisme " + parallelism);
+        }
+    }
+
+    private static TokenizerTables train(StringIntHashMap counts, int parallelism) {
+        BPETokenizer tokenizer = new BPETokenizer(1000, MIN_FREQUENCY);
+        tokenizer.setTrainingParallelism(parallelism);
+        tokenizer.train(counts);
+        return tokenizer.snapshot().getTables();
+    }
+
+    // Entraînement de référence : recompte toutes les paires à chaque fusion, avec le même départage
+    // (fréquence décroissante, puis ordre lexicographique du premier puis du second symbole)
+    private static List<String> fullRecountMerges(StringIntHashMap counts) {
+        Set<String> vocab = new HashSet<>(List.of("<UNK>", "<PAD>", "<SPACE>"));
+        Map<List<String>, Integer> words = new HashMap<>();
+        counts.forEach((token, count) -> {
+            if (count < MIN_FREQUENCY) {
+                return;
+            }
+            List<String> symbols = new ArrayList<>();
+            for (char c : token.toCharArray()) {
+                symbols.add(String.valueOf(c));
+            }
+            vocab.addAll(symbols);
+            if (!token.equals(" ")) {
+                words.merge(symbols, count, Integer::sum);
+            }
+        });
+
+        List<String> merges = new ArrayList<>();
+        int numMerges = VOCAB_SIZE - vocab.size();
+        for (int m = 0; m < numMerges; m++) {
+            Map<Pair, Integer> pairs = new HashMap<>();
+            words.forEach((symbols, count) -> {
+                for (int i = 0; i + 1 < symbols.size(); i++) {
+                    pairs.merge(new Pair(symbols.get(i), symbols.get(i + 1)), count, Integer::sum);
+                }
+            });
+            Pair best = null;
+            int bestCount = -1;
+            for (Map.Entry<Pair, Integer> entry : pairs.entrySet()) {
+                Pair pair = entry.getKey();
+                int count = entry.getValue();
+                if (count > bestCount || (count == bestCount && compare(pair, best) < 0)) {
+                    best = pair;
+                    bestCount = count;
+                }
+            }
+            if (best == null || bestCount < MIN_FREQUENCY) {
+                break;
+            }
+            String merged = best.first + best.second;
+            merges.add(describe(best, merged));
+            vocab.add(merged);
+
+            Map<List<String>, Integer> next = new HashMap<>();
+            for (Map.Entry<List<String>, Integer> entry : words.entrySet()) {
+                List<String> symbols = new ArrayList<>();
+                List<String> current = entry.getKey();
+                for (int i = 0; i < current.size(); i++) {
+                    if (i + 1 < current.size() && current.get(i).equals(best.first) && current.get(i + 1).equals(best.second)) {
+                        symbols.add(merged);
+                        i++;
+                    } else {
+                        symbols.add(current.get(i));
+                    }
+                }
+                next.merge(symbols, entry.getValue(), Integer::sum);
+            }
+            words.clear();
+            words.putAll(next);
+            if (vocab.size() >= VOCAB_SIZE) {
+                break;
+            }
+        }
+        return merges;
+    }
+
+    private static int compare(Pair a, Pair b) {
+        int first = a.first.compareTo(b.first);
+        return first != 0 ? first : a.second.compareTo(b.second);
+    }
+
+    private static String describe(Pair pair, String merged) {
+        return pair.first + " + " + pair.second + " -> " + merged;
+    }
+}
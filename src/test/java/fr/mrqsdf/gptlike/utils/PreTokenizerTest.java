@@ -0,0 +1,88 @@
+package fr.mrqsdf.gptlike.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PreTokenizerTest {
+
+    private static final Pattern REGEX = Pattern.compile("\\w+|[^\\w\\s]|\\s");
+
+    // Mot ASCII, espacements de \s, espaces Unicode hors \s, accents, CJK, paire de substitution
+    // et substituts isolés
+    private static final String[] PIECES = {
+            "a", "Z", "_", "7", "mot", " ", "\t", "\n", "\u000B", "\f", "\r", " ", " ",
+            ",", ".", "!", "'", "é", "ß", "日", "😀", "\uD83D", "\uDE00",
+    };
+
+    @Test
+    void charSplitMatchesRegex() {
+        Random random = new Random(3);
+        for (int i = 0; i < 2000; i++) {
+            String text = randomText(random, true);
+            assertEquals(describe(regexSpans(text)), charSpans(text), text);
+        }
+    }
+
+    @Test
+    void byteSplitMatchesRegexOnUtf8() {
+        Random random = new Random(4);
+        for (int i = 0; i < 2000; i++) {
+            // Sans substitut isolé, qui n'a pas d'encodage UTF-8
+            String text = randomText(random, false);
+            List<int[]> expected = new ArrayList<>();
+            for (int[] span : regexSpans(text)) {
+                expected.add(new int[]{utf8Length(text, span[0]), utf8Length(text, span[1])});
+            }
+            ByteBuffer bytes = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+            List<int[]> actual = new ArrayList<>();
+            PreTokenizer.split(bytes, (start, end) -> actual.add(new int[]{start, end}));
+            assertEquals(describe(expected), describe(actual), text);
+        }
+    }
+
+    private static String randomText(Random random, boolean loneSurrogates) {
+        StringBuilder sb = new StringBuilder();
+        int pieces = random.nextInt(30);
+        for (int p = 0; p < pieces; p++) {
+            String piece = PIECES[random.nextInt(loneSurrogates ? PIECES.length : PIECES.length - 2)];
+            sb.append(piece.repeat(1 + random.nextInt(3)));
+        }
+        return sb.toString();
+    }
+
+    private static List<int[]> regexSpans(String text) {
+        List<int[]> spans = new ArrayList<>();
+        Matcher matcher = REGEX.matcher(text);
+        while (matcher.find()) {
+            spans.add(new int[]{matcher.start(), matcher.end()});
+        }
+        return spans;
+    }
+
+    private static String charSpans(String text) {
+        List<int[]> spans = new ArrayList<>();
+        PreTokenizer.split(text, (start, end) -> spans.add(new int[]{start, end}));
+        return describe(spans);
+    }
+
+    private static int utf8Length(String text, int end) {
+        return text.substring(0, end).getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static String describe(List<int[]> spans) {
+        StringBuilder sb = new StringBuilder();
+        for (int[] span : spans) {
+            sb.append('[').append(span[0]).append(',').append(span[1]).append(']');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,54 @@
+package fr.mrqsdf.gptlike.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class StreamingEncoderTest {
+
+    private static final List<String> CORPUS = TestCorpus.sentences(1000, 6);
+    private static final int[] CHUNK_SIZES = {1, 2, 3, 7, 64, StreamingEncoder.DEFAULT_CHUNK_SIZE};
+
+    @Test
+    void streamingMatchesFullEncodingInCharMode() throws IOException {
+        assertStreamingMatches(false);
+    }
+
+    @Test
+    void streamingMatchesFullEncodingInByteMode() throws IOException {
+        assertStreamingMatches(true);
+    }
+
+    private static void assertStreamingMatches(boolean byteLevel) throws IOException {
+        BPETokenizer tokenizer = new BPETokenizer(600, 2, byteLevel);
+        tokenizer.train(CORPUS.stream());
+        // Un long document, un mot plus long que les blocs et une paire de substitution à cheval sur les blocs
+        List<String> texts = List.of(
+                String.join("\n", CORPUS.subList(0, 300)),
+                "début " + "ka".repeat(3000) + " fin",
+                "😀a😀😀 日本 é",
+                "");
+        for (String text : texts) {
+            int[] expected = tokenizer.encodeToArray(text);
+            byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+            for (int chunkSize : CHUNK_SIZES) {
+                StreamingEncoder encoder = tokenizer.streamingEncoder(chunkSize);
+                IntStream.Builder fromReader = IntStream.builder();
+                encoder.encode(new StringReader(text), fromReader::add);
+                assertArrayEquals(expected, fromReader.build().toArray(), "Reader, blocs de " + chunkSize);
+
+                IntStream.Builder fromChannel = IntStream.builder();
+                encoder.encode(Channels.newChannel(new ByteArrayInputStream(utf8)), fromChannel::add);
+                assertArrayEquals(expected, fromChannel.build().toArray(), "canal, blocs de " + chunkSize);
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package fr.mrqsdf.gptlike.utils;
+
+import fr.mrqsdf.gptlike.resources.StringIntHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Corpus synthétiques reproductibles pour les tests : des phrases assez variées pour produire
+ * des centaines de fusions, avec ponctuation, chiffres, accents et caractères hors BMP.
+ */
+final class TestCorpus {
+
+    private static final String[] SYLLABLES = {
+            "ka", "to", "ri", "mu", "le", "sa", "no", "pi", "de", "ra", "tion", "ment", "ou", "ai", "é", "è", "ç",
+    };
+    private static final String[] SEPARATORS = {" ", " ", " ", " ", ", ", ". ", " ! ", "\n", "\t", " 😀 ", " 日本 "};
+
+    private TestCorpus() {
+    }
+
+    /**
+     * @param count nombre de phrases.
+     * @param seed  graine du générateur.
+     * @return des phrases de 3 à 20 mots.
+     */
+    static List<String> sentences(int count, long seed) {
+        Random random = new Random(seed);
+        List<String> texts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder sb = new StringBuilder();
+            int words = 3 + random.nextInt(18);
+            for (int w = 0; w < words; w++) {
+                if (w > 0) {
+                    sb.append(SEPARATORS[random.nextInt(SEPARATORS.length)]);
+                }
+                appendWord(sb, random);
+            }
+            texts.add(sb.toString());
+        }
+        return texts;
+    }
+
+    /**
+     * Table de fréquences de mots distincts, assez grande pour répartir l'entraînement en plusieurs shards.
+     *
+     * @param count nombre de mots distincts.
+     * @param seed  graine du générateur.
+     * @return la table mot → nombre d'occurrences.
+     */
+    static StringIntHashMap wordCounts(int count, long seed) {
+        Random random = new Random(seed);
+        StringIntHashMap counts = new StringIntHashMap(count);
+        while (counts.size() < count) {
+            StringBuilder sb = new StringBuilder();
+            appendWord(sb, random);
+            counts.addTo(sb.toString(), 2 + random.nextInt(50));
+        }
+        return counts;
+    }
+
+    private static void appendWord(StringBuilder sb, Random random) {
+        int syllables = 1 + random.nextInt(4);
+        for (int s = 0; s < syllables; s++) {
+            sb.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        }
+        if (random.nextInt(10) == 0) {
+            sb.append(random.nextInt(100));
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package fr.mrqsdf.gptlike.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class TextPipelineTest {
+
+    @Test
+    void nearDedupComparesWithEveryCandidate() {
+        // Chaque texte est précédé de leurres : des copies dont une fenêtre de 40 caractères est remplacée,
+        // trop éloignées pour être des doublons mais qui partagent déjà la plupart de ses bandes. Une copie
+        // presque exacte du texte, qui ne partage avec lui que ces bandes, doit tout de même lui être comparée
+        Random random = new Random(8);
+        List<String> texts = new ArrayList<>();
+        Map<String, String> copies = new HashMap<>();
+        for (int group = 0; group < 20; group++) {
+            String text = randomText(random, 200);
+            for (int decoy = 0; decoy < 30; decoy++) {
+                int start = random.nextInt(160);
+                texts.add(text.substring(0, start) + randomText(random, 40) + text.substring(start + 40));
+            }
+            texts.add(text);
+            String copy = mutate(text, random, 1);
+            texts.add(copy);
+            copies.put(copy, text);
+        }
+        Set<String> kept = new TextPipeline().nearDedup(0.8).apply(texts.stream(), -1).collect(Collectors.toSet());
+
+        // Un texte peut être retiré comme doublon d'un leurre (écart d'estimation) : sa copie n'a alors plus de référence
+        copies.forEach((copy, text) -> assertFalse(kept.contains(text) && kept.contains(copy), "copie presque exacte conservée : " + copy));
+    }
+
+    @Test
+    void nearDedupKeepsDistinctTexts() {
+        Random random = new Random(9);
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            texts.add(randomText(random, 100));
+        }
+        assertEquals(texts, new TextPipeline().nearDedup(0.8).apply(texts.stream(), -1).collect(Collectors.toList()));
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(random.nextInt(6) == 0 ? ' ' : (char) ('a' + random.nextInt(26)));
+        }
+        return sb.toString();
+    }
+
+    // Remplace des caractères tirés au hasard par une lettre différente
+    private static String mutate(String text, Random random, int changes) {
+        char[] chars = text.toCharArray();
+        for (int c = 0; c < changes; c++) {
+            int i = random.nextInt(chars.length);
+            char replacement;
+            do {
+                replacement = (char) ('a' + random.nextInt(26));
+            } while (replacement == chars[i]);
+            chars[i] = replacement;
+        }
+        return new String(chars);
+    }
+}
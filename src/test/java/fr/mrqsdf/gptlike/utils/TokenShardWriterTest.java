@@ -0,0 +1,117 @@
+package fr.mrqsdf.gptlike.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenShardWriterTest {
+
+    private static final int SHARD_TOKENS = 64;
+
+    @Test
+    void roundTripWithUint16Tokens(@TempDir Path directory) throws IOException {
+        assertRoundTrip(directory, 2, 0xFFFF);
+    }
+
+    @Test
+    void roundTripWithUint32Tokens(@TempDir Path directory) throws IOException {
+        assertRoundTrip(directory, 4, Integer.MAX_VALUE);
+    }
+
+    @Test
+    void uint16RejectsLargerIds(@TempDir Path directory) throws IOException {
+        try (TokenShardWriter writer = new TokenShardWriter(directory, 2, SHARD_TOKENS)) {
+            assertThrows(IllegalArgumentException.class, () -> writer.addDocument(new int[]{0x10000}, 0, 1));
+        }
+    }
+
+    private static void assertRoundTrip(Path directory, int tokenWidth, int maxId) throws IOException {
+        // Longueurs impaires (remplissage de l'index), document vide et document plus grand qu'un shard
+        Random random = new Random(tokenWidth);
+        List<int[]> documents = new ArrayList<>();
+        for (int d = 0; d < 40; d++) {
+            documents.add(randomIds(random, random.nextInt(30), maxId));
+        }
+        documents.add(5, new int[0]);
+        documents.add(12, randomIds(random, 3 * SHARD_TOKENS + 7, maxId));
+        documents.add(new int[]{0, maxId});
+
+        try (TokenShardWriter writer = new TokenShardWriter(directory, tokenWidth, SHARD_TOKENS)) {
+            for (int[] ids : documents) {
+                writer.addDocument(ids, 0, ids.length);
+            }
+        }
+        TokenCorpus corpus = TokenCorpus.open(directory);
+
+        // Contenu de chaque shard, et documents relus dans l'ordre d'écriture
+        List<int[]> shardTokens = new ArrayList<>();
+        List<int[]> pieces = new ArrayList<>();
+        for (int s = 0; s < corpus.getShardCount(); s++) {
+            TokenShardReader shard = corpus.getShard(s);
+            assertEquals(tokenWidth, shard.getTokenWidth());
+            assertTrue(shard.getTokenCount() <= SHARD_TOKENS, "shard de " + shard.getTokenCount() + " tokens");
+            int[] tokens = new int[(int) shard.getTokenCount()];
+            for (int i = 0; i < tokens.length; i++) {
+                tokens[i] = shard.get(i);
+            }
+            shardTokens.add(tokens);
+            for (int d = 0; d < shard.getDocumentCount(); d++) {
+                pieces.add(shard.document(d).toArray());
+            }
+        }
+
+        // Un document n'est découpé que s'il dépasse un shard ; ses morceaux se suivent
+        int piece = 0;
+        long tokenCount = 0;
+        for (int[] ids : documents) {
+            int[] read = pieces.get(piece++);
+            while (read.length < ids.length) {
+                read = concat(read, pieces.get(piece++));
+            }
+            assertArrayEquals(ids, read);
+            tokenCount += ids.length;
+        }
+        assertEquals(pieces.size(), piece);
+        assertEquals(pieces.size(), corpus.getDocumentCount());
+        assertEquals(tokenCount, corpus.getTokenCount());
+
+        // Les fenêtres parcourent chaque shard, sans déborder sur le suivant
+        for (int contextLength : new int[]{1, 8, SHARD_TOKENS}) {
+            long index = 0;
+            for (int[] tokens : shardTokens) {
+                for (int start = 0; start + contextLength <= tokens.length; start++) {
+                    assertArrayEquals(Arrays.copyOfRange(tokens, start, start + contextLength),
+                            corpus.window(index++, contextLength).toArray());
+                }
+            }
+            assertEquals(index, corpus.windowCount(contextLength));
+            long end = index;
+            assertThrows(IndexOutOfBoundsException.class, () -> corpus.window(end, contextLength));
+        }
+    }
+
+    private static int[] randomIds(Random random, int length, int maxId) {
+        int[] ids = new int[length];
+        for (int i = 0; i < length; i++) {
+            ids[i] = random.nextInt(maxId);
+        }
+        return ids;
+    }
+
+    private static int[] concat(int[] a, int[] b) {
+        int[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+}
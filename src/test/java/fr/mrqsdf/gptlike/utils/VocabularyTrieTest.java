@@ -0,0 +1,149 @@
+package fr.mrqsdf.gptlike.utils;
+
+import fr.mrqsdf.gptlike.resources.Pair;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VocabularyTrieTest {
+
+    private static final List<String> CORPUS = TestCorpus.sentences(2000, 11);
+
+    @Test
+    void idOfMatchesVocabulary() {
+        for (boolean byteLevel : new boolean[]{false, true}) {
+            TokenizerTables tables = tables(byteLevel);
+            String[] symbols = tables.getSymbols();
+            VocabularyTrie trie = VocabularyTrie.compile(tables, byteLevel);
+            Map<String, Integer> firstIds = firstIds(symbols);
+            for (String symbol : symbols) {
+                int expected = representable(symbol, byteLevel) ? firstIds.get(symbol) : -1;
+                assertEquals(expected, trie.idOf(symbol), symbol);
+            }
+            assertEquals(-1, trie.idOf(""));
+            assertEquals(-1, trie.idOf("ψψψψ"));
+        }
+    }
+
+    @Test
+    void longestMatchReturnsLongestPrefix() {
+        for (boolean byteLevel : new boolean[]{false, true}) {
+            TokenizerTables tables = tables(byteLevel);
+            String[] symbols = tables.getSymbols();
+            VocabularyTrie trie = VocabularyTrie.compile(tables, byteLevel);
+            Map<String, Integer> firstIds = firstIds(symbols);
+            List<String> texts = new ArrayList<>(CORPUS.subList(0, 100));
+            texts.add("Ωmega ψ 😀😀 日本語   fin");
+            for (String text : texts) {
+                // En mode octet, chaque octet UTF-8 devient un caractère : les positions coïncident
+                String chars = byteLevel ? ByteLevel.toSymbols(text) : text;
+                ByteBuffer bytes = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+                for (int start = 0; start < chars.length(); start++) {
+                    long expected = referenceMatch(chars, start, firstIds, byteLevel);
+                    assertEquals(expected, trie.longestMatch(chars, start, chars.length()), chars + " @" + start);
+                    if (byteLevel) {
+                        assertEquals(expected, trie.longestMatch(bytes, start, bytes.limit()), text + " @" + start);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void greedyMatchesBpeOnSingleSymbolWords() {
+        TokenizerTables tables = tables(false);
+        BPEEncoder bpe = new BPEEncoder(tables);
+        BPEEncoder greedy = bpe.withGreedy(true);
+        List<String> words = new ArrayList<>();
+        for (String symbol : tables.getSymbols()) {
+            int[] ids = bpe.encode(symbol);
+            if (ids.length == 1 && !symbol.startsWith("<")) {
+                assertArrayEquals(ids, greedy.encode(symbol), symbol);
+                words.add(symbol);
+            }
+        }
+        assertTrue(words.size() > 100, "trop peu de mots pour que le test soit significatif : " + words.size());
+
+        // Textes dont chaque pré-token est un symbole entier : les deux modes doivent coïncider
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i + 10 <= words.size(); i += 10) {
+            texts.add(String.join(" ", words.subList(i, i + 10)));
+        }
+        GreedyComparison comparison = GreedyComparison.measure(bpe, texts);
+        assertEquals(texts.size(), comparison.texts());
+        assertEquals(0, comparison.mismatchedTexts());
+        assertEquals(0, comparison.mismatchedWords());
+        assertEquals(comparison.bpeTokens(), comparison.greedyTokens());
+        assertTrue(comparison.words() >= words.size());
+    }
+
+    @Test
+    void measureCountsGreedyMismatches() {
+        // "abc" : le BPE fusionne d'abord (b, c), le plus long préfixe est pourtant "ab"
+        Map<String, Integer> vocab = new LinkedHashMap<>();
+        for (String symbol : new String[]{"<UNK>", "<PAD>", "<SPACE>", "a", "b", "c", "bc", "ab"}) {
+            vocab.put(symbol, vocab.size());
+        }
+        Map<Pair, String> merges = new LinkedHashMap<>();
+        merges.put(new Pair("b", "c"), "bc");
+        merges.put(new Pair("a", "b"), "ab");
+        BPEEncoder encoder = new BPEEncoder(TokenizerTables.fromMaps(vocab, merges));
+        assertArrayEquals(new int[]{3, 6}, encoder.encode("abc"));
+        assertArrayEquals(new int[]{7, 5}, encoder.withGreedy(true).encode("abc"));
+
+        GreedyComparison comparison = GreedyComparison.measure(encoder, List.of("abc bc", "bc"));
+        assertEquals(2, comparison.texts());
+        assertEquals(1, comparison.mismatchedTexts());
+        assertEquals(4, comparison.words());
+        assertEquals(1, comparison.mismatchedWords());
+    }
+
+    private static TokenizerTables tables(boolean byteLevel) {
+        BPETokenizer tokenizer = new BPETokenizer(600, 2, byteLevel);
+        tokenizer.train(CORPUS.stream());
+        return tokenizer.snapshot().getTables();
+    }
+
+    // Plus petit identifiant de chaque symbole
+    private static Map<String, Integer> firstIds(String[] symbols) {
+        Map<String, Integer> ids = new HashMap<>();
+        for (int id = 0; id < symbols.length; id++) {
+            ids.putIfAbsent(symbols[id], id);
+        }
+        return ids;
+    }
+
+    private static boolean representable(String symbol, boolean byteLevel) {
+        if (!byteLevel) {
+            return true;
+        }
+        for (int i = 0; i < symbol.length(); i++) {
+            if (ByteLevel.byteOf(symbol.charAt(i)) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Référence : essaie toutes les longueurs, de la plus longue à la plus courte
+    private static long referenceMatch(String text, int start, Map<String, Integer> firstIds, boolean byteLevel) {
+        for (int end = text.length(); end > start; end--) {
+            String candidate = text.substring(start, end);
+            Integer id = firstIds.get(candidate);
+            if (id != null && representable(candidate, byteLevel)) {
+                return ((long) (end - start) << 32) | id;
+            }
+        }
+        return 0;
+    }
+}